@@ -0,0 +1,50 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import server.model.BattleField;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1フレーム分の {@link BattleField#update()} の処理時間を物体数ごとに測定します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BattleFieldBenchmark {
+	@Param({"2", "4"})
+	public int players;
+
+	@Param({"0", "16", "64", "256"})
+	public int projectiles;
+
+	private BattleField field;
+
+	@Setup
+	public void setUp() {
+		field = Fixtures.field(players, projectiles);
+	}
+
+	@Benchmark
+	public BattleField.UpdateResult update() {
+		return field.update();
+	}
+
+	@Benchmark
+	public int getProjectiles() {
+		return field.getProjectiles().size();
+	}
+}
@@ -0,0 +1,128 @@
+package bench;
+
+import model.ProjectileType;
+import network.Protocol;
+import network.SharedMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1フレーム分の状態配信 (StatePipeline の送信スレッドが行う処理) を測定します。
+ * broadcastTick は以前の方式で、メッセージごとに ConcurrentHashMap のキーを走査して各宛先のキューへ積み、
+ * 宛先ごとに文字列をバイト列へ変換する (PrintWriter が行う処理に相当) までを含みます。
+ * broadcastTickShared は、1回だけ変換した {@link SharedMessage} を宛先の配列へ配る現在の方式です。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BroadcastBenchmark {
+	@Param({"2", "4"})
+	public int players;
+
+	@Param({"0", "16", "64"})
+	public int projectiles;
+
+	private ConcurrentHashMap<Recipient, Integer> playerMap;
+	private Recipient[] recipients;
+	private final SharedMessage.Pool pool = new SharedMessage.Pool(256);
+
+	@Setup
+	public void setUp() {
+		playerMap = new ConcurrentHashMap<>();
+		for (int i = 0; i < players; i++) {
+			playerMap.put(new Recipient(), i + 1);
+		}
+		recipients = playerMap.keySet().toArray(new Recipient[0]);
+	}
+
+	@Benchmark
+	public long broadcastTick() {
+		playerMap.forEach((recipient, playerId) -> {
+			String msg = Protocol.move(playerId, 100.5 * playerId, 183.6, 1.0, 0.0);
+			playerMap.keySet().forEach(r -> r.send(msg));
+		});
+		for (int i = 0; i < projectiles; i++) {
+			String msg = Protocol.projectile(i, ProjectileType.ARROW, 20.0 * i, 400.0, 1.0, 9.0, 0.0);
+			playerMap.keySet().forEach(r -> r.send(msg));
+		}
+		long bytes = 0;
+		for (Recipient recipient : playerMap.keySet()) {
+			bytes += recipient.flush();
+		}
+		return bytes;
+	}
+
+	@Benchmark
+	public long broadcastTickShared() {
+		Recipient[] targets = recipients;
+		playerMap.forEach((recipient, playerId) -> fanOut(targets, Protocol.move(playerId, 100.5 * playerId, 183.6, 1.0, 0.0)));
+		for (int i = 0; i < projectiles; i++) {
+			fanOut(targets, Protocol.projectile(i, ProjectileType.ARROW, 20.0 * i, 400.0, 1.0, 9.0, 0.0));
+		}
+		long bytes = 0;
+		for (Recipient recipient : targets) {
+			bytes += recipient.flushShared();
+		}
+		return bytes;
+	}
+
+	private void fanOut(Recipient[] targets, String message) {
+		SharedMessage shared = pool.encode(message);
+		for (Recipient recipient : targets) {
+			recipient.sendShared(shared.retain());
+		}
+		shared.release();
+	}
+
+	/**
+	 * TcpConnection の送信キューと送信スレッドの代わり
+	 */
+	private static final class Recipient {
+		private final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+		private final LinkedBlockingQueue<SharedMessage> sharedQueue = new LinkedBlockingQueue<>();
+
+		void send(String message) {
+			queue.offer(message);
+		}
+
+		void sendShared(SharedMessage message) {
+			sharedQueue.offer(message);
+		}
+
+		long flushShared() {
+			long bytes = 0;
+			SharedMessage message;
+			while ((message = sharedQueue.poll()) != null) {
+				bytes += message.length();
+				message.release();
+			}
+			return bytes;
+		}
+
+		long flush() {
+			long bytes = 0;
+			String message;
+			while ((message = queue.poll()) != null) {
+				bytes += message.getBytes(StandardCharsets.UTF_8).length + 1;
+			}
+			return bytes;
+		}
+	}
+}
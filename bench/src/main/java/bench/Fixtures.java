@@ -0,0 +1,62 @@
+package bench;
+
+import model.GameCharacter;
+import model.ProjectileType;
+import server.model.Archer;
+import server.model.BattleField;
+import server.model.Fighter;
+import server.model.Projectile;
+import server.model.Warrior;
+import server.model.Wizard;
+
+/**
+ * ベンチマーク用のフィールドを組み立てるクラスです。
+ * 物体が消えたり衝突したりしないよう配置し、何度更新しても同じ負荷になるようにしています。
+ * server.model パッケージのベンチマークからも使うため公開しています。
+ */
+public final class Fixtures {
+	private static final double PROJECTILE_SPACING = 20.0;
+	private static final double PROJECTILE_BASE_Y = 400.0;
+
+	private Fixtures() {
+	}
+
+	static GameCharacter character(int index) {
+		switch (index % 4) {
+			case 1:
+				return new Warrior();
+			case 2:
+				return new Fighter();
+			case 3:
+				return new Wizard();
+			default:
+				return new Archer();
+		}
+	}
+
+	/**
+	 * プレイヤーは地面に等間隔で並べ、飛び道具はプレイヤーより上に格子状に静止させる。
+	 */
+	public static BattleField field(int players, int projectiles) {
+		BattleField field = new BattleField();
+		for (int i = 0; i < players; i++) {
+			GameCharacter character = character(i);
+			character.setOwnerId(i + 1);
+			character.setPosition(field.getWidth() * (i + 0.5) / players, field.getGroundY());
+			character.setGrounded(true);
+			field.addEntity(character);
+		}
+		int columns = (int) (field.getWidth() / PROJECTILE_SPACING) - 1;
+		for (int i = 0; i < projectiles; i++) {
+			double x = PROJECTILE_SPACING * (i % columns + 1);
+			double y = PROJECTILE_BASE_Y + PROJECTILE_SPACING * (i / columns);
+			field.addEntity(projectile(i % Math.max(1, players) + 1, x, y, 0, 0));
+		}
+		return field;
+	}
+
+	static Projectile projectile(int ownerId, double x, double y, double vx, double vy) {
+		ProjectileType type = ownerId % 2 == 0 ? ProjectileType.MAGIC : ProjectileType.ARROW;
+		return new Projectile(type, ownerId, x, y, vx, vy, 1.0, 100.0, 0);
+	}
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import model.GameCharacter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import server.model.Projectile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Projectile#collidesWith} の判定コストを、キャラクター・飛び道具それぞれの命中/非命中で測定します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProjectileBenchmark {
+	private Projectile projectile;
+	private GameCharacter nearCharacter;
+	private GameCharacter farCharacter;
+	private Projectile nearProjectile;
+	private Projectile farProjectile;
+
+	@Setup
+	public void setUp() {
+		projectile = Fixtures.projectile(1, 300, 220, 9, 0);
+		nearCharacter = Fixtures.character(1);
+		nearCharacter.setPosition(310, 183);
+		farCharacter = Fixtures.character(2);
+		farCharacter.setPosition(900, 183);
+		nearProjectile = Fixtures.projectile(2, 305, 222, -9, 0);
+		farProjectile = Fixtures.projectile(2, 900, 222, -9, 0);
+	}
+
+	@Benchmark
+	public boolean hitCharacter() {
+		return projectile.collidesWith(nearCharacter);
+	}
+
+	@Benchmark
+	public boolean missCharacter() {
+		return projectile.collidesWith(farCharacter);
+	}
+
+	@Benchmark
+	public boolean hitProjectile() {
+		return projectile.collidesWith(nearProjectile);
+	}
+
+	@Benchmark
+	public boolean missProjectile() {
+		return projectile.collidesWith(farProjectile);
+	}
+}
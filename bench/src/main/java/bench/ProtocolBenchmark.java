@@ -0,0 +1,68 @@
+package bench;
+
+import model.ProjectileType;
+import network.Command;
+import network.Protocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 毎フレーム大量に発生するメッセージの生成 ({@link Protocol}) と解析 ({@link Command}) を測定します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+	public int playerId = 3;
+	public long projectileId = 123456;
+	public double x = 640.25;
+	public double y = 183.6;
+	public double facingX = 0.7071067811865475;
+	public double facingY = -0.7071067811865475;
+	public String moveMessage = Protocol.move(3, 640.25, 183.6, 1.0, 0.0);
+	public String projectileMessage = Protocol.projectile(123456, ProjectileType.MAGIC, 640.25, 218.6, 1.25, 11.25, 0.0);
+	public String inputMessage = Protocol.normalAttack();
+	public String joinMessage = Protocol.join("player", -1);
+
+	@Benchmark
+	public String encodeMove() {
+		return Protocol.move(playerId, x, y, facingX, facingY);
+	}
+
+	@Benchmark
+	public String encodeProjectile() {
+		return Protocol.projectile(projectileId, ProjectileType.ARROW, x, y, 1.25, facingX * 9, facingY * 9);
+	}
+
+	@Benchmark
+	public Command parseMove() {
+		return new Command(moveMessage);
+	}
+
+	@Benchmark
+	public Command parseProjectile() {
+		return new Command(projectileMessage);
+	}
+
+	@Benchmark
+	public Command parseInput() {
+		return new Command(inputMessage);
+	}
+
+	@Benchmark
+	public Command parseJoin() {
+		return new Command(joinMessage);
+	}
+}
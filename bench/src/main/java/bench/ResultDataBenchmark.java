@@ -0,0 +1,58 @@
+package bench;
+
+import model.ResultData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 対戦結果 ({@link ResultData}) の直列化と解析を4人分で測定します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultDataBenchmark {
+	private List<ResultData> results;
+	private String payload;
+
+	@Setup
+	public void setUp() {
+		results = new ArrayList<>();
+		for (int id = 1; id <= 4; id++) {
+			ResultData data = new ResultData(id);
+			data.setResult(id == 1 ? ResultData.ResultType.WIN : ResultData.ResultType.LOSE);
+			for (int i = 0; i < id; i++) {
+				data.incrementKills();
+			}
+			data.incrementDeaths();
+			data.addDamageGiven(1234.5 * id);
+			data.addDamageTaken(987.25 * id);
+			results.add(data);
+		}
+		payload = ResultData.serializeList(results);
+	}
+
+	@Benchmark
+	public String serializeList() {
+		return ResultData.serializeList(results);
+	}
+
+	@Benchmark
+	public List<ResultData> parseList() {
+		return ResultData.parseList(payload);
+	}
+}
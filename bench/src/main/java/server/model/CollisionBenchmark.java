@@ -0,0 +1,56 @@
+package server.model;
+
+import bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BattleField} の当たり判定のみを測定します。パッケージプライベートの {@link BattleField#updateCollision} を呼ぶため
+ * server.model パッケージに置き、フィールドは {@link Fixtures} で組み立てます。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CollisionBenchmark {
+	@Param({"2", "4"})
+	public int players;
+
+	@Param({"0", "16", "64", "256"})
+	public int projectiles;
+
+	private BattleField field;
+	private final List<Projectile> removed = new ArrayList<>();
+	private final List<BattleField.DamageEvent> events = new ArrayList<>();
+
+	@Setup
+	public void setUp() {
+		// 衝突しない位置に静止させ、毎回すべての組み合わせを判定させる
+		field = Fixtures.field(players, projectiles);
+	}
+
+	@Benchmark
+	public void updateCollision(Blackhole blackhole) {
+		removed.clear();
+		events.clear();
+		field.updateCollision(removed, events);
+		blackhole.consume(removed);
+		blackhole.consume(events);
+	}
+}
@@ -0,0 +1,108 @@
+package server.model;
+
+import model.CharacterType;
+import model.PlayerInfo;
+import network.CommandType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 決まった入力で進める対戦で、{@link GameSession#update()} 1回あたりのメモリ確保量が上限以下であることを確かめます。
+ * 上限は -Djcf.test.tickAllocBudget (バイト) で、game/pom.xml の surefire の設定から渡す。
+ */
+class TickAllocationTest {
+	private static final long DEFAULT_BUDGET = 64;
+	private static final int PLAYERS = 4;
+	private static final int TICK_RATE = 60;
+	private static final int MAX_TICKS = TICK_RATE * 180;
+	// FORWARD は左側のプレイヤーなら右、右側なら左への移動に置き換える
+	private static final CommandType FORWARD = CommandType.MOVE_RIGHT;
+	private static final CommandType[] SCRIPT = {
+			FORWARD, CommandType.NORMAL_ATTACK, CommandType.NORMAL_ATTACK, CommandType.DEFEND,
+			CommandType.CHARGE_START, CommandType.MOVE_UP, FORWARD, CommandType.CHARGE_ATTACK,
+	};
+
+	@Test
+	void updateStaysWithinAllocationBudget() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+				"スレッドごとの確保量を計測できない JVM");
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported(), "スレッドごとの確保量を計測できない JVM");
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long budget = Long.getLong("jcf.test.tickAllocBudget", DEFAULT_BUDGET);
+
+		// 1回目はクラスの初期化などを含むため捨てる
+		playMatch(threads);
+		Measurement measurement = playMatch(threads);
+		// 決着時の結果作成も含めて測るため、決着まで進むことを前提にする
+		assertTrue(measurement.gameOver, measurement.ticks + " 回の更新で決着しなかった");
+
+		double perTick = measurement.allocatedBytes / (double) measurement.ticks;
+		assertTrue(perTick <= budget, String.format("更新1回あたり %.1f バイト確保している (上限 %d バイト, %d 回更新)",
+				perTick, budget, measurement.ticks));
+	}
+
+	/**
+	 * 各プレイヤーが相手の方を向いて {@link #SCRIPT} の入力を順に繰り返す対戦を、決着または {@link #MAX_TICKS} 回まで進めます。
+	 * 入力の適用による確保(弾の生成など)は含めず、update() の中の確保だけを数える。
+	 */
+	private static Measurement playMatch(com.sun.management.ThreadMXBean threads) {
+		GameSession session = new GameSession(PLAYERS, TICK_RATE);
+		List<PlayerInfo> players = new ArrayList<>();
+		CharacterType[] types = CharacterType.values();
+		for (int i = 0; i < PLAYERS; i++) {
+			CharacterType type = types[i % types.length];
+			players.add(new PlayerInfo(i + 1, "p" + (i + 1), true, CharacterFactory.create(type)));
+		}
+		session.start(players);
+
+		long threadId = Thread.currentThread().getId();
+		long overhead = measureOverhead(threads, threadId);
+		long allocated = 0;
+		while (session.isStarted() && !session.isGameOver() && session.getTick() < MAX_TICKS) {
+			int tick = session.getTick();
+			for (int i = 0; i < players.size(); i++) {
+				// プレイヤーごとに入力の間隔と順番をずらす
+				if (tick % (6 + i) != 0) continue;
+				CommandType action = SCRIPT[(tick / (6 + i) + i) % SCRIPT.length];
+				if (action == FORWARD && i >= PLAYERS / 2) action = CommandType.MOVE_LEFT;
+				session.handleAction(action, players.get(i));
+			}
+			long before = threads.getThreadAllocatedBytes(threadId);
+			session.update();
+			allocated += Math.max(0, threads.getThreadAllocatedBytes(threadId) - before - overhead);
+		}
+		return new Measurement(session.getTick(), session.isGameOver(), allocated);
+	}
+
+	/**
+	 * 確保量の読み出し自体が確保するバイト数
+	 */
+	private static long measureOverhead(com.sun.management.ThreadMXBean threads, long threadId) {
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			long before = threads.getThreadAllocatedBytes(threadId);
+			long after = threads.getThreadAllocatedBytes(threadId);
+			overhead = Math.min(overhead, after - before);
+		}
+		return overhead;
+	}
+
+	private static final class Measurement {
+		final int ticks;
+		final boolean gameOver;
+		final long allocatedBytes;
+
+		Measurement(int ticks, boolean gameOver, long allocatedBytes) {
+			this.ticks = ticks;
+			this.gameOver = gameOver;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+}
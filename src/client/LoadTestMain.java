@@ -0,0 +1,129 @@
+package client;
+
+import client.bot.BotClient;
+import client.bot.LoadTestStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多数のボットをサーバーへ接続させる負荷試験ツールです。
+ * <pre>
+ * java -cp out client.LoadTestMain [host] [port] [オプション]
+ *   --clients N     : ボット数 (デフォルト 100)
+ *   --duration S    : 全員接続後に負荷をかける秒数 (デフォルト 60)
+ *   --ramp S        : 全員が接続し終えるまでの秒数 (デフォルト 10)
+ *   --input-hz H    : 1ボットあたりの秒間入力数 (デフォルト 15)
+ *   --private R     : プライベートルームを使うボットの割合 0.0～1.0 (デフォルト 0)
+ *   --room-size K   : プライベートルーム1部屋あたりの人数 2～4 (デフォルト 4)
+ * </pre>
+ */
+public final class LoadTestMain {
+	private static final String DEFAULT_HOST = "localhost";
+	private static final int DEFAULT_PORT = 10000;
+	private static final int CONNECT_THREADS = 8;
+	private static final int INPUT_THREADS = 4;
+	private static final long REPORT_INTERVAL_SEC = 5;
+
+	private LoadTestMain() {
+	}
+
+	public static void main(final String[] args) throws InterruptedException {
+		String host = DEFAULT_HOST;
+		int port = DEFAULT_PORT;
+		int clients = 100;
+		int durationSec = 60;
+		int rampSec = 10;
+		int inputHz = 15;
+		double privateRatio = 0.0;
+		int roomSize = 4;
+		int positional = 0;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			switch (arg) {
+				case "--clients":
+					clients = Integer.parseInt(args[++i]);
+					break;
+				case "--duration":
+					durationSec = Integer.parseInt(args[++i]);
+					break;
+				case "--ramp":
+					rampSec = Integer.parseInt(args[++i]);
+					break;
+				case "--input-hz":
+					inputHz = Integer.parseInt(args[++i]);
+					break;
+				case "--private":
+					privateRatio = Double.parseDouble(args[++i]);
+					break;
+				case "--room-size":
+					roomSize = Math.max(2, Math.min(4, Integer.parseInt(args[++i])));
+					break;
+				default:
+					if (positional == 0) {
+						host = arg;
+					} else {
+						port = Integer.parseInt(arg);
+					}
+					positional++;
+					break;
+			}
+		}
+
+		LoadTestStats stats = new LoadTestStats();
+		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(INPUT_THREADS, daemonFactory("BotInput"));
+		ExecutorService connector = Executors.newFixedThreadPool(CONNECT_THREADS, daemonFactory("BotConnect"));
+
+		// 先頭から privateRatio 分のボットを roomSize 人ずつのプライベートルームに割り当てる
+		int privateClients = (int) Math.round(clients * Math.max(0.0, Math.min(1.0, privateRatio)));
+		privateClients -= privateClients % roomSize;
+		List<BotClient> bots = new ArrayList<>(clients);
+		CompletableFuture<Integer> room = null;
+		for (int i = 0; i < clients; i++) {
+			boolean isPrivate = i < privateClients;
+			boolean creator = isPrivate && i % roomSize == 0;
+			if (creator) room = new CompletableFuture<>();
+			bots.add(new BotClient(i, host, port, stats, scheduler, inputHz, isPrivate ? room : null, creator, isPrivate ? roomSize : 1));
+		}
+
+		System.out.printf("%s:%d へ %d 体のボットを %d 秒かけて接続します (プライベート %d 体)%n",
+				host, port, clients, rampSec, privateClients);
+		long startNs = System.nanoTime();
+		long intervalNs = clients > 0 ? TimeUnit.SECONDS.toNanos(rampSec) / clients : 0;
+		for (int i = 0; i < clients; i++) {
+			BotClient bot = bots.get(i);
+			long delayNs = startNs + intervalNs * i - System.nanoTime();
+			if (delayNs > 0) TimeUnit.NANOSECONDS.sleep(delayNs);
+			connector.execute(bot::connect);
+		}
+		connector.shutdown();
+		connector.awaitTermination(rampSec + 30L, TimeUnit.SECONDS);
+
+		long endNs = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSec);
+		while (System.nanoTime() < endNs) {
+			TimeUnit.SECONDS.sleep(Math.min(REPORT_INTERVAL_SEC, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(endNs - System.nanoTime()))));
+			System.out.println(stats.progressLine());
+		}
+
+		bots.forEach(BotClient::close);
+		scheduler.shutdownNow();
+		System.out.println("---- 結果 ----");
+		System.out.print(stats.summary());
+	}
+
+	private static ThreadFactory daemonFactory(String name) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
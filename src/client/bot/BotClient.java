@@ -0,0 +1,345 @@
+package client.bot;
+
+import model.CharacterType;
+import network.ClockSync;
+import network.Command;
+import network.DisconnectListener;
+import network.MessageListener;
+import network.Protocol;
+import network.TcpConnection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 負荷試験用のヘッドレスなプレイヤーです。
+ * 通常のクライアントと同じ {@link TcpConnection} と {@link Protocol} を使い、参加・準備・入力を自動で行います。
+ */
+public final class BotClient implements MessageListener, DisconnectListener, Closeable {
+	private static final Logger logger = Logger.getLogger(BotClient.class.getName());
+	// 攻撃を送ってからこの時間エコーが無ければ、サーバーが処理しなかった(頻度の制限で捨てた等)とみなして次の攻撃を送る
+	private static final long ECHO_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(1);
+	private static final long REJOIN_DELAY_MS = 1000;
+	private static final long PING_INTERVAL_MS = 1000;
+
+	private final int index;
+	private final String host;
+	private final int port;
+	private final LoadTestStats stats;
+	private final ScheduledExecutorService scheduler;
+	private final long inputIntervalMs;
+	private final CompletableFuture<Integer> privateRoom; // null のときはランダムマッチ
+	private final boolean roomCreator;
+	private volatile int readyAtPlayers;
+	private final AtomicInteger roomPlayers = new AtomicInteger();
+	private final AtomicBoolean readySent = new AtomicBoolean();
+	// エコーを待っている攻撃の送信時刻。0 のときは待っていない。
+	// エコーには送信の番号が無いため、待っている間は次の攻撃を送らずに、エコーと送信を1対1で対応させる
+	private final AtomicLong pendingAttackNs = new AtomicLong();
+
+	private volatile TcpConnection connection;
+	private volatile ScheduledFuture<?> inputTask;
+	private volatile ScheduledFuture<?> pingTask;
+	private long recordedPongs; // 計測スレッドのみが使用
+	private volatile int playerId = -1;
+	private volatile long joinStartNs;
+	private volatile boolean joined;
+	private volatile boolean playing;
+	private volatile boolean alive;
+	private volatile boolean closed;
+	private volatile boolean charging;
+	private int moveDirection = 1; // 入力スレッドのみが使用
+
+	/**
+	 * @param privateRoom  プライベートルームを使う場合の部屋ID。ランダムマッチの場合は null
+	 * @param roomCreator  true の場合は自分で部屋を作成して privateRoom を完了させる
+	 * @param readyAtPlayers 部屋の人数がこの値以上になってから準備完了にする
+	 */
+	public BotClient(int index, String host, int port, LoadTestStats stats, ScheduledExecutorService scheduler,
+	                 int inputHz, CompletableFuture<Integer> privateRoom, boolean roomCreator, int readyAtPlayers) {
+		this.index = index;
+		this.host = host;
+		this.port = port;
+		this.stats = stats;
+		this.scheduler = scheduler;
+		this.inputIntervalMs = Math.max(1, 1000 / Math.max(1, inputHz));
+		this.privateRoom = privateRoom;
+		this.roomCreator = roomCreator;
+		this.readyAtPlayers = readyAtPlayers;
+	}
+
+	/**
+	 * 接続して参加要求を送ります。呼び出し元のスレッドで接続完了まで待機します。
+	 */
+	public void connect() {
+		long start = System.nanoTime();
+		try {
+			TcpConnection conn = new TcpConnection(new Socket(host, port));
+			conn.setMessageListener(this);
+			conn.setDisconnectListener(this);
+			connection = conn;
+			conn.start();
+		} catch (IOException e) {
+			stats.connectFailures.incrementAndGet();
+			logger.log(Level.FINE, "ボット" + index + "の接続に失敗しました。", e);
+			return;
+		}
+		stats.connectTime.record(System.nanoTime() - start);
+		stats.connected.incrementAndGet();
+		pingTask = scheduler.scheduleAtFixedRate(this::ping, ThreadLocalRandom.current().nextLong(PING_INTERVAL_MS),
+				PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		requestJoin();
+	}
+
+	public void close() {
+		closed = true;
+		cancelTasks();
+		TcpConnection conn = connection;
+		if (conn != null && conn.isConnected()) {
+			conn.sendMessage(Protocol.disconnect());
+			conn.close();
+		}
+	}
+
+	public void onMessageReceived(String message) {
+		Command command = new Command(message);
+		String body = command.getBody();
+		switch (command.getCommandType()) {
+			case JOIN_SUCCESS:
+				handleJoinSuccess(body);
+				break;
+			case JOIN_FAILED:
+				stats.joinFailures.incrementAndGet();
+				schedule(this::requestRandomJoin, REJOIN_DELAY_MS);
+				break;
+			case SERVER_BUSY:
+				// 接続時に断られた場合はこの後に切断される。参加要求を断られた場合は目安の時間が経ってから送り直す
+				stats.busyRejections.incrementAndGet();
+				schedule(this::retryJoin, Long.parseLong(body));
+				break;
+			case JOIN_OPPONENT:
+				roomPlayers.incrementAndGet();
+				readyIfRoomFilled();
+				break;
+			case OPPONENT_DISCONNECTED:
+				roomPlayers.decrementAndGet();
+				break;
+			case GAME_START:
+				pendingAttackNs.set(0);
+				charging = false;
+				alive = true;
+				playing = true;
+				stats.inGame.incrementAndGet();
+				break;
+			case MOVE:
+				stats.stateUpdates.increment();
+				break;
+			case NORMAL_ATTACK:
+				if (parseId(body) == playerId) recordEcho();
+				break;
+			case DAMAGE:
+				handleDamage(body);
+				break;
+			case RESULT:
+				if (playing) {
+					playing = false;
+					stats.inGame.decrementAndGet();
+				}
+				stats.matchesFinished.increment();
+				pendingAttackNs.set(0);
+				// サーバー側の準備状態リセットより後に再準備する
+				readySent.set(false);
+				schedule(this::readyIfRoomFilled, 500 + ThreadLocalRandom.current().nextInt(1000));
+				break;
+			case GAME_ROOM_CLOSED:
+			case SERVER_CLOSED:
+				close();
+				break;
+			default:
+				break;
+		}
+	}
+
+	public void onDisconnect() {
+		stats.disconnected.incrementAndGet();
+		if (playing) {
+			playing = false;
+			stats.inGame.decrementAndGet();
+		}
+		cancelTasks();
+	}
+
+	// -------------------- privateメソッド --------------------
+	private void requestJoin() {
+		joinStartNs = System.nanoTime();
+		String name = "bot" + index;
+		if (privateRoom == null) {
+			send(Protocol.join(name, -1));
+		} else if (roomCreator) {
+			send(Protocol.createRoom(name));
+		} else {
+			privateRoom.thenAccept(roomId -> {
+				joinStartNs = System.nanoTime();
+				send(Protocol.join(name, roomId));
+			});
+		}
+	}
+
+	private void retryJoin() {
+		if (closed || joined) return;
+		TcpConnection conn = connection;
+		if (conn != null && conn.isConnected()) requestJoin();
+	}
+
+	private void requestRandomJoin() {
+		if (closed || joined) return;
+		readyAtPlayers = 1;
+		joinStartNs = System.nanoTime();
+		send(Protocol.join("bot" + index, -1));
+	}
+
+	/**
+	 * 本文は「プレイヤーID:ルームID,公開フラグ,人数:プレイヤー情報...」の形式
+	 */
+	private void handleJoinSuccess(String body) {
+		String[] parts = body.split(":");
+		playerId = Integer.parseInt(parts[0]);
+		joined = true;
+		stats.joinTime.record(System.nanoTime() - joinStartNs);
+		stats.joined.incrementAndGet();
+		String[] roomState = parts.length > 1 ? parts[1].split(",") : new String[0];
+		roomPlayers.set(roomState.length > 2 ? Integer.parseInt(roomState[2]) : 1);
+		if (roomCreator && privateRoom != null && roomState.length > 0) {
+			privateRoom.complete(Integer.parseInt(roomState[0]));
+		}
+		readyIfRoomFilled();
+		inputTask = scheduler.scheduleAtFixedRate(this::sendInput,
+				ThreadLocalRandom.current().nextLong(inputIntervalMs), inputIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	private void handleDamage(String body) {
+		String[] parts = body.split(",");
+		if (parts.length < 2 || Integer.parseInt(parts[0]) != playerId) return;
+		if (Integer.parseInt(parts[1]) <= 0) {
+			alive = false;
+			pendingAttackNs.set(0);
+		}
+	}
+
+	private void readyIfRoomFilled() {
+		if (closed || playing || roomPlayers.get() < readyAtPlayers) return;
+		if (!readySent.compareAndSet(false, true)) return;
+		CharacterType[] types = CharacterType.values();
+		send(Protocol.ready(types[ThreadLocalRandom.current().nextInt(types.length)]));
+	}
+
+	/**
+	 * 移動を中心に、ジャンプ・攻撃・溜め攻撃・防御を混ぜた入力を送ります。
+	 */
+	private void sendInput() {
+		if (closed || !playing || !alive) return;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		double r = random.nextDouble();
+		String message;
+		if (charging) {
+			if (r < 0.3) {
+				charging = false;
+				message = Protocol.chargeAttack();
+			} else {
+				message = Protocol.defend();
+			}
+		} else if (r < 0.55) {
+			if (random.nextDouble() < 0.1) moveDirection = -moveDirection;
+			message = moveDirection > 0 ? Protocol.moveRight() : Protocol.moveLeft();
+		} else if (r < 0.65) {
+			message = Protocol.moveUp();
+		} else if (r < 0.85) {
+			if (startAttack()) {
+				message = Protocol.normalAttack();
+			} else {
+				message = moveDirection > 0 ? Protocol.moveRight() : Protocol.moveLeft();
+			}
+		} else if (r < 0.92) {
+			charging = true;
+			message = Protocol.chargeStart();
+		} else {
+			message = Protocol.defend();
+		}
+		send(message);
+		stats.inputsSent.increment();
+	}
+
+	/**
+	 * 前回からの間に PONG を受け取っていれば往復時間を記録し、次の PING を送ります。
+	 */
+	private void ping() {
+		TcpConnection conn = connection;
+		if (closed || conn == null || !conn.isConnected()) return;
+		ClockSync clock = conn.getClockSync();
+		long pongs = clock.getSamples();
+		if (pongs != recordedPongs) {
+			recordedPongs = pongs;
+			stats.rtt.record((long) (clock.getLastRttMillis() * 1_000_000));
+		}
+		conn.ping();
+	}
+
+	private void cancelTasks() {
+		ScheduledFuture<?> task = inputTask;
+		if (task != null) task.cancel(false);
+		ScheduledFuture<?> ping = pingTask;
+		if (ping != null) ping.cancel(false);
+	}
+
+	/**
+	 * エコーを待っている攻撃が無ければ、送信時刻を記録して true を返します。
+	 * {@link #ECHO_TIMEOUT_NS} を過ぎてもエコーが無い攻撃は、エコー無しとして数えてから新しい攻撃に置き換える。
+	 */
+	private boolean startAttack() {
+		long now = System.nanoTime();
+		long sentAt = pendingAttackNs.get();
+		if (sentAt != 0 && now - sentAt < ECHO_TIMEOUT_NS) return false;
+		if (!pendingAttackNs.compareAndSet(sentAt, now)) return false;
+		if (sentAt != 0) stats.unansweredAttacks.increment();
+		return true;
+	}
+
+	/**
+	 * 自分の攻撃のエコーを受け取ったときに、待っていた攻撃からの遅延を記録します。待っている攻撃が無いエコーは数えない。
+	 */
+	private void recordEcho() {
+		long sentAt = pendingAttackNs.getAndSet(0);
+		if (sentAt == 0) return;
+		stats.echoLatency.record(System.nanoTime() - sentAt);
+		stats.echoes.increment();
+	}
+
+	private void schedule(Runnable task, long delayMs) {
+		if (closed) return;
+		scheduler.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	private void send(String message) {
+		TcpConnection conn = connection;
+		if (conn != null && conn.isConnected()) conn.sendMessage(message);
+	}
+
+	private static int parseId(String body) {
+		try {
+			return Integer.parseInt(body);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package client.bot;
+
+import model.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 負荷試験全体の集計値を保持するクラスです。全ボットから同時に更新されます。
+ */
+public final class LoadTestStats {
+	private static final double NS_PER_MS = 1_000_000.0;
+
+	final AtomicInteger connected = new AtomicInteger();
+	final AtomicInteger connectFailures = new AtomicInteger();
+	final AtomicInteger joined = new AtomicInteger();
+	final AtomicInteger joinFailures = new AtomicInteger();
+	final AtomicInteger busyRejections = new AtomicInteger();
+	final AtomicInteger inGame = new AtomicInteger();
+	final AtomicInteger disconnected = new AtomicInteger();
+	final LongAdder stateUpdates = new LongAdder();
+	final LongAdder inputsSent = new LongAdder();
+	final LongAdder echoes = new LongAdder();
+	final LongAdder unansweredAttacks = new LongAdder();
+	final LongAdder matchesFinished = new LongAdder();
+	final LatencyHistogram connectTime = new LatencyHistogram();
+	final LatencyHistogram joinTime = new LatencyHistogram();
+	final LatencyHistogram echoLatency = new LatencyHistogram();
+	final LatencyHistogram rtt = new LatencyHistogram();
+
+	private long lastReportNs = System.nanoTime();
+	private long lastStateUpdates;
+	private long lastInputs;
+
+	/**
+	 * 前回の呼び出しからの秒間レートを含む1行の途中経過を返します。
+	 */
+	public synchronized String progressLine() {
+		long now = System.nanoTime();
+		double seconds = Math.max(1e-9, (now - lastReportNs) / 1e9);
+		long updates = stateUpdates.sum();
+		long inputs = inputsSent.sum();
+		int playing = inGame.get();
+		double updateRate = (updates - lastStateUpdates) / seconds;
+		String line = String.format(
+				"connected=%d joined=%d inGame=%d disconnected=%d failed=%d input/s=%.0f state/s=%.0f state/s/player=%.1f echo p50=%.2fms p99=%.2fms",
+				connected.get(), joined.get(), playing, disconnected.get(), connectFailures.get() + joinFailures.get(),
+				(inputs - lastInputs) / seconds, updateRate, playing > 0 ? updateRate / playing : 0.0,
+				echoLatency.getPercentile(50) / NS_PER_MS, echoLatency.getPercentile(99) / NS_PER_MS);
+		lastReportNs = now;
+		lastStateUpdates = updates;
+		lastInputs = inputs;
+		return line;
+	}
+
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("接続: 成功=%d 失敗=%d 切断=%d%n", connected.get(), connectFailures.get(), disconnected.get()));
+		sb.append(String.format("参加: 成功=%d 失敗=%d 混雑で拒否=%d 終了した対戦(人数分)=%d%n",
+				joined.get(), joinFailures.get(), busyRejections.get(), matchesFinished.sum()));
+		sb.append(String.format("入力送信=%d エコー受信=%d エコー無しの攻撃=%d 状態更新受信=%d%n",
+				inputsSent.sum(), echoes.sum(), unansweredAttacks.sum(), stateUpdates.sum()));
+		appendPercentiles(sb, "接続時間", connectTime);
+		appendPercentiles(sb, "参加時間", joinTime);
+		appendPercentiles(sb, "入力→エコー", echoLatency);
+		appendPercentiles(sb, "PING往復", rtt);
+		return sb.toString();
+	}
+
+	private static void appendPercentiles(StringBuilder sb, String label, LatencyHistogram histogram) {
+		sb.append(String.format("%s(ms): n=%d p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+				label, histogram.getCount(),
+				histogram.getPercentile(50) / NS_PER_MS,
+				histogram.getPercentile(90) / NS_PER_MS,
+				histogram.getPercentile(99) / NS_PER_MS,
+				histogram.getPercentile(99.9) / NS_PER_MS,
+				histogram.getPercentile(100) / NS_PER_MS));
+	}
+}
@@ -16,6 +16,7 @@
 import model.ResultData;
 import network.Command;
 import network.CommandType;
+import network.Protocol;
 
 import javax.swing.*;
 import java.awt.*;
@@ -51,6 +52,7 @@ public final class GuiController {
 	private final ConcurrentLinkedQueue<Command> commandQueue;
 	private volatile MatchConfigPanel.MatchMode lastMatchMode = MatchConfigPanel.MatchMode.RANDOM;
 	private volatile int playerId = 0;
+	private volatile boolean serverBusy; // 混雑の通知を受信してから表示するまで true
 
 	public GuiController(NetworkController network) {
 		this.network = network;
@@ -129,7 +131,7 @@ public GuiController(NetworkController network) {
 	private void startConnection() {
 		Runtime.getRuntime().addShutdownHook(new Thread(network::close));
 		showLoad();
-		network.connect(msg -> this.commandQueue.add(new Command(msg)), this::handleServerDisconnect, () -> {
+		network.connect(this::receive, this::handleServerDisconnect, () -> {
 			new GameLoopThread().start();
 			loadPanel.setNextScreen(this::showHome);
 			completeLoad();
@@ -281,15 +283,51 @@ private void handleCommand(Command command) {
 				showResultWithData(ResultData.parseList(body));
 				break;
 			case GAME_ROOM_CLOSED:
+				if (Protocol.ROOM_CLOSED_IDLE.equals(body)) {
+					handleRoomExpired();
+				} else {
+					handleServerDisconnect();
+				}
+				break;
 			case SERVER_CLOSED:
 				handleServerDisconnect();
 				break;
+			case SERVER_BUSY:
+				handleServerBusy(body);
+				break;
 			default:
 				break;
 		}
 	}
 
+	/**
+	 * 受信スレッドから呼ばれ、コマンドをゲームループのキューへ入れます。
+	 */
+	private void receive(String message) {
+		Command command = new Command(message);
+		// 接続時に混雑で断られた場合は直後に切断されるため、切断より混雑の通知を優先して表示できるよう受信した時点で覚えておく
+		if (command.getCommandType() == CommandType.SERVER_BUSY) serverBusy = true;
+		commandQueue.add(command);
+	}
+
+	private void handleServerBusy(String body) {
+		serverBusy = false;
+		long seconds = Math.max(1, (Long.parseLong(body) + 999) / 1000);
+		String message = "サーバーが混雑しています。約" + seconds + "秒後にもう一度お試しください。";
+		if (!network.isConnected()) {
+			SwingUtilities.invokeLater(() -> {
+				JOptionPane.showMessageDialog(cardPanel, message, "接続エラー", JOptionPane.WARNING_MESSAGE);
+				System.exit(1);
+			});
+			return;
+		}
+		SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(cardPanel, message, "参加エラー", JOptionPane.WARNING_MESSAGE));
+		loadPanel.setNextScreen(() -> showMatchConfig(lastMatchMode));
+		completeLoad();
+	}
+
 	private void handleServerDisconnect() {
+		if (serverBusy) return;
 		SwingUtilities.invokeLater(() -> {
 			JOptionPane.showMessageDialog(cardPanel,
 					"サーバーから切断されました。",
@@ -302,6 +340,19 @@ private void handleServerDisconnect() {
 		});
 	}
 
+	private void handleRoomExpired() {
+		SwingUtilities.invokeLater(() -> {
+			JOptionPane.showMessageDialog(cardPanel,
+					"一定時間対戦が始まらなかったため、ルームが閉鎖されました。",
+					"ルーム閉鎖",
+					JOptionPane.INFORMATION_MESSAGE);
+			gameRoomPanel.reset();
+			matchConfigPanel.reset();
+			matchConfigPanel.setVisible(false);
+			cardLayout.show(cardPanel, CARD_HOME);
+		});
+	}
+
 	private void handleJoinSuccess(String body) {
 		String[] parts = body.split(":", 2);
 		int joinedPlayerId = Integer.parseInt(parts[0]);
@@ -456,12 +507,19 @@ private void resetSnapshotsForNewMatch() {
 	private final class GameLoopThread extends Thread {
 		private static final int FPS = 60;
 		private static final long FRAME_TIME = 1000_000_000L / FPS;
+		private static final int PING_INTERVAL_FRAMES = FPS; // 1秒ごとに往復時間を測る
+		private static final long IDLE_TIMEOUT_MS = 10_000; // PING を送っていればサーバーは1秒ごとに PONG を返す
 
 		@Override
 		public void run() {
 			long targetTime = System.nanoTime();
+			int frame = 0;
 			while (true) {
 				targetTime += FRAME_TIME;
+				if (++frame % PING_INTERVAL_FRAMES == 0) {
+					network.closeIfIdle(IDLE_TIMEOUT_MS);
+					network.ping();
+				}
 				while (!commandQueue.isEmpty()) {
 					Command cmd = commandQueue.poll();
 					handleCommand(cmd);
@@ -1,6 +1,7 @@
 package client.controller;
 
 import model.CharacterType;
+import network.ClockSync;
 import network.DisconnectListener;
 import network.MessageListener;
 import network.Protocol;
@@ -120,6 +121,33 @@ public void resign() {
 		connection.sendMessage(Protocol.resign());
 	}
 
+	/**
+	 * 往復時間と時計のずれを測る PING を送ります。
+	 */
+	public void ping() {
+		if (isConnected()) connection.ping();
+	}
+
+	/**
+	 * サーバーから timeoutMs 以上何も受信していない場合は、経路が切れたとみなして接続を閉じます。
+	 * 閉じると通常の切断と同じく切断時のリスナーが呼ばれる。
+	 *
+	 * @return 接続を閉じた場合は true
+	 */
+	public boolean closeIfIdle(long timeoutMs) {
+		if (!isConnected() || connection.getIdleMillis() < timeoutMs) return false;
+		logger.warning("サーバーから " + connection.getIdleMillis() + "ms 受信が無いため切断します。");
+		connection.close();
+		return true;
+	}
+
+	/**
+	 * サーバーとの往復時間と時計のずれ。接続前は null
+	 */
+	public ClockSync getClockSync() {
+		return connection != null ? connection.getClockSync() : null;
+	}
+
 	public void disconnect() {
 		if (connection == null || !connection.isConnected()) return;
 		connection.sendMessage(Protocol.disconnect());
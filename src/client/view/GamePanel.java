@@ -6,6 +6,7 @@
 import model.GameCharacter;
 import model.PlayerInfo;
 import model.ProjectileType;
+import network.Protocol;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -41,7 +42,6 @@ public class GamePanel extends BaseBackgroundPanel {
 	private static final Font NAME_FONT = new Font("Meiryo", Font.BOLD, 16);
 	private static final Font HP_FONT = new Font("Meiryo", Font.PLAIN, 14);
 	private static final double WORLD_GROUND_Y = SCREEN_HEIGHT * 0.255;
-	private static final long PROJECTILE_TTL_MS = 600;
 	private static final int DEFEND_HOLD_INTERVAL_MS = 120;
 	private static final String ARROW_IMAGE = "/resources/arrow.png";
 	private static final String MAGIC_IMAGE = "/resources/magic.png";
@@ -117,7 +117,7 @@ public GamePanel() {
 
 		repaintTimer = new Timer(1000 / 60, e -> {
 			long now = System.currentTimeMillis();
-			projectiles.values().removeIf(p -> now - p.lastSeenMs > PROJECTILE_TTL_MS);
+			projectiles.values().removeIf(p -> now - p.lastSeenMs > Protocol.PROJECTILE_TTL_MS);
 			screenPanel.repaint();
 			infoPanel.repaint();
 		});
@@ -0,0 +1,290 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * ログを専用スレッドでファイルへ書き込むハンドラです。
+ * 呼び出し元のスレッドは固定長のキューへ入れるだけで、ファイルのロックや書き込みを待ちません。
+ * キューが満杯のときはそのログを破棄して件数を数え、後から破棄した件数をファイルへ出力します。
+ * ファイルは一定サイズまたは一定時間ごとに切り替えます。
+ */
+public final class AsyncLogHandler extends Handler {
+	private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+	private static final long POLL_INTERVAL_MS = 100;
+	private static final long CLOSE_TIMEOUT_MS = 2000;
+	private static final int BATCH_SIZE = 256;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Path directory;
+	private final String prefix;
+	private final long maxBytes;
+	private final long rotateIntervalMs;
+	private final int maxFiles;
+	private final ArrayBlockingQueue<LogRecord> queue;
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread writerThread;
+	private volatile boolean closed;
+
+	// 書き込みスレッドのみが使用
+	private OutputStream out;
+	private Charset charset;
+	private Path currentFile;
+	private long currentBytes;
+	private long rotateAtMs;
+	private long reportedDropped;
+
+	/**
+	 * @param directory        ログの保存先
+	 * @param prefix           ファイル名の先頭。ファイル名は「prefix-日時.log」になる
+	 * @param capacity         書き込み待ちにできるログの件数
+	 * @param maxBytes         1ファイルの最大サイズ。0 以下の場合はサイズで切り替えない
+	 * @param rotateIntervalMs ファイルを切り替える間隔。0 以下の場合は時間で切り替えない
+	 * @param maxFiles         残すファイル数。0 以下の場合は削除しない
+	 */
+	public AsyncLogHandler(Path directory, String prefix, int capacity, long maxBytes, long rotateIntervalMs, int maxFiles)
+			throws IOException {
+		this.directory = directory;
+		this.prefix = prefix;
+		this.maxBytes = maxBytes;
+		this.rotateIntervalMs = rotateIntervalMs;
+		this.maxFiles = maxFiles;
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+		setFormatter(new SimpleFormatter());
+		Files.createDirectories(directory);
+		openNextFile();
+		writerThread = new Thread(this::runWriter, "AsyncLogWriter-" + prefix);
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * ログをキューへ入れます。満杯の場合は待たずに破棄します。
+	 */
+	public void publish(LogRecord record) {
+		if (closed || !isLoggable(record)) return;
+		// 呼び出し元の特定はスタックを辿るため INFO 以上に限り、詳細ログはロガー名で代用する
+		if (record.getLevel().intValue() >= Level.INFO.intValue()) {
+			record.getSourceClassName();
+		} else {
+			record.setSourceClassName(record.getLoggerName());
+		}
+		if (!queue.offer(record)) dropped.incrementAndGet();
+	}
+
+	/**
+	 * 書き込みは専用スレッドが行うため、ここでは何もしません。
+	 */
+	public void flush() {
+	}
+
+	/**
+	 * キューに残っているログを書き込んでからファイルを閉じます。
+	 */
+	public void close() {
+		if (closed) return;
+		closed = true;
+		try {
+			writerThread.join(CLOSE_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * キューが満杯で破棄したログの件数
+	 */
+	public long getDroppedRecords() {
+		return dropped.get();
+	}
+
+	// -------------------- 書き込みスレッド --------------------
+	private void runWriter() {
+		List<LogRecord> batch = new ArrayList<>(BATCH_SIZE);
+		try {
+			while (true) {
+				LogRecord first;
+				try {
+					first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					break;
+				}
+				if (first == null) {
+					if (closed) break;
+					continue;
+				}
+				write(first);
+				queue.drainTo(batch, BATCH_SIZE);
+				for (LogRecord record : batch) {
+					write(record);
+				}
+				batch.clear();
+				reportDropped();
+				if (queue.isEmpty()) flushFile();
+			}
+			for (LogRecord record = queue.poll(); record != null; record = queue.poll()) {
+				write(record);
+			}
+			reportDropped();
+		} finally {
+			closeFile();
+		}
+	}
+
+	private void write(LogRecord record) {
+		String text;
+		try {
+			text = getFormatter().format(record);
+		} catch (RuntimeException e) {
+			reportError(null, e, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+		writeText(text);
+	}
+
+	private void writeText(String text) {
+		try {
+			if (out == null) return;
+			if ((maxBytes > 0 && currentBytes >= maxBytes) || (rotateIntervalMs > 0 && System.currentTimeMillis() >= rotateAtMs)) {
+				closeFile();
+				openNextFile();
+			}
+			byte[] bytes = text.getBytes(charset);
+			out.write(bytes);
+			currentBytes += bytes.length;
+		} catch (IOException e) {
+			reportError(null, e, ErrorManager.WRITE_FAILURE);
+		}
+	}
+
+	private void reportDropped() {
+		long total = dropped.get();
+		if (total == reportedDropped) return;
+		LogRecord record = new LogRecord(Level.WARNING, "ログの書き込みが追いつかず " + (total - reportedDropped) + " 件を破棄しました。");
+		record.setLoggerName(AsyncLogHandler.class.getName());
+		record.setSourceClassName(AsyncLogHandler.class.getName());
+		reportedDropped = total;
+		write(record);
+	}
+
+	private void openNextFile() throws IOException {
+		String timestamp = LocalDateTime.now().format(FILE_TIMESTAMP);
+		Path file = directory.resolve(prefix + "-" + timestamp + ".log");
+		for (int i = 1; Files.exists(file); i++) {
+			file = directory.resolve(prefix + "-" + timestamp + "-" + i + ".log");
+		}
+		out = new BufferedOutputStream(new FileOutputStream(file.toFile(), true), BUFFER_SIZE);
+		String encoding = getEncoding();
+		charset = encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+		currentFile = file;
+		currentBytes = 0;
+		rotateAtMs = System.currentTimeMillis() + rotateIntervalMs;
+		Formatter formatter = getFormatter();
+		String head = formatter != null ? formatter.getHead(this) : "";
+		if (head != null && !head.isEmpty()) writeText(head);
+		deleteOldFiles();
+	}
+
+	private void flushFile() {
+		try {
+			if (out != null) out.flush();
+		} catch (IOException e) {
+			reportError(null, e, ErrorManager.FLUSH_FAILURE);
+		}
+	}
+
+	private void closeFile() {
+		if (out == null) return;
+		try {
+			Formatter formatter = getFormatter();
+			String tail = formatter != null ? formatter.getTail(this) : "";
+			if (tail != null && !tail.isEmpty()) out.write(tail.getBytes(charset));
+			out.close();
+		} catch (IOException e) {
+			reportError(null, e, ErrorManager.CLOSE_FAILURE);
+		}
+		out = null;
+	}
+
+	/**
+	 * 同じ prefix のファイルが maxFiles を超えた分を古い順に削除します。
+	 * 名前順では同じ秒に作った prefix-日時-1.log が prefix-日時.log より前に並ぶため、更新日時と連番の順で並べる。
+	 */
+	private void deleteOldFiles() {
+		if (maxFiles <= 0) return;
+		List<LogFile> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "-*.log")) {
+			for (Path file : stream) {
+				files.add(new LogFile(file, Files.getLastModifiedTime(file).toMillis(), sequence(file)));
+			}
+		} catch (IOException e) {
+			reportError(null, e, ErrorManager.GENERIC_FAILURE);
+			return;
+		}
+		Collections.sort(files);
+		for (int i = 0; i < files.size() - maxFiles; i++) {
+			Path file = files.get(i).path;
+			if (file.equals(currentFile)) continue;
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				reportError(null, e, ErrorManager.GENERIC_FAILURE);
+			}
+		}
+	}
+
+	/**
+	 * prefix-日時-連番.log の連番。連番の無いファイルは 0
+	 */
+	private int sequence(Path file) {
+		String name = file.getFileName().toString();
+		int start = prefix.length() + 1;
+		int end = name.length() - ".log".length();
+		int dash = name.lastIndexOf('-', end - 1);
+		if (dash < start) return 0;
+		try {
+			return Integer.parseInt(name.substring(dash + 1, end));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static final class LogFile implements Comparable<LogFile> {
+		final Path path;
+		final long modified;
+		final int sequence;
+
+		LogFile(Path path, long modified, int sequence) {
+			this.path = path;
+			this.modified = modified;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(LogFile o) {
+			if (modified != o.modified) return Long.compare(modified, o.modified);
+			if (sequence != o.sequence) return Integer.compare(sequence, o.sequence);
+			return path.compareTo(o.path);
+		}
+	}
+}
@@ -51,9 +51,11 @@ public void setFacingDirection(double x, double y) {
 		if (sx == 0 && sy == 0) return;
 		if (sx != 0 && sy != 0) {
 			double scale = 1.0 / Math.sqrt(2.0);
-			facingDirection = new Vector2D(sx * scale, sy * scale);
+			facingDirection.setX(sx * scale);
+			facingDirection.setY(sy * scale);
 		} else {
-			facingDirection = new Vector2D(sx, sy);
+			facingDirection.setX(sx);
+			facingDirection.setY(sy);
 		}
 	}
 
@@ -62,7 +64,8 @@ public void update() {
 	}
 
 	public void setVelocity(double x, double y) {
-		this.velocity = new Vector2D(x, y);
+		velocity.setX(x);
+		velocity.setY(y);
 	}
 
 	public boolean collidesWith(Entity other) {
@@ -0,0 +1,80 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多数のスレッドから同時に記録できる対数バケットのヒストグラムです。
+ * 2のべき乗ごとの区間をさらに8分割するため、パーセンタイルの誤差は12.5%以内に収まります。
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder sum = new LongAdder();
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS) return (int) Math.max(0, value);
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long lowerBoundOf(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = index % SUB_BUCKETS;
+		return (1L << exponent) | ((long) sub << (exponent - SUB_BUCKET_BITS));
+	}
+
+	public void record(long value) {
+		counts.incrementAndGet(indexOf(value));
+		if (value > 0) sum.add(value);
+	}
+
+	/**
+	 * 記録した値の合計
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * bound を含むバケットまでの記録数です。バケットの幅だけ多めに数える場合があります。
+	 */
+	public long getCountAtOrBelow(long bound) {
+		if (bound < 0) return 0;
+		int last = indexOf(bound);
+		long total = 0;
+		for (int i = 0; i <= last; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * @param percentile 0.0 ～ 100.0
+	 * @return 該当するバケットの下限値。記録がない場合は 0
+	 */
+	public long getPercentile(double percentile) {
+		long total = getCount();
+		if (total == 0) return 0;
+		long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= Math.max(1, rank)) return lowerBoundOf(i);
+		}
+		return lowerBoundOf(BUCKETS - 1);
+	}
+}
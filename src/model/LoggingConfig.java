@@ -6,6 +6,7 @@
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
@@ -16,8 +17,20 @@
 
 /**
  * ログの設定を行うクラスです。
+ * ファイル出力は次のシステムプロパティで調整できます。
+ * <pre>
+ * -Djcf.log.async=false        : 非同期の書き込みを使わず、従来の FileHandler で出力する
+ * -Djcf.log.queue=8192         : 書き込み待ちにできるログの件数。超えた分は破棄して件数を記録する
+ * -Djcf.log.maxBytes=10485760  : 1ファイルの最大サイズ(バイト)
+ * -Djcf.log.rotateMinutes=1440 : ファイルを切り替える間隔(分)
+ * -Djcf.log.maxFiles=10        : 残すファイル数(0 は無制限)
+ * </pre>
  */
 public final class LoggingConfig {
+	private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+	private static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+	private static final long DEFAULT_ROTATE_MINUTES = 24 * 60;
+	private static final int DEFAULT_MAX_FILES = 10;
 	private static boolean initialized;
 
 	private LoggingConfig() {
@@ -25,7 +38,7 @@ private LoggingConfig() {
 
 	/**
 	 * ログの設定を行います。
-	 * コンソールとファイルの両方に出力を行います。
+	 * コンソールとファイルの両方に出力を行います。ファイルへは専用スレッドが書き込みます。
 	 */
 	public static synchronized void initialize(String packageName) {
 		if (initialized) return;
@@ -34,8 +47,6 @@ public static synchronized void initialize(String packageName) {
 			// ログの保存先の設定
 			Path logDir = Paths.get("logs");
 			Files.createDirectories(logDir);
-			String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-			Path logFile = logDir.resolve(packageName + "-" + timestamp + ".log");
 
 			// ログに関するすべての設定の初期化
 			Logger rootLogger = Logger.getLogger("");
@@ -52,7 +63,7 @@ public static synchronized void initialize(String packageName) {
 			consoleHandler.setFormatter(formatter);
 
 			// ファイル出力用の設定
-			FileHandler fileHandler = new FileHandler(logFile.toString(), true);
+			Handler fileHandler = createFileHandler(logDir, packageName);
 			fileHandler.setLevel(Level.FINE);
 			fileHandler.setFormatter(formatter);
 
@@ -78,4 +89,17 @@ public static synchronized void initialize(String packageName) {
 			throw new IllegalStateException("ログの初期化に失敗しました", e);
 		}
 	}
+
+	private static Handler createFileHandler(Path logDir, String packageName) throws IOException {
+		if ("false".equalsIgnoreCase(System.getProperty("jcf.log.async"))) {
+			String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+			Path logFile = logDir.resolve(packageName + "-" + timestamp + ".log");
+			return new FileHandler(logFile.toString(), true);
+		}
+		return new AsyncLogHandler(logDir, packageName,
+				Integer.getInteger("jcf.log.queue", DEFAULT_QUEUE_CAPACITY),
+				Long.getLong("jcf.log.maxBytes", DEFAULT_MAX_BYTES),
+				TimeUnit.MINUTES.toMillis(Long.getLong("jcf.log.rotateMinutes", DEFAULT_ROTATE_MINUTES)),
+				Integer.getInteger("jcf.log.maxFiles", DEFAULT_MAX_FILES));
+	}
 }
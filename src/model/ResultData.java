@@ -20,6 +20,15 @@ public ResultData(int id) {
 		reset();
 	}
 
+	public ResultData(int id, ResultType result, int kills, int deaths, double damageGiven, double damageTaken) {
+		this.id = id;
+		this.result = result == null ? ResultType.LOSE : result;
+		this.kills = kills;
+		this.deaths = deaths;
+		this.damageGiven = damageGiven;
+		this.damageTaken = damageTaken;
+	}
+
 	public static ResultData fromProtocolString(String token) {
 		String[] fields = token.split(FIELD_SPLIT_REGEX);
 		int id = Integer.parseInt(fields[0]);
@@ -28,13 +37,7 @@ public static ResultData fromProtocolString(String token) {
 		int deaths = Integer.parseInt(fields[3]);
 		double damageGiven = Double.parseDouble(fields[4]);
 		double damageTaken = Double.parseDouble(fields[5]);
-		ResultData data = new ResultData(id);
-		data.result = type;
-		data.kills = kills;
-		data.deaths = deaths;
-		data.damageGiven = damageGiven;
-		data.damageTaken = damageTaken;
-		return data;
+		return new ResultData(id, type, kills, deaths, damageGiven, damageTaken);
 	}
 
 	public static String serializeList(Iterable<ResultData> results) {
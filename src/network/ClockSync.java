@@ -0,0 +1,146 @@
+package network;
+
+/**
+ * PING/PONG の時刻から、相手との往復時間(RTT)とその揺らぎ(ジッター)、相手の時計とのずれを推定するクラスです。
+ * 時刻は各プロセスの単調増加する時計({@link System#nanoTime()})をマイクロ秒にしたもので、起点は相手と一致しない。
+ * 時計のずれは NTP と同じく、直近 {@value #WINDOW} 回のうち往復時間が最も短かった応答から求める(往復が短いほど片道の偏りが小さいため)。
+ * サーバーからの PING に含まれるフレーム番号を記録し、サーバーのフレーム番号を自分の時計の時刻に換算できます。
+ * 更新は受信スレッドのみが行い、値は他のスレッドからも読み出せる。
+ */
+public final class ClockSync {
+	private static final int WINDOW = 8;
+	private static final double RTT_GAIN = 1.0 / 8; // RFC 6298 の SRTT と同じ重み
+	private static final double JITTER_GAIN = 1.0 / 4; // RFC 6298 の RTTVAR と同じ重み
+
+	// 受信スレッドのみが使用
+	private final long[] windowRtt = new long[WINDOW];
+	private final long[] windowOffset = new long[WINDOW];
+	private int windowIndex;
+
+	private volatile long samples;
+	private volatile long lastRttMicros = -1;
+	private volatile double smoothedRttMicros = -1;
+	private volatile double jitterMicros;
+	private volatile long offsetMicros; // 相手の時計 - 自分の時計
+	private volatile TickAnchor tickAnchor;
+
+	/**
+	 * PING/PONG で使う現在時刻(マイクロ秒)
+	 */
+	public static long nowMicros() {
+		return System.nanoTime() / 1000;
+	}
+
+	/**
+	 * 自分が送った PING への応答を記録します。
+	 *
+	 * @param pingSentAt     PING を送った時刻(自分の時計)
+	 * @param peerReceivedAt 相手が PING を受け取った時刻(相手の時計)
+	 * @param peerSentAt     相手が PONG を送った時刻(相手の時計)
+	 * @param receivedAt     PONG を受け取った時刻(自分の時計)
+	 */
+	void onPong(long pingSentAt, long peerReceivedAt, long peerSentAt, long receivedAt) {
+		long rtt = Math.max(0, (receivedAt - pingSentAt) - (peerSentAt - peerReceivedAt));
+		long offset = ((peerReceivedAt - pingSentAt) + (peerSentAt - receivedAt)) / 2;
+		long count = samples;
+		if (count == 0) {
+			smoothedRttMicros = rtt;
+			jitterMicros = rtt / 2.0;
+		} else {
+			double smoothed = smoothedRttMicros;
+			jitterMicros += (Math.abs(smoothed - rtt) - jitterMicros) * JITTER_GAIN;
+			smoothedRttMicros = smoothed + (rtt - smoothed) * RTT_GAIN;
+		}
+		windowRtt[windowIndex] = rtt;
+		windowOffset[windowIndex] = offset;
+		windowIndex = (windowIndex + 1) % WINDOW;
+		int filled = (int) Math.min(count + 1, WINDOW);
+		int best = 0;
+		for (int i = 1; i < filled; i++) {
+			if (windowRtt[i] < windowRtt[best]) best = i;
+		}
+		offsetMicros = windowOffset[best];
+		lastRttMicros = rtt;
+		samples = count + 1;
+	}
+
+	/**
+	 * 相手の時計で peerMicros の時点にフレーム tick が完了していたことを記録します。
+	 */
+	void onTick(long peerMicros, int tick, int tickRate) {
+		tickAnchor = tick >= 0 && tickRate > 0 ? new TickAnchor(peerMicros, tick, tickRate) : null;
+	}
+
+	/**
+	 * 受け取った PONG の数
+	 */
+	public long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * 平滑化した往復時間(ms)。未計測の場合は -1
+	 */
+	public double getRttMillis() {
+		double rtt = smoothedRttMicros;
+		return rtt < 0 ? -1 : rtt / 1000.0;
+	}
+
+	/**
+	 * 直近の往復時間(ms)。未計測の場合は -1
+	 */
+	public double getLastRttMillis() {
+		long rtt = lastRttMicros;
+		return rtt < 0 ? -1 : rtt / 1000.0;
+	}
+
+	/**
+	 * 往復時間の揺らぎ(ms)
+	 */
+	public double getJitterMillis() {
+		return jitterMicros / 1000.0;
+	}
+
+	/**
+	 * 相手の時計から自分の時計を引いた値(マイクロ秒)
+	 */
+	public long getOffsetMicros() {
+		return offsetMicros;
+	}
+
+	/**
+	 * 相手の時計の時刻を自分の時計の時刻に換算します。
+	 */
+	public long toLocalMicros(long peerMicros) {
+		return peerMicros - offsetMicros;
+	}
+
+	/**
+	 * サーバーのフレーム番号と1秒あたりのフレーム数を受け取っているか
+	 */
+	public boolean hasTickAnchor() {
+		return tickAnchor != null && samples > 0;
+	}
+
+	/**
+	 * サーバーがフレーム tick を完了する(した)時刻を自分の時計で返します。{@link #hasTickAnchor()} が false の場合は 0
+	 */
+	public long tickToLocalMicros(int tick) {
+		TickAnchor anchor = tickAnchor;
+		if (anchor == null) return 0;
+		long peerMicros = anchor.peerMicros + (tick - anchor.tick) * 1_000_000L / anchor.tickRate;
+		return toLocalMicros(peerMicros);
+	}
+
+	private static final class TickAnchor {
+		private final long peerMicros;
+		private final int tick;
+		private final int tickRate;
+
+		TickAnchor(long peerMicros, int tick, int tickRate) {
+			this.peerMicros = peerMicros;
+			this.tick = tick;
+			this.tickRate = tickRate;
+		}
+	}
+}
@@ -25,6 +25,21 @@ public Command(final String message) {
 		commandBody = body;
 	}
 
+	/**
+	 * メッセージの先頭のコマンド番号だけを読み取ります。本文を切り出さないため、種類だけを見る場合に使う。
+	 */
+	public static CommandType typeOf(final String message) {
+		int id = 0;
+		int length = 0;
+		for (int i = 0, n = message.length(); i < n; i++) {
+			char c = message.charAt(i);
+			if (c == ':') break;
+			if (c < '0' || c > '9' || ++length > 3) return CommandType.UNKNOWN;
+			id = id * 10 + (c - '0');
+		}
+		return length == 0 ? CommandType.UNKNOWN : CommandType.fromId(id);
+	}
+
 	public CommandType getCommandType() {
 		return commandType;
 	}
@@ -22,6 +22,7 @@ public enum CommandType {
 	SERVER_CLOSED(12),
 	PROJECTILE(13),
 	PROJECTILE_REMOVE(14),
+	SERVER_BUSY(15),
 
 	// -------------------- クライアント -> サーバー --------------------
 	CONNECT(50),
@@ -42,6 +43,10 @@ public enum CommandType {
 	DEFEND(66),
 	CHARGE_START(67),
 
+	// -------------------- 双方向 --------------------
+	PING(100),
+	PONG(101),
+
 	// -------------------- その他 --------------------
 	ERROR(254),
 	UNKNOWN(255);
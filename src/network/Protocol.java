@@ -8,6 +8,20 @@
  * 区切り文字をレベル別に[`:` > `,` > ` `]と定義するため、これらの文字を送信データ内に含んではいけません。
  */
 public final class Protocol {
+	/**
+	 * クライアントはこの時間状態に含まれなかった弾の表示を消す。サーバーは状態を間引く場合もこの時間より前に送り直す
+	 */
+	public static final long PROJECTILE_TTL_MS = 600;
+
+	/**
+	 * ルームの閉鎖を知らせるメッセージの本文に付ける理由。対戦が始まらないまま期限を過ぎた
+	 */
+	public static final String ROOM_CLOSED_IDLE = "idle";
+	/**
+	 * ルームの閉鎖を知らせるメッセージの本文に付ける理由。サーバーの停止処理のため、試合が終わったルームから閉じた
+	 */
+	public static final String ROOM_CLOSED_SHUTDOWN = "shutdown";
+
 	private Protocol() {
 	}
 
@@ -72,10 +86,23 @@ public static String gameRoomClosed() {
 		return CommandType.GAME_ROOM_CLOSED.getId() + "";
 	}
 
+	public static String gameRoomClosed(String reason) {
+		return CommandType.GAME_ROOM_CLOSED.getId() + ":" + reason;
+	}
+
 	public static String serverClosed() {
 		return CommandType.SERVER_CLOSED.getId() + "";
 	}
 
+	/**
+	 * 混雑のため接続・参加・ルーム作成を断ったことを知らせます。
+	 *
+	 * @param retryAfterMs 再試行までの目安の時間(ms)
+	 */
+	public static String serverBusy(long retryAfterMs) {
+		return CommandType.SERVER_BUSY.getId() + ":" + retryAfterMs;
+	}
+
 	public static String projectile(long projectileId, ProjectileType type, double x, double y, double power, double vx, double vy) {
 		return CommandType.PROJECTILE.getId() + ":" + projectileId + "," + type.getId() + "," + x + "," + y + "," + power + "," + vx + "," + vy;
 	}
@@ -161,4 +188,29 @@ public static String resign() {
 	public static String disconnect() {
 		return CommandType.DISCONNECT.getId() + "";
 	}
+
+	// -------------------- 双方向 --------------------
+
+	/**
+	 * @param sentAt 送信時刻({@link ClockSync#nowMicros()})
+	 */
+	public static String ping(long sentAt) {
+		return CommandType.PING.getId() + ":" + sentAt;
+	}
+
+	/**
+	 * サーバーから送る PING。送信時点で完了しているフレーム番号と1秒あたりのフレーム数を含める。
+	 */
+	public static String ping(long sentAt, int tick, int tickRate) {
+		return CommandType.PING.getId() + ":" + sentAt + "," + tick + "," + tickRate;
+	}
+
+	/**
+	 * @param pingSentAt PING に含まれていた送信時刻
+	 * @param receivedAt PING を受け取った時刻
+	 * @param sentAt     PONG の送信時刻
+	 */
+	public static String pong(long pingSentAt, long receivedAt, long sentAt) {
+		return CommandType.PONG.getId() + ":" + pingSentAt + "," + receivedAt + "," + sentAt;
+	}
 }
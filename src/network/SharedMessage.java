@@ -0,0 +1,129 @@
+package network;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 複数の接続へ同じ内容を送るための、送信用バイト列に変換済みのメッセージです。
+ * 変換は1回だけ行い、各接続の送信キューには同じインスタンスを入れます。
+ * 宛先ごとに {@link #retain()} し、送信スレッドが書き込み後に {@link #release()} します。
+ * 参照が無くなったバッファは {@link Pool} に戻して次のメッセージで使い回します。
+ */
+public final class SharedMessage {
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+
+	private final Pool pool;
+	private final AtomicInteger refCount = new AtomicInteger();
+	private byte[] data;
+	private int length;
+	private String text;
+
+	private SharedMessage(Pool pool, int capacity) {
+		this.pool = pool;
+		this.data = new byte[capacity];
+	}
+
+	/**
+	 * 宛先を1つ増やします。送信キューへ入れる前に呼ぶこと。
+	 */
+	public SharedMessage retain() {
+		refCount.incrementAndGet();
+		return this;
+	}
+
+	/**
+	 * 参照を1つ減らし、誰も使っていなければバッファをプールへ戻します。
+	 */
+	public void release() {
+		int remaining = refCount.decrementAndGet();
+		if (remaining == 0) {
+			text = null;
+			pool.recycle(this);
+		} else if (remaining < 0) {
+			throw new IllegalStateException("release() called more than retain()");
+		}
+	}
+
+	/**
+	 * 改行を含む送信バイト列。先頭から {@link #length()} バイトのみ有効で、書き換えてはいけません。
+	 */
+	byte[] data() {
+		return data;
+	}
+
+	/**
+	 * 改行を含む送信バイト数
+	 */
+	public int length() {
+		return length;
+	}
+
+	public String toString() {
+		return text;
+	}
+
+	@SuppressWarnings("deprecation")
+	private void encode(String message) {
+		int size = message.length();
+		boolean ascii = true;
+		for (int i = 0; i < size; i++) {
+			if (message.charAt(i) >= 0x80) {
+				ascii = false;
+				break;
+			}
+		}
+		byte[] bytes = ascii ? null : message.getBytes(Charset.defaultCharset());
+		int body = ascii ? size : bytes.length;
+		int total = body + LINE_SEPARATOR.length;
+		if (data.length < total) data = new byte[Math.max(total, data.length * 2)];
+		if (ascii) {
+			// 状態通知はほぼ数字と区切り文字のため、文字コードの変換も一時配列も通さずに下位8bitを写す
+			message.getBytes(0, size, data, 0);
+		} else {
+			System.arraycopy(bytes, 0, data, 0, body);
+		}
+		System.arraycopy(LINE_SEPARATOR, 0, data, body, LINE_SEPARATOR.length);
+		length = total;
+		text = message;
+	}
+
+	/**
+	 * 使い終わった {@link SharedMessage} を保持するプールです。
+	 * 取り出しは主にゲームループから、返却は各接続の送信スレッドから行われるため、どちらもスレッドセーフです。
+	 */
+	public static final class Pool {
+		private static final int INITIAL_CAPACITY = 128;
+		private final ArrayBlockingQueue<SharedMessage> free;
+
+		/**
+		 * @param maxPooled 保持しておく最大数。超えた分は破棄する
+		 */
+		public Pool(int maxPooled) {
+			free = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+		}
+
+		/**
+		 * message をバイト列に変換した {@link SharedMessage} を返します。呼び出し元が参照を1つ持った状態で返すため、
+		 * 宛先へ渡し終えたら {@link SharedMessage#release()} すること。
+		 */
+		public SharedMessage encode(String message) {
+			SharedMessage shared = free.poll();
+			if (shared == null) shared = new SharedMessage(this, INITIAL_CAPACITY);
+			shared.encode(message);
+			shared.refCount.set(1);
+			return shared;
+		}
+
+		/**
+		 * プールに残っている数
+		 */
+		public int size() {
+			return free.size();
+		}
+
+		private void recycle(SharedMessage shared) {
+			free.offer(shared);
+		}
+	}
+}
@@ -2,40 +2,71 @@
 
 import java.io.BufferedReader;
 import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class TcpConnection implements Closeable {
 	private static final Logger logger = Logger.getLogger(TcpConnection.class.getName());
+	/**
+	 * 送受信メッセージのログ(FINE)を何件に1件出力するか。0 以下の場合は出力しない (-Djcf.log.wireSample)
+	 */
+	private static final int WIRE_TRACE_SAMPLE = Integer.getInteger("jcf.log.wireSample", 1);
+	private static final String PING_PREFIX = CommandType.PING.getId() + ":";
+	private static final String PONG_PREFIX = CommandType.PONG.getId() + ":";
 
 	private final Socket socket;
 	private final PrintWriter out;
+	private final OutputStream rawOut; // 変換済みのバイト列を書き込む。out と同じストリームで、out は行ごとにフラッシュ済み
 	private final BufferedReader in;
 	private final MessageSender sender;
 	private final AtomicBoolean disconnectNotified = new AtomicBoolean(false);
+	private final LongAdder bytesIn = new LongAdder();
+	private final LongAdder bytesOut = new LongAdder();
+	private final LongAdder messagesIn = new LongAdder();
+	private final LongAdder messagesOut = new LongAdder();
+	private final ClockSync clockSync = new ClockSync();
 
-	private Thread senderThread;
-	private Thread receiverThread;
+	private volatile Thread senderThread;
+	private volatile Thread receiverThread;
 
 	private volatile MessageListener messageListener;
 	private volatile DisconnectListener disconnectListener;
 
 	private volatile boolean isConnected;
+	private long receivedNanos; // 受信スレッドのみが更新
+	private volatile long lastActivityNanos = System.nanoTime(); // 最後に1行受信した時刻。接続直後は接続した時刻
 
 	public TcpConnection(Socket socket) throws IOException {
 		this.socket = socket;
-		this.out = new PrintWriter(socket.getOutputStream(), true);
-		this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+		this.rawOut = new CountingOutputStream(socket.getOutputStream(), bytesOut);
+		this.out = new PrintWriter(rawOut, true);
+		this.in = new BufferedReader(new InputStreamReader(new CountingInputStream(socket.getInputStream(), bytesIn)));
 		this.isConnected = true;
 		this.sender = new MessageSender();
 	}
 
+	/**
+	 * 送受信スレッドを作らずに、{@link #sendMessage} と同じ文字コード・改行で1行だけ書き込みます。接続を受け付けずに断るときに使う。
+	 */
+	public static void writeLine(Socket socket, String message) throws IOException {
+		PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+		writer.println(message);
+		if (writer.checkError()) {
+			throw new IOException("Write error");
+		}
+	}
+
 	public void start() {
 		if (senderThread != null || receiverThread != null) return;
 		senderThread = new Thread(sender, "Sender");
@@ -52,6 +83,102 @@ public void sendMessage(String message) {
 		sender.send(message);
 	}
 
+	/**
+	 * 変換済みのメッセージを送信キューへ入れます。呼び出し元が {@link SharedMessage#retain()} した参照を引き継ぎ、
+	 * 書き込み後(切断済みの場合はその場)で解放します。
+	 */
+	public void sendShared(SharedMessage message) {
+		if (!isConnected) {
+			message.release();
+			return;
+		}
+		sender.queue.offer(message);
+	}
+
+	/**
+	 * ここまでに渡したメッセージをすべて書き込んだ後に、送信スレッドで callback を実行します。
+	 */
+	public void runAfterSent(Runnable callback) {
+		sender.queue.offer(callback);
+	}
+
+	/**
+	 * 往復時間と時計のずれを測るための PING を送ります。応答の PONG は受信スレッドが {@link #getClockSync()} に記録する。
+	 */
+	public void ping() {
+		sender.send(Protocol.ping(ClockSync.nowMicros()));
+	}
+
+	/**
+	 * 完了済みのフレーム番号を含めた PING を送ります。相手はサーバーのフレームを自分の時計に換算できる。
+	 */
+	public void ping(int tick, int tickRate) {
+		sender.send(Protocol.ping(ClockSync.nowMicros(), tick, tickRate));
+	}
+
+	/**
+	 * 相手との往復時間と時計のずれの推定値
+	 */
+	public ClockSync getClockSync() {
+		return clockSync;
+	}
+
+	/**
+	 * 受信リスナーの中から呼び出した場合に、処理中のメッセージを読み込んだ時刻(System.nanoTime)を返します。
+	 */
+	public long getLastReceivedNanos() {
+		return receivedNanos;
+	}
+
+	/**
+	 * 最後に相手から1行受信してからの経過時間(ms)。まだ受信していない場合は接続してからの時間
+	 */
+	public long getIdleMillis() {
+		return (System.nanoTime() - lastActivityNanos) / 1_000_000;
+	}
+
+	// -------------------- 統計 --------------------
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	public long getMessagesIn() {
+		return messagesIn.sum();
+	}
+
+	public long getMessagesOut() {
+		return messagesOut.sum();
+	}
+
+	/**
+	 * 送信待ちのメッセージ数
+	 */
+	public int getPendingMessages() {
+		return sender.queue.size();
+	}
+
+	/**
+	 * @return start() 前は null
+	 */
+	public Thread getSenderThread() {
+		return senderThread;
+	}
+
+	/**
+	 * @return start() 前は null
+	 */
+	public Thread getReceiverThread() {
+		return receiverThread;
+	}
+
+	public String getRemoteAddress() {
+		return String.valueOf(socket.getRemoteSocketAddress());
+	}
+
 	public void close() {
 		if (!isConnected) return;
 		isConnected = false;
@@ -87,15 +214,31 @@ private void notifyDisconnect() {
 	}
 
 	// -------------------- 内部クラス --------------------
+	/**
+	 * 送受信ログを出力するかを判定します。ログが無効なときはメッセージの文字列を組み立てません。
+	 *
+	 * @param count 送信・受信それぞれのスレッドが数えたメッセージ数
+	 */
+	private static boolean shouldTrace(long count) {
+		return WIRE_TRACE_SAMPLE > 0 && count % WIRE_TRACE_SAMPLE == 0 && logger.isLoggable(Level.FINE);
+	}
+
 	private class MessageReceiver implements Runnable {
+		private long traced; // 受信スレッドのみが使用
+
 		public void run() {
 			try {
 				while (isConnected) {
 					String line = in.readLine();
 					if (line == null) break;
+					receivedNanos = System.nanoTime();
+					lastActivityNanos = receivedNanos;
+					messagesIn.increment();
+					// PING/PONG は受信スレッドでそのまま処理し、リスナーへは渡さない
+					if (handleClockMessage(line)) continue;
 
 					if (messageListener != null) {
-						logger.fine(() -> "受信: " + line);
+						if (shouldTrace(++traced)) logger.fine("受信: " + line);
 						messageListener.onMessageReceived(line);
 					}
 				}
@@ -107,8 +250,33 @@ public void run() {
 		}
 	}
 
+	/**
+	 * PING には PONG を返し、PONG は往復時間と時計のずれの推定に使います。
+	 *
+	 * @return PING/PONG だった場合は true
+	 */
+	private boolean handleClockMessage(String line) {
+		boolean ping = line.startsWith(PING_PREFIX);
+		if (!ping && !line.startsWith(PONG_PREFIX)) return false;
+		long receivedAt = receivedNanos / 1000;
+		try {
+			String[] fields = line.substring(line.indexOf(':') + 1).split(",");
+			long sentAt = Long.parseLong(fields[0]);
+			if (ping) {
+				if (fields.length >= 3) clockSync.onTick(sentAt, Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+				sender.send(Protocol.pong(sentAt, receivedAt, ClockSync.nowMicros()));
+			} else if (fields.length >= 3) {
+				clockSync.onPong(sentAt, Long.parseLong(fields[1]), Long.parseLong(fields[2]), receivedAt);
+			}
+		} catch (NumberFormatException e) {
+			logger.fine(() -> "不正な PING/PONG を受信しました: " + line);
+		}
+		return true;
+	}
+
 	private class MessageSender implements Runnable {
-		private final LinkedBlockingQueue<String> queue = new LinkedBlockingQueue<>();
+		private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>(); // String・SharedMessage またはコールバック
+		private long traced; // 送信スレッドのみが使用
 
 		void send(String msg) {
 			queue.offer(msg);
@@ -117,9 +285,19 @@ void send(String msg) {
 		public void run() {
 			try {
 				while (isConnected && !Thread.currentThread().isInterrupted()) {
-					String msg = queue.take();
+					Object item = queue.take();
+					if (item instanceof Runnable) {
+						runCallback((Runnable) item);
+						continue;
+					}
+					if (item instanceof SharedMessage) {
+						writeShared((SharedMessage) item);
+						continue;
+					}
+					String msg = (String) item;
 					out.println(msg);
-					logger.fine(() -> "送信: " + msg);
+					messagesOut.increment();
+					if (shouldTrace(++traced)) logger.fine("送信: " + msg);
 					if (out.checkError()) {
 						throw new IOException("Write error");
 					}
@@ -129,5 +307,71 @@ public void run() {
 				close();
 			}
 		}
+
+		private void writeShared(SharedMessage message) throws IOException {
+			// 解放後は別のメッセージに使い回されるため、ログ用の文字列は先に取り出す
+			String traceText = shouldTrace(++traced) ? message.toString() : null;
+			try {
+				rawOut.write(message.data(), 0, message.length());
+			} finally {
+				message.release();
+			}
+			messagesOut.increment();
+			if (traceText != null) logger.fine("送信: " + traceText);
+		}
+
+		private void runCallback(Runnable callback) {
+			try {
+				callback.run();
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "送信後の処理で例外が発生しました。", e);
+			}
+		}
+	}
+
+	/**
+	 * ソケットから読み込んだバイト数を数えるストリーム
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+		private final LongAdder counter;
+
+		CountingInputStream(InputStream in, LongAdder counter) {
+			super(in);
+			this.counter = counter;
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) counter.increment();
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) counter.add(n);
+			return n;
+		}
+	}
+
+	/**
+	 * ソケットへ書き込んだバイト数を数えるストリーム
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+		private final LongAdder counter;
+
+		CountingOutputStream(OutputStream out, LongAdder counter) {
+			super(out);
+			this.counter = counter;
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			counter.increment();
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			counter.add(len);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+package server;
+
+import model.CharacterInfo;
+import model.CharacterType;
+import model.ResultData;
+import server.record.MatchLog;
+import server.record.MatchRecordFormat;
+import server.record.MatchReplayer;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 対戦記録(.jcfr)をヘッドレスで再生するコマンドラインツールです。
+ * <pre>
+ * java -cp out server.ReplayMain [--ticks] [--verify] [--alloc-budget B] &lt;ファイルまたはディレクトリ&gt;...
+ *   --ticks          : 更新ごとの状態ハッシュも出力する
+ *   --verify         : 記録時の最終状態ハッシュと一致しない記録があれば終了コード 1 で終了する
+ *   --alloc-budget B : 1回の更新あたりの確保量が B バイトを超える記録があれば終了コード 1 で終了する
+ * </pre>
+ */
+public final class ReplayMain {
+	private ReplayMain() {
+	}
+
+	public static void main(final String[] args) {
+		boolean printTicks = false;
+		boolean verify = false;
+		double allocBudget = -1;
+		List<Path> files = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--ticks")) {
+				printTicks = true;
+			} else if (arg.equals("--verify")) {
+				verify = true;
+			} else if (arg.equals("--alloc-budget") && i + 1 < args.length) {
+				allocBudget = Double.parseDouble(args[++i]);
+			} else {
+				collect(Paths.get(arg), files);
+			}
+		}
+		if (files.isEmpty()) {
+			System.err.println("使い方: ReplayMain [--ticks] [--verify] [--alloc-budget B] <ファイルまたはディレクトリ>...");
+			System.exit(2);
+			return;
+		}
+
+		// キャラクター設定の読み込みを1件目の再生時間に含めない
+		CharacterInfo.forType(CharacterType.defaultType());
+		// 確保量を検査する場合は、クラスの初期化による確保を含めないよう1件目を一度空で再生しておく
+		if (allocBudget >= 0) warmUp(files.get(0));
+
+		int mismatches = 0;
+		int failures = 0;
+		int overBudget = 0;
+		long totalTicks = 0;
+		long startAll = System.nanoTime();
+		for (Path file : files) {
+			try {
+				long start = System.nanoTime();
+				MatchLog log = MatchLog.read(file);
+				MatchReplayer.ReplayResult result = MatchReplayer.replay(log, printTicks);
+				double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+				totalTicks += result.getTicks();
+
+				String status;
+				if (!log.isComplete()) {
+					status = "INCOMPLETE";
+				} else if (log.getEndStateHash() == result.getFinalStateHash()) {
+					status = "MATCH";
+				} else {
+					status = "DIFF";
+					mismatches++;
+				}
+				double allocPerTick = result.getAllocatedBytesPerTick();
+				if (allocBudget >= 0 && allocPerTick > allocBudget) {
+					status += " OVER_BUDGET";
+					overBudget++;
+				}
+				List<ResultData> results = result.getResults();
+				System.out.printf("%s ticks=%d hash=%016x recorded=%016x %s time=%.3fms alloc=%.1fB/tick result=%s%n",
+						file.getFileName(), result.getTicks(), result.getFinalStateHash(), log.getEndStateHash(),
+						status, elapsedMs, allocPerTick, results != null ? ResultData.serializeList(results) : "-");
+				if (printTicks) {
+					long[] hashes = result.getTickHashes();
+					for (int i = 0; i < hashes.length; i++) {
+						System.out.printf("  %d %016x%n", i + 1, hashes[i]);
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				failures++;
+				System.out.println(file.getFileName() + " ERROR " + e);
+			}
+		}
+		double totalMs = (System.nanoTime() - startAll) / 1_000_000.0;
+		System.out.printf("replayed=%d ticks=%d diff=%d error=%d over_budget=%d time=%.1fms%n",
+				files.size(), totalTicks, mismatches, failures, overBudget, totalMs);
+		if (failures > 0 || (verify && mismatches > 0) || overBudget > 0) System.exit(1);
+	}
+
+	private static void warmUp(Path file) {
+		try {
+			MatchReplayer.replay(MatchLog.read(file), false);
+		} catch (IOException | RuntimeException e) {
+			// 本番の再生で同じエラーを報告する
+		}
+	}
+
+	private static void collect(Path path, List<Path> files) {
+		if (!Files.isDirectory(path)) {
+			files.add(path);
+			return;
+		}
+		List<Path> found = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + MatchRecordFormat.FILE_EXTENSION)) {
+			for (Path file : stream) {
+				found.add(file);
+			}
+		} catch (IOException e) {
+			System.err.println(path + " を読み込めませんでした: " + e);
+		}
+		Collections.sort(found);
+		files.addAll(found);
+	}
+}
@@ -0,0 +1,60 @@
+package server;
+
+import java.util.logging.Logger;
+
+/**
+ * サーバーの設定値を取得するクラスです。
+ * 値はシステムプロパティ(-Djcf.キー=値)で指定し、未指定や不正な値の場合はデフォルト値を使用します。
+ */
+public final class ServerConfig {
+	private static final Logger logger = Logger.getLogger(ServerConfig.class.getName());
+	private static final String PREFIX = "jcf.";
+
+	private ServerConfig() {
+	}
+
+	public static String getString(String key, String defaultValue) {
+		String value = System.getProperty(PREFIX + key);
+		if (value == null || value.trim().isEmpty()) return defaultValue;
+		return value.trim();
+	}
+
+	public static int getInt(String key, int defaultValue) {
+		String value = getString(key, null);
+		if (value == null) return defaultValue;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			logger.warning(() -> "設定値が不正です(" + PREFIX + key + "=" + value + ")。デフォルト(" + defaultValue + ")を使用します。");
+			return defaultValue;
+		}
+	}
+
+	public static long getLong(String key, long defaultValue) {
+		String value = getString(key, null);
+		if (value == null) return defaultValue;
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			logger.warning(() -> "設定値が不正です(" + PREFIX + key + "=" + value + ")。デフォルト(" + defaultValue + ")を使用します。");
+			return defaultValue;
+		}
+	}
+
+	public static double getDouble(String key, double defaultValue) {
+		String value = getString(key, null);
+		if (value == null) return defaultValue;
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			logger.warning(() -> "設定値が不正です(" + PREFIX + key + "=" + value + ")。デフォルト(" + defaultValue + ")を使用します。");
+			return defaultValue;
+		}
+	}
+
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getString(key, null);
+		if (value == null) return defaultValue;
+		return Boolean.parseBoolean(value);
+	}
+}
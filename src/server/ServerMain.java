@@ -1,15 +1,21 @@
 package server;
 
 import model.LoggingConfig;
+import server.controller.AdminConsole;
 import server.controller.GameServer;
+import server.metrics.MetricsHttpServer;
+import server.metrics.ServerMetrics;
 
+import java.io.IOException;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public final class ServerMain {
 	private static final Logger logger = Logger.getLogger(ServerMain.class.getName());
 	private static final int DEFAULT_PORT = 10000;
+	private static final AtomicBoolean stopped = new AtomicBoolean();
 
 	private ServerMain() {
 	}
@@ -28,16 +34,43 @@ public static void main(final String[] args) {
 
 		GameServer server = new GameServer(port);
 		new Thread(server).start();
-		Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+		MetricsHttpServer metricsServer = startMetricsServer();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(server, metricsServer)));
+		// 停止処理の完了(drain)や管理用ポートの exit は標準入力を待つスレッド以外から呼ばれるため、プロセスごと終了する
+		AdminConsole console = new AdminConsole(server, () -> {
+			stop(server, metricsServer);
+			System.exit(0);
+		});
+		console.startListener();
 
 		Scanner sc = new Scanner(System.in);
-		while (true) {
-			String input = sc.nextLine();
-			if (input.equals("exit")) {
-				server.close();
-				sc.close();
-				break;
-			}
+		while (sc.hasNextLine()) {
+			String result = console.execute(sc.nextLine());
+			if (!result.isEmpty()) System.out.println(result);
+		}
+		sc.close();
+	}
+
+	/**
+	 * サーバーとメトリクス用の HTTP サーバーを閉じます。2回目以降の呼び出しは何もしない。
+	 */
+	private static void stop(GameServer server, MetricsHttpServer metricsServer) {
+		if (!stopped.compareAndSet(false, true)) return;
+		server.close();
+		if (metricsServer != null) metricsServer.close();
+	}
+
+	/**
+	 * -Djcf.metrics.port が指定されたときのみメトリクス用の HTTP サーバーを起動します。
+	 */
+	private static MetricsHttpServer startMetricsServer() {
+		int metricsPort = ServerConfig.getInt("metrics.port", 0);
+		if (metricsPort <= 0) return null;
+		try {
+			return new MetricsHttpServer(metricsPort, ServerMetrics.get());
+		} catch (final IOException e) {
+			logger.log(Level.WARNING, "メトリクス用の HTTP サーバーを起動できませんでした。", e);
+			return null;
 		}
 	}
 }
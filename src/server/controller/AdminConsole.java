@@ -0,0 +1,319 @@
+package server.controller;
+
+import model.GameCharacter;
+import model.LatencyHistogram;
+import model.PlayerInfo;
+import network.TcpConnection;
+import server.ServerConfig;
+import server.metrics.ServerMetrics;
+import server.metrics.TickProfiler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 運用者向けの管理コマンドを実行するクラスです。標準入力と、指定した場合はローカルの管理用ポートから1行ずつ受け付けます。
+ * 状態を表示するコマンドはカウンタ・ヒストグラムとゲームループが毎フレーム更新する値だけを読み、ルームや {@link GameServer} のロックは取らない。
+ * 障害の調査中に実行してもゲームループを止めない。
+ */
+public final class AdminConsole {
+	private static final Logger logger = Logger.getLogger(AdminConsole.class.getName());
+	/**
+	 * 1 以上のとき、ループバックアドレスのこのポートで管理コマンドを受け付ける (-Djcf.admin.port)
+	 */
+	private static final int PORT = ServerConfig.getInt("admin.port", 0);
+	private static final String DEFAULT_LOGGER = "server";
+	private static final String HELP = String.join(System.lineSeparator(),
+			"stats              サーバー全体の状況",
+			"rooms              ルームの一覧(フレーム処理時間 p99・プレイヤー数)",
+			"room <ルームID>     ルームと参加者の詳細",
+			"kick <接続ID>       接続を切断する",
+			"close <ルームID>    ルームを閉鎖する",
+			"drain              マッチングを止め、対戦中の試合が終わってから停止する",
+			"loglevel [ロガー] [レベル]  ログレベルを表示・変更する(ロガーの既定は " + DEFAULT_LOGGER + ")",
+			"exit               すぐに停止する",
+			"quit               管理用ポートの接続を終える");
+
+	private final GameServer server;
+	private final Runnable exitAction;
+	private final ConcurrentHashMap<String, Logger> adjustedLoggers = new ConcurrentHashMap<>(); // 変更した設定が回収されないよう保持する
+	private final AtomicInteger sessionIds = new AtomicInteger();
+
+	/**
+	 * @param exitAction exit と、drain の完了時に呼ぶ停止処理
+	 */
+	public AdminConsole(GameServer server, Runnable exitAction) {
+		this.server = server;
+		this.exitAction = exitAction;
+	}
+
+	/**
+	 * -Djcf.admin.port が指定されたときのみ、管理用ポートでの受け付けを始めます。
+	 */
+	public void startListener() {
+		if (PORT <= 0) return;
+		ServerSocket serverSocket;
+		try {
+			serverSocket = new ServerSocket(PORT, 4, InetAddress.getLoopbackAddress());
+		} catch (final IOException e) {
+			logger.log(Level.WARNING, "管理用ポート " + PORT + " を開けませんでした。", e);
+			return;
+		}
+		Thread listener = new Thread(() -> acceptSessions(serverSocket), "AdminListener");
+		listener.setDaemon(true);
+		listener.start();
+		logger.info(() -> "管理用ポート " + PORT + " でコマンドを受け付けます。");
+	}
+
+	/**
+	 * 1行分のコマンドを実行し、表示する結果を返します。
+	 */
+	public String execute(String line) {
+		String[] args = line.trim().split("\\s+");
+		String command = args[0].toLowerCase(Locale.ROOT);
+		try {
+			switch (command) {
+				case "":
+					return "";
+				case "help":
+					return HELP;
+				case "stats":
+					return stats();
+				case "rooms":
+					return rooms();
+				case "room":
+					return room(Integer.parseInt(argument(args, 1)));
+				case "kick":
+					return kick(Integer.parseInt(argument(args, 1)));
+				case "close":
+					return closeRoom(Integer.parseInt(argument(args, 1)));
+				case "drain":
+					return drain();
+				case "loglevel":
+					return logLevel(args);
+				case "exit":
+					logger.info("管理コマンドによりサーバーを停止します。");
+					exitAction.run();
+					return "停止しました。";
+				default:
+					return "不明なコマンドです: " + command + System.lineSeparator() + HELP;
+			}
+		} catch (final IllegalArgumentException e) {
+			return "引数が不正です: " + line.trim() + System.lineSeparator() + HELP;
+		}
+	}
+
+	// -------------------- コマンド --------------------
+	private String stats() {
+		ServerMetrics metrics = ServerMetrics.get();
+		LatencyHistogram ticks = metrics.getTickDuration();
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		String overload = metrics.getOverloadReason();
+		int running = 0;
+		for (GameRoom room : server.getRooms()) {
+			if (room.isMatchRunning()) running++;
+		}
+		StringBuilder sb = new StringBuilder();
+		line(sb, "接続: open=%d accepted=%d idle_closed=%d abuse_disconnects=%d",
+				metrics.getOpenConnections(), metrics.getAcceptedConnections(), metrics.getIdleConnectionsClosed(), metrics.getInputAbuseDisconnects());
+		line(sb, "マッチング待ち: %d", metrics.getWaitingPlayers());
+		line(sb, "ルーム: public=%d private=%d running=%d degraded=%d expired=%d",
+				metrics.getPublicRooms(), metrics.getPrivateRooms(), running, metrics.getDegradedRooms(), metrics.getExpiredRooms());
+		line(sb, "フレーム処理: ticks=%d p50=%.2fms p99=%.2fms overruns=%d",
+				ticks.getCount(), millis(ticks.getPercentile(50)), millis(ticks.getPercentile(99)), metrics.getTickOverruns());
+		line(sb, "受け付け: overload=%s rejected=%d draining=%s",
+				overload != null ? overload : "-", metrics.getRejectedConnects() + metrics.getRejectedJoins() + metrics.getRejectedRoomCreations(), server.isDraining());
+		sb.append(String.format("JVM: heap=%dMB/%dMB threads=%d uptime=%ds",
+				heap.getUsed() >> 20, heap.getMax() >> 20, ManagementFactory.getThreadMXBean().getThreadCount(),
+				ManagementFactory.getRuntimeMXBean().getUptime() / 1000));
+		return sb.toString();
+	}
+
+	private String rooms() {
+		List<GameRoom> rooms = new ArrayList<>(server.getRooms());
+		if (rooms.isEmpty()) return "ルームはありません。";
+		rooms.sort(Comparator.comparingInt(GameRoom::getRoomId));
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%6s %-8s %-7s %7s %9s %9s %7s %8s %7s", "id", "type", "state", "players", "tick", "p99(ms)", "overrun", "quality", "queue"));
+		for (GameRoom room : rooms) {
+			sb.append(System.lineSeparator());
+			sb.append(String.format("%6d %-8s %-7s %7d %9d %9.2f %7d %8d %7d",
+					room.getRoomId(), room.isPublic() ? "public" : "private", room.isMatchRunning() ? "playing" : "lobby",
+					room.getPlayerCount(), room.getMatchTick(), tickP99Millis(room), room.getTickProfiler().getOverruns(),
+					room.getQualityLevel(), room.getCommandQueueDepth()));
+		}
+		return sb.toString();
+	}
+
+	private String room(int roomId) {
+		GameRoom room = server.getRoom(roomId);
+		if (room == null) return "ルーム(ID: " + roomId + ")は存在しません。";
+		TickProfiler profiler = room.getTickProfiler();
+		LatencyHistogram total = profiler.getHistogram(TickProfiler.Phase.TOTAL);
+		StringBuilder sb = new StringBuilder();
+		line(sb, "ルーム %d (%s) %s tick=%d", roomId, room.isPublic() ? "public" : "private",
+				room.isMatchRunning() ? "playing" : "lobby", room.getMatchTick());
+		line(sb, "フレーム: %dHz 送信 %dHz quality=%d ticks=%d p50=%.2fms p99=%.2fms overruns=%d",
+				room.getTickRate(), room.getSendRate(), room.getQualityLevel(), profiler.getTicks(),
+				millis(total.getPercentile(50)), millis(total.getPercentile(99)), profiler.getOverruns());
+		line(sb, "エンティティ=%d コマンドキュー=%d まとめたフレーム=%d",
+				room.getEntityCount(), room.getCommandQueueDepth(), room.getMergedFrames());
+		sb.append("参加者:");
+		for (ClientHandler handler : room.getMembers()) {
+			PlayerInfo player = room.getPlayer(handler);
+			GameCharacter character = player != null ? player.getCharacter() : null;
+			TcpConnection connection = handler.getConnection();
+			sb.append(System.lineSeparator());
+			sb.append(String.format("  %d %s %s ready=%s rtt=%.1fms queued=%d dropped=%d",
+					handler.getConnectionId(), player != null ? player.getName() : "-",
+					character != null ? character.getType().name() : "-", player != null && player.isReady(),
+					connection.getClockSync().getRttMillis(), handler.getPendingMessages(), handler.getDroppedCommands()));
+		}
+		return sb.toString();
+	}
+
+	private String kick(int connectionId) {
+		ClientHandler handler = server.getConnection(connectionId);
+		if (handler == null) return "接続(ID: " + connectionId + ")は存在しません。";
+		GameRoom room = handler.getRoom();
+		logger.warning(() -> "管理コマンドにより接続(ID: " + connectionId + ")を切断します。");
+		handler.close();
+		return "接続(ID: " + connectionId + ")を切断しました。" + (room != null ? " ルーム: " + room.getRoomId() : "");
+	}
+
+	private String closeRoom(int roomId) {
+		GameRoom room = server.getRoom(roomId);
+		if (room == null) return "ルーム(ID: " + roomId + ")は存在しません。";
+		logger.warning(() -> "管理コマンドによりルーム(ID: " + roomId + ")を閉鎖します。");
+		room.close();
+		return "ルーム(ID: " + roomId + ")を閉鎖しました。";
+	}
+
+	private String drain() {
+		if (!server.drain(() -> {
+			logger.info("停止処理が完了したためサーバーを停止します。");
+			exitAction.run();
+		})) {
+			return "既に停止処理中です。";
+		}
+		return "マッチングを止めました。対戦中の試合が終わると停止します。";
+	}
+
+	private String logLevel(String[] args) {
+		if (args.length > 3) throw new IllegalArgumentException();
+		String loggerName = DEFAULT_LOGGER;
+		String levelName = null;
+		if (args.length == 2 && isLevel(args[1])) {
+			levelName = args[1];
+		} else if (args.length >= 2) {
+			loggerName = args[1];
+			if (args.length == 3) levelName = args[2];
+		}
+		if (loggerName.equals("root")) loggerName = "";
+		if (levelName != null) {
+			Level level = Level.parse(levelName.toUpperCase(Locale.ROOT));
+			adjustedLoggers.computeIfAbsent(loggerName, Logger::getLogger).setLevel(level);
+			String name = describeName(loggerName);
+			logger.info(() -> "管理コマンドによりロガー " + name + " のレベルを " + level + " にしました。");
+		}
+		return describeLevel(loggerName);
+	}
+
+	// -------------------- 管理用ポート --------------------
+	private void acceptSessions(ServerSocket serverSocket) {
+		while (true) {
+			try {
+				Socket session = serverSocket.accept();
+				Thread thread = new Thread(() -> runSession(session), "AdminSession-" + sessionIds.incrementAndGet());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (final IOException e) {
+				logger.log(Level.WARNING, "管理用ポートの受け付けで例外が発生しました。", e);
+				return;
+			}
+		}
+	}
+
+	private void runSession(Socket session) {
+		logger.info(() -> "管理用ポートに接続されました: " + session.getRemoteSocketAddress());
+		try (Socket closing = session;
+		     BufferedReader in = new BufferedReader(new InputStreamReader(closing.getInputStream(), StandardCharsets.UTF_8));
+		     PrintWriter out = new PrintWriter(new OutputStreamWriter(closing.getOutputStream(), StandardCharsets.UTF_8), true)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().equalsIgnoreCase("quit")) break;
+				String result = execute(line);
+				if (!result.isEmpty()) out.println(result);
+			}
+		} catch (final IOException e) {
+			logger.log(Level.FINE, "管理用ポートの接続が切れました。", e);
+		}
+	}
+
+	// -------------------- privateメソッド --------------------
+	private static String argument(String[] args, int index) {
+		if (args.length <= index) throw new IllegalArgumentException();
+		return args[index];
+	}
+
+	private static boolean isLevel(String value) {
+		try {
+			Level.parse(value.toUpperCase(Locale.ROOT));
+			return true;
+		} catch (final IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * ロガーのレベルと、出力先ごとのレベルを返します。出力先のレベルより詳細なログは出力されない
+	 */
+	private static String describeLevel(String loggerName) {
+		Logger target = Logger.getLogger(loggerName);
+		Logger effective = target;
+		while (effective.getLevel() == null && effective.getParent() != null) {
+			effective = effective.getParent();
+		}
+		StringBuilder sb = new StringBuilder(describeName(loggerName)).append(": ");
+		sb.append(target.getLevel() != null ? target.getLevel() : "継承 (" + effective.getLevel() + ")");
+		sb.append(" 出力先:");
+		for (Handler handler : Logger.getLogger("").getHandlers()) {
+			sb.append(' ').append(handler.getClass().getSimpleName()).append('=').append(handler.getLevel());
+		}
+		return sb.toString();
+	}
+
+	private static String describeName(String loggerName) {
+		return loggerName.isEmpty() ? "root" : loggerName;
+	}
+
+	private static double tickP99Millis(GameRoom room) {
+		return millis(room.getTickProfiler().getHistogram(TickProfiler.Phase.TOTAL).getPercentile(99));
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	private static void line(StringBuilder sb, String format, Object... args) {
+		sb.append(String.format(format, args)).append(System.lineSeparator());
+	}
+}
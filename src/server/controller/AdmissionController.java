@@ -0,0 +1,130 @@
+package server.controller;
+
+import server.ServerConfig;
+import server.metrics.ServerMetrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * サーバー全体の負荷から、新しい接続・参加・ルーム作成を受け付けるかを決めるクラスです。
+ * 直近1秒の処理落ちフレームの割合、スレッド数、GC 後のヒープ使用率のどれかが上限を超えている間を過負荷とする。
+ * ルームの起動直後などの一時的な処理落ちで断らないよう、{@value #ENTER_SAMPLES} 回続けて上限を超えたときに過負荷とし、下回ったらすぐに解除する。
+ * 過負荷の間は新しい接続とルーム作成を断り、ランダムマッチは既存のルームに空きが無ければ新しいルームを作らずに待ち行列で待たせる。
+ * マッチング待ちの人数が上限に達している間は、待ち行列に入れず新しい接続とランダムマッチの参加要求を断る。
+ * 断るときは再試行までの目安の時間を知らせる。既に対戦中のルームには影響しない。
+ * 判定はタイマースレッドのみが行い、結果は他のスレッドからロックなしで読める。
+ */
+final class AdmissionController {
+	private static final Logger logger = Logger.getLogger(AdmissionController.class.getName());
+	/**
+	 * 負荷に応じて受け付けを制限する (-Djcf.admission.enabled)
+	 */
+	static final boolean ENABLED = ServerConfig.getBoolean("admission.enabled", true);
+	/**
+	 * 断るときに知らせる再試行までの時間(ms) (-Djcf.admission.retryAfterMs)
+	 */
+	static final long RETRY_AFTER_MS = Math.max(0, ServerConfig.getLong("admission.retryAfterMs", 5000));
+	private static final double MAX_OVERRUN_PERCENT = ServerConfig.getDouble("admission.overrunPercent", 10);
+	private static final int MAX_THREADS = ServerConfig.getInt("admission.maxThreads", 4000);
+	private static final double MAX_HEAP_PERCENT = ServerConfig.getDouble("admission.heapPercent", 90);
+	private static final int MAX_WAITING = ServerConfig.getInt("admission.maxWaiting", 200);
+	private static final long MIN_TICKS = 60; // これより少ないフレーム数では処理落ちの割合を判定しない
+	private static final int ENTER_SAMPLES = 2;
+
+	private final ServerMetrics metrics;
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final List<MemoryPoolMXBean> memoryPools = ManagementFactory.getMemoryPoolMXBeans();
+	private final long maxHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+	private long lastTicks; // タイマースレッドのみが使用
+	private long lastOverruns; // タイマースレッドのみが使用
+	private int exceededSamples; // タイマースレッドのみが使用
+	private volatile String overloadReason;
+
+	AdmissionController(ServerMetrics metrics) {
+		this.metrics = metrics;
+		lastTicks = metrics.getTickDuration().getCount();
+		lastOverruns = metrics.getTickOverruns();
+	}
+
+	/**
+	 * 負荷を調べ直します。タイマースレッドから1秒ごとに呼ぶ。
+	 *
+	 * @return 過負荷が解消した場合は true
+	 */
+	boolean update() {
+		if (!ENABLED) return false;
+		String previous = overloadReason;
+		String reason = evaluate();
+		exceededSamples = reason != null ? exceededSamples + 1 : 0;
+		if (previous == null && exceededSamples < ENTER_SAMPLES) return false;
+		overloadReason = reason;
+		metrics.setOverloadReason(reason);
+		if (reason != null && previous == null) {
+			logger.warning(() -> "過負荷のため新しい接続・参加の受け付けを制限します: " + reason);
+		} else if (reason == null && previous != null) {
+			logger.info("負荷が下がったため受け付けの制限を解除します。");
+			return true;
+		}
+		return false;
+	}
+
+	boolean isOverloaded() {
+		return overloadReason != null;
+	}
+
+	/**
+	 * ランダムマッチの参加要求を待ち行列へ入れられるか
+	 *
+	 * @param waiting 現在の待ち人数
+	 */
+	boolean canQueue(long waiting) {
+		return !ENABLED || MAX_WAITING <= 0 || waiting < MAX_WAITING;
+	}
+
+	/**
+	 * 新しい接続を受け付けるか。接続ごとに送受信のスレッドを作るため、過負荷の間と待ち行列が一杯の間は断る
+	 */
+	boolean canAccept() {
+		return !isOverloaded() && canQueue(metrics.getWaitingPlayers());
+	}
+
+	// -------------------- privateメソッド --------------------
+	private String evaluate() {
+		long ticks = metrics.getTickDuration().getCount();
+		long overruns = metrics.getTickOverruns();
+		long tickDelta = ticks - lastTicks;
+		long overrunDelta = overruns - lastOverruns;
+		lastTicks = ticks;
+		lastOverruns = overruns;
+		if (MAX_OVERRUN_PERCENT > 0 && tickDelta >= MIN_TICKS) {
+			double percent = overrunDelta * 100.0 / tickDelta;
+			if (percent > MAX_OVERRUN_PERCENT) return String.format("処理落ちフレーム %.1f%%", percent);
+		}
+		int threadCount = threads.getThreadCount();
+		if (MAX_THREADS > 0 && threadCount > MAX_THREADS) return "スレッド数 " + threadCount;
+		if (MAX_HEAP_PERCENT > 0 && maxHeap > 0) {
+			double percent = liveHeapBytes() * 100.0 / maxHeap;
+			if (percent > MAX_HEAP_PERCENT) return String.format("ヒープ使用率 %.1f%%", percent);
+		}
+		return null;
+	}
+
+	/**
+	 * 直近の GC 後に残っていたヒープの量。回収前のゴミを含めないため、使用量より実際の逼迫に近い
+	 */
+	private long liveHeapBytes() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : memoryPools) {
+			if (pool.getType() != MemoryType.HEAP || !pool.isValid()) continue;
+			MemoryUsage afterGc = pool.getCollectionUsage();
+			used += afterGc != null ? afterGc.getUsed() : pool.getUsage().getUsed();
+		}
+		return used;
+	}
+}
@@ -1,9 +1,15 @@
 package server.controller;
 
+import network.Command;
+import network.CommandType;
 import network.DisconnectListener;
 import network.MessageListener;
+import network.SharedMessage;
 import network.TcpConnection;
+import server.metrics.JmxSupport;
+import server.metrics.ServerMetrics;
 
+import javax.management.ObjectName;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.Socket;
@@ -17,11 +23,26 @@ class ClientHandler implements Closeable {
 
 	private final int connectionId;
 	private final TcpConnection connection;
+	private final ObjectName mbeanName;
+	private final SendRateController sendRate = new SendRateController();
+	private final StatePriority statePriority = new StatePriority();
+	private final InputRateLimiter rateLimiter = new InputRateLimiter();
+	private volatile MessageListener messageListener;
+	private volatile DisconnectListener disconnectListener;
+	private volatile Runnable closeHook;
+	private volatile GameRoom room; // 参加中のルーム。未参加の場合は null
+	private volatile long joinRequestedNs; // 参加要求を受けた時刻。ゲーム開始で 0 に戻す
 
 	// -------------------- コンストラクタ --------------------
 	public ClientHandler(final Socket socket) throws IOException {
 		this.connectionId = ID_GENERATOR.incrementAndGet();
 		connection = new TcpConnection(socket);
+		// 切断時の後始末を必ず行うため、接続のリスナーは自身が持ち続けて登録先へ中継する
+		connection.setDisconnectListener(this::onDisconnect);
+		// 頻度の上限を超えたコマンドは登録先へ渡す前に捨てるため、受信も自身が中継する
+		connection.setMessageListener(this::onMessage);
+		ServerMetrics.get().connectionOpened();
+		mbeanName = JmxSupport.register("Connection", connectionId, new ConnectionStats(this));
 	}
 
 	public void start() {
@@ -38,15 +59,148 @@ public void sendMessage(final String message) {
 		connection.sendMessage(message);
 	}
 
+	/**
+	 * 変換済みのメッセージを送ります。呼び出し元が retain() した参照を引き継ぎます。
+	 */
+	void sendShared(final SharedMessage message) {
+		connection.sendShared(message);
+	}
+
+	/**
+	 * 往復時間を測る PING を送ります。対戦中のルームに参加している場合は、完了済みのフレーム番号も含める。
+	 */
+	public void ping() {
+		GameRoom current = room;
+		int tick = current != null ? current.getMatchTick() : -1;
+		if (tick >= 0) {
+			connection.ping(tick, current.getTickRate());
+		} else {
+			connection.ping();
+		}
+	}
+
+	/**
+	 * ここまでに送ったメッセージが書き込まれた後に、送信スレッドで callback を実行します。
+	 */
+	public void runAfterSent(final Runnable callback) {
+		connection.runAfterSent(callback);
+	}
+
+	/**
+	 * メッセージリスナーの中から呼び出した場合に、そのメッセージを受信した時刻を返します。
+	 */
+	public long getLastReceivedNanos() {
+		return connection.getLastReceivedNanos();
+	}
+
+	/**
+	 * 最後にクライアントから受信してからの経過時間(ms)
+	 */
+	long getIdleMillis() {
+		return connection.getIdleMillis();
+	}
+
 	public int getConnectionId() {
 		return connectionId;
 	}
 
+	void markJoinRequested() {
+		joinRequestedNs = System.nanoTime();
+	}
+
+	long getJoinRequestedNs() {
+		return joinRequestedNs;
+	}
+
+	/**
+	 * 参加要求を受けた時刻を返して消去します。未記録または記録済みの場合は 0 です。
+	 */
+	long takeJoinRequestedNs() {
+		long requestedAt = joinRequestedNs;
+		joinRequestedNs = 0;
+		return requestedAt;
+	}
+
+	TcpConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * 状態を送る間隔の判定。ルームの送信スレッドのみが判定に使う
+	 */
+	SendRateController getSendRate() {
+		return sendRate;
+	}
+
+	/**
+	 * 状態送信で送る弾の選択。ルームの送信スレッドのみが使う
+	 */
+	StatePriority getStatePriority() {
+		return statePriority;
+	}
+
+	/**
+	 * 頻度の上限を超えたため捨てたコマンド数
+	 */
+	long getDroppedCommands() {
+		return rateLimiter.getDroppedMessages();
+	}
+
+	/**
+	 * 送信キューに残っているメッセージ数
+	 */
+	int getPendingMessages() {
+		return connection.getPendingMessages();
+	}
+
 	public void setMessageListener(final MessageListener messageListener) {
-		connection.setMessageListener(messageListener);
+		this.messageListener = messageListener;
 	}
 
 	public void setDisconnectListener(final DisconnectListener disconnectListener) {
-		connection.setDisconnectListener(disconnectListener);
+		this.disconnectListener = disconnectListener;
+	}
+
+	/**
+	 * 切断時に、入れ替わる切断リスナーとは別に必ず実行する処理を登録します。
+	 */
+	void setCloseHook(final Runnable hook) {
+		this.closeHook = hook;
+	}
+
+	void setRoom(final GameRoom room) {
+		this.room = room;
+	}
+
+	GameRoom getRoom() {
+		return room;
+	}
+
+	/**
+	 * 受信スレッドから呼ばれ、頻度の上限内のコマンドだけを登録先へ渡します。大量に送り続ける接続は切断する。
+	 */
+	private void onMessage(final String message) {
+		CommandType type = Command.typeOf(message);
+		if (!rateLimiter.tryAcquire(type, connection.getLastReceivedNanos())) {
+			ServerMetrics.get().inputDropped(type);
+			if (rateLimiter.isAbusive()) {
+				logger.warning(() -> "プレイヤー(ID: " + connectionId + ")がコマンドを大量に送信しているため切断します。");
+				ServerMetrics.get().inputAbuseDisconnected();
+				close();
+			}
+			return;
+		}
+		ServerMetrics.get().commandReceived(type);
+		MessageListener listener = messageListener;
+		if (listener != null) listener.onMessageReceived(message);
+	}
+
+	private void onDisconnect() {
+		ServerMetrics.get().connectionClosed();
+		JmxSupport.unregister(mbeanName);
+		Runnable hook = closeHook;
+		if (hook != null) hook.run();
+		DisconnectListener listener = disconnectListener;
+		if (listener != null) listener.onDisconnect();
 	}
 }
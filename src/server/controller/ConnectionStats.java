@@ -0,0 +1,83 @@
+package server.controller;
+
+import network.TcpConnection;
+import server.metrics.ConnectionMXBean;
+import server.metrics.ThreadUsage;
+
+/**
+ * 接続の統計を JMX に公開するクラスです。値はすべて送受信スレッドを止めずに読み出します。
+ */
+final class ConnectionStats implements ConnectionMXBean {
+	private final ClientHandler handler;
+
+	ConnectionStats(ClientHandler handler) {
+		this.handler = handler;
+	}
+
+	public int getConnectionId() {
+		return handler.getConnectionId();
+	}
+
+	public String getRemoteAddress() {
+		return connection().getRemoteAddress();
+	}
+
+	public int getOutboundQueueDepth() {
+		return connection().getPendingMessages();
+	}
+
+	public double getRttMillis() {
+		return connection().getClockSync().getRttMillis();
+	}
+
+	public double getRttJitterMillis() {
+		return connection().getClockSync().getJitterMillis();
+	}
+
+	public int getStateInterval() {
+		return handler.getSendRate().getInterval();
+	}
+
+	public long getSkippedStates() {
+		return handler.getSendRate().getSkippedStates();
+	}
+
+	public long getDroppedCommands() {
+		return handler.getDroppedCommands();
+	}
+
+	public long getBytesIn() {
+		return connection().getBytesIn();
+	}
+
+	public long getBytesOut() {
+		return connection().getBytesOut();
+	}
+
+	public long getMessagesIn() {
+		return connection().getMessagesIn();
+	}
+
+	public long getMessagesOut() {
+		return connection().getMessagesOut();
+	}
+
+	public double getIoCpuTimeMillis() {
+		TcpConnection connection = connection();
+		return sum(ThreadUsage.cpuNanos(connection.getReceiverThread()), ThreadUsage.cpuNanos(connection.getSenderThread())) / 1_000_000.0;
+	}
+
+	public long getIoAllocatedBytes() {
+		TcpConnection connection = connection();
+		return sum(ThreadUsage.allocatedBytes(connection.getReceiverThread()), ThreadUsage.allocatedBytes(connection.getSenderThread()));
+	}
+
+	private static long sum(long a, long b) {
+		if (a < 0 && b < 0) return -1;
+		return Math.max(0, a) + Math.max(0, b);
+	}
+
+	private TcpConnection connection() {
+		return handler.getConnection();
+	}
+}
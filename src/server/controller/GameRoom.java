@@ -4,23 +4,32 @@
 import model.GameCharacter;
 import model.PlayerInfo;
 import model.ResultData;
-import model.Vector2D;
 import network.CommandType;
 import network.Protocol;
+import server.ServerConfig;
+import server.metrics.FlightEvents;
+import server.metrics.InputLatencyTracer;
+import server.metrics.JmxSupport;
+import server.metrics.RoomUsage;
+import server.metrics.ServerMetrics;
+import server.metrics.ThreadUsage;
+import server.metrics.TickProfiler;
 import server.model.Archer;
 import server.model.BattleField;
-import server.model.Fighter;
+import server.model.CharacterFactory;
 import server.model.GameSession;
-import server.model.Projectile;
-import server.model.Warrior;
-import server.model.Wizard;
+import server.record.MatchRecordWriter;
+import server.record.MatchRecorder;
 
+import javax.management.ObjectName;
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.StringJoiner;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -32,44 +41,135 @@ class GameRoom extends Thread implements Closeable {
 	private static final Logger logger = Logger.getLogger(GameRoom.class.getName());
 	private static final AtomicInteger ID_GENERATOR = new AtomicInteger(0);
 	private static final int MAX_PLAYERS = 4;
-	private static final int FPS = 60;
-	private static final long FRAME_TIME = 1000_000_000L / FPS;
+	/**
+	 * 1秒あたりのシミュレーション回数の既定値 (-Djcf.room.tickHz)。移動量などは1フレームあたりで決まっているため、変えると試合の速さも変わる
+	 */
+	static final int DEFAULT_TICK_RATE = Math.max(1, ServerConfig.getInt("room.tickHz", 60));
+	/**
+	 * 1秒あたりの状態送信回数の既定値 (-Djcf.room.sendHz)。シミュレーション回数以上の場合は毎フレーム送る
+	 */
+	static final int DEFAULT_SEND_RATE = Math.max(1, ServerConfig.getInt("room.sendHz", DEFAULT_TICK_RATE));
+	/**
+	 * 状態の文字列化と配信をルームごとの送信スレッドで行う (-Djcf.room.pipeline)
+	 */
+	private static final boolean PIPELINED = ServerConfig.getBoolean("room.pipeline", true);
 
 	// -------------------- インスタンス定数 --------------------
 	private final int roomId;
+	private final int tickRate;
+	private final int sendRate;
+	private final long frameTime;
 	private final ConcurrentLinkedQueue<ServerCommand> commandQueue;
 	private final ConcurrentHashMap<ClientHandler, PlayerInfo> playerMap;
 	private final GameSession gameSession;
 	private final boolean isPublic;
+	private final MatchRecordWriter recordWriter;
+	private final TickProfiler profiler;
+	private final InputLatencyTracer inputTracer;
+	private final StatePipeline pipeline;
+	private final QualityController quality;
+	private final Supplier<String> slowTickContext = this::describeSlowTick;
+	private final ObjectName mbeanName;
 	// -------------------- インスタンス変数 --------------------
+	private volatile ClientHandler[] recipients = new ClientHandler[0]; // 一斉送信の宛先。playerMap の変更時に作り直す
 	private volatile Runnable disconnectListener;
 	private volatile boolean isClosed;
+	private volatile boolean matchesStopped; // サーバーの停止処理中。新しい参加・対戦を受け付けない
+	private volatile boolean matchRunning; // 監視用。ゲームループが毎フレーム更新する
+	private volatile int entityCount; // 監視用。ゲームループが毎フレーム更新する
+	private volatile int matchTick = -1; // 対戦中に完了したフレーム数。対戦中でない場合は -1。ゲームループが毎フレーム更新する
+	private volatile int currentSendRate; // 負荷による簡略化を反映した1秒あたりの状態送信回数
+	private volatile long lobbyActivityNanos = System.nanoTime(); // 対戦前の最後の参加・準備・準備解除・対戦終了の時刻
+	private volatile long exitCpuNanos = -1; // スレッド終了時の CPU 時間
+	private volatile long exitAllocatedBytes = -1; // スレッド終了時の累計確保バイト数
+	private MatchRecorder recorder;
+	private int lastCommandCount; // ゲームループのスレッドのみが使用
+	private int sendCredit; // ゲームループのスレッドのみが使用。tickRate 以上になったフレームで状態を送る
+	private long reportedCappedShots; // ゲームループのスレッドのみが使用
+
+	/**
+	 * @param recordWriter 対戦を記録しない場合は null
+	 */
+	public GameRoom(final boolean isPublic, final MatchRecordWriter recordWriter) {
+		this(isPublic, recordWriter, DEFAULT_TICK_RATE, DEFAULT_SEND_RATE);
+	}
 
-	public GameRoom(final boolean isPublic) {
+	/**
+	 * @param recordWriter 対戦を記録しない場合は null
+	 * @param tickRate     1秒あたりのシミュレーション回数。入力は毎フレーム処理する
+	 * @param sendRate     1秒あたりの状態送信回数。送らないフレームの弾の消滅・ダメージは次の送信にまとめる
+	 */
+	public GameRoom(final boolean isPublic, final MatchRecordWriter recordWriter, final int tickRate, final int sendRate) {
 		roomId = ID_GENERATOR.incrementAndGet();
+		this.tickRate = Math.max(1, tickRate);
+		this.sendRate = Math.max(1, Math.min(sendRate, this.tickRate));
+		currentSendRate = this.sendRate;
+		frameTime = 1000_000_000L / this.tickRate;
 		commandQueue = new ConcurrentLinkedQueue<>();
 		playerMap = new ConcurrentHashMap<>(MAX_PLAYERS);
-		gameSession = new GameSession(MAX_PLAYERS);
+		gameSession = new GameSession(MAX_PLAYERS, this.tickRate);
 		this.isPublic = isPublic;
+		this.recordWriter = recordWriter;
+		profiler = new TickProfiler("ルーム(ID: " + roomId + ")", frameTime, ServerMetrics.get().getTickDuration());
+		inputTracer = new InputLatencyTracer();
+		pipeline = new StatePipeline(roomId, PIPELINED);
+		quality = new QualityController(this.tickRate);
 		isClosed = false;
+		ServerMetrics.get().addRooms(isPublic, 1);
+		mbeanName = JmxSupport.register("Room", roomId, new RoomStats(this));
+		ServerMetrics.get().registerRoom(roomId, this::getUsage);
 	}
 
 	public void run() {
+		pipeline.start();
+		try {
+			runLoop();
+		} finally {
+			// 対戦中に閉鎖した場合の記録の終了は、更新の途中の状態を読まないようゲームループの終了後に行う
+			finishRecording();
+			pipeline.close();
+			// 終了後は ThreadMXBean から値を取れないため、自スレッドのうちに最終値を残す
+			exitCpuNanos = ThreadUsage.cpuNanos(this);
+			exitAllocatedBytes = ThreadUsage.allocatedBytes(this);
+			ServerMetrics.get().unregisterRoom(getUsage());
+		}
+	}
+
+	private void runLoop() {
 		long targetTime = System.nanoTime();
 		while (!isClosed) {
-			targetTime += FRAME_TIME;
+			targetTime += frameTime;
+			profiler.beginTick();
+			Object tickEvent = FlightEvents.beginTick();
+			int commands = 0;
+			boolean stateDue = false;
 			while (!commandQueue.isEmpty()) {
 				ServerCommand cmd = commandQueue.poll();
 				handleCommand(cmd);
+				commands++;
 			}
+			lastCommandCount = commands;
+			profiler.endPhase(TickProfiler.Phase.COMMANDS);
 			if (gameSession.isStarted() && gameSession.getBattleField() != null) {
 				BattleField.UpdateResult result = gameSession.update();
-				broadcastState(result);
+				profiler.endSimulation(gameSession.getBattleField());
+				// 決着したフレームは最後の状態を必ず送る
+				stateDue = isSendFrame() || !gameSession.isStarted();
+				captureState(result, stateDue);
+				profiler.endPhase(TickProfiler.Phase.BROADCAST);
 				sendResultIfReady();
 			}
 			if (gameSession.isGameOver()) {
 				resetGameRoom();
 			}
+			// 対戦中は状態を送るフレームまで、メッセージとイベントを同じフレームに積んだまま持ち越す
+			if (stateDue || !gameSession.isStarted()) pipeline.publish(recipients);
+			profiler.endPhase(TickProfiler.Phase.RESULT);
+			boolean overrun = profiler.endTick(slowTickContext);
+			if (overrun) ServerMetrics.get().tickOverrun();
+			if (gameSession.isStarted()) updateQuality(overrun);
+			updateSnapshot();
+			FlightEvents.endTick(tickEvent, roomId, profiler.getTicks(), commands, playerMap.size(), entityCount, overrun);
 			long waitNs = targetTime - System.nanoTime();
 			if (waitNs > 0) {
 				long waitMs = waitNs / 1_000_000;
@@ -90,15 +190,64 @@ public void run() {
 	}
 
 	public void close() {
+		close(Protocol.gameRoomClosed());
+	}
+
+	/**
+	 * 対戦が始まらないまま ttlMs 以上、参加・準備・準備解除が無い場合に、理由を付けて全員に通知してルームを閉鎖します。
+	 * 対戦中のルームは閉鎖しない。
+	 *
+	 * @return 閉鎖した場合は true
+	 */
+	public boolean closeIfIdle(long ttlMs) {
+		synchronized (this) {
+			if (isClosed || gameSession.isStarted()) return false;
+			long idleMs = (System.nanoTime() - lobbyActivityNanos) / 1_000_000;
+			if (idleMs < ttlMs) return false;
+			logger.info("ルーム(ID: " + roomId + ")で " + idleMs + "ms 対戦が始まらないため閉鎖します。");
+		}
+		close(Protocol.gameRoomClosed(Protocol.ROOM_CLOSED_IDLE));
+		return true;
+	}
+
+	/**
+	 * 以降の参加と新しい対戦を受け付けないようにし、対戦中でなければ理由を付けて全員に通知してルームを閉鎖します。
+	 * 対戦中のルームは閉鎖せず、試合が終わってから再び呼ばれたときに閉鎖する。
+	 *
+	 * @return 閉鎖した場合は true
+	 */
+	public boolean closeUnlessPlaying(String reason) {
+		synchronized (this) {
+			matchesStopped = true;
+			if (isClosed || gameSession.isStarted()) return false;
+			logger.info("ルーム(ID: " + roomId + ")を試合が無いため閉鎖します。理由: " + reason);
+		}
+		close(Protocol.gameRoomClosed(reason));
+		return true;
+	}
+
+	private void close(String closedMessage) {
 		synchronized (this) {
 			if (isClosed) return;
 			isClosed = true;
+			// 対戦中はゲームループが更新中の場合があるため、記録の終了はゲームループに任せる
+			if (!gameSession.isStarted()) finishRecording();
 			logger.info("ルーム(ID: " + roomId + ")を閉鎖します。全プレイヤーに通知中...");
+			logger.fine(profiler::summary);
+			logger.fine(() -> "ルーム(ID: " + roomId + ")の入力遅延:" + System.lineSeparator() + inputTracer.summary());
+			logger.fine(() -> "ルーム(ID: " + roomId + ")で送信が追いつかずにまとめたフレーム数: " + pipeline.getMergedFrames());
+			pipeline.close();
+			ServerMetrics.get().addRooms(isPublic, -1);
+			int qualityLevel = quality.getLevel();
+			if (qualityLevel > 0) ServerMetrics.get().roomQualityChanged(qualityLevel, 0, true);
+			JmxSupport.unregister(mbeanName);
+			// 閉鎖の通知が届くよう、送信キューに残ったメッセージを書き込み終えてから切断する
 			playerMap.keySet().forEach(handler -> {
-				handler.sendMessage(Protocol.gameRoomClosed());
-				handler.close();
+				handler.sendMessage(closedMessage);
+				handler.runAfterSent(handler::close);
 			});
 			playerMap.clear();
+			refreshRecipients();
 		}
 		if (disconnectListener != null) disconnectListener.run();
 	}
@@ -137,7 +286,7 @@ public synchronized int hashCode() {
 		return roomId;
 	}
 
-	public synchronized int getRoomId() {
+	public int getRoomId() {
 		return roomId;
 	}
 
@@ -145,25 +294,128 @@ public boolean isPublic() {
 		return isPublic;
 	}
 
+	public int getTickRate() {
+		return tickRate;
+	}
+
+	/**
+	 * 1秒あたりの状態送信回数。負荷のため簡略化している間は設定より少ない
+	 */
+	public int getSendRate() {
+		return currentSendRate;
+	}
+
+	/**
+	 * 負荷による簡略化の段階。0 は簡略化なし
+	 */
+	public int getQualityLevel() {
+		return quality.getLevel();
+	}
+
+	public TickProfiler getTickProfiler() {
+		return profiler;
+	}
+
+	public InputLatencyTracer getInputTracer() {
+		return inputTracer;
+	}
+
+	/**
+	 * 送信スレッドが追いつかずに、前のフレームとまとめて送ったフレーム数
+	 */
+	public long getMergedFrames() {
+		return pipeline.getMergedFrames();
+	}
+
+	public boolean isMatchRunning() {
+		return matchRunning;
+	}
+
+	/**
+	 * 直近のフレーム終了時点で、対戦開始から完了したフレーム数。対戦中でない場合は -1
+	 */
+	public int getMatchTick() {
+		return matchTick;
+	}
+
+	public int getPlayerCount() {
+		return playerMap.size();
+	}
+
+	/**
+	 * 現在の参加者。返す配列は変更しないこと。ルームのロックは取らない
+	 */
+	ClientHandler[] getMembers() {
+		return recipients;
+	}
+
+	/**
+	 * 参加者のプレイヤー情報。参加していない場合は null。ルームのロックは取らない
+	 */
+	PlayerInfo getPlayer(ClientHandler handler) {
+		return playerMap.get(handler);
+	}
+
+	/**
+	 * 直近のフレーム終了時点のエンティティ数
+	 */
+	public int getEntityCount() {
+		return entityCount;
+	}
+
+	public int getCommandQueueDepth() {
+		return commandQueue.size();
+	}
+
+	/**
+	 * ルームのスレッドと送信スレッドの CPU 時間・確保メモリ量と、選択されているキャラクターを返します。ルームのロックは取りません。
+	 */
+	public RoomUsage getUsage() {
+		long cpu = ThreadUsage.cpuNanos(this);
+		long allocated = ThreadUsage.allocatedBytes(this);
+		if (cpu < 0) cpu = exitCpuNanos;
+		if (allocated < 0) allocated = exitAllocatedBytes;
+		long encoderCpu = pipeline.getCpuNanos();
+		long encoderAllocated = pipeline.getAllocatedBytes();
+		if (cpu >= 0 && encoderCpu > 0) cpu += encoderCpu;
+		if (allocated >= 0 && encoderAllocated > 0) allocated += encoderAllocated;
+		StringJoiner characters = new StringJoiner(",");
+		for (PlayerInfo player : playerMap.values()) {
+			GameCharacter character = player.getCharacter();
+			characters.add(character != null ? character.getType().name() : "-");
+		}
+		return new RoomUsage(roomId, isPublic, matchRunning, playerMap.size(), characters.toString(),
+				profiler.getTicks(), cpu, allocated);
+	}
+
 	public void resetGameRoom() {
-		for (ClientHandler target : playerMap.keySet()) {
-			playerMap.get(target).setReady(false);
-			for (ClientHandler handler : playerMap.keySet()) {
-				target.sendMessage(Protocol.unreadySuccess(handler.getConnectionId()));
-			}
+		finishRecording();
+		ClientHandler[] targets = recipients;
+		for (ClientHandler target : targets) {
+			PlayerInfo player = playerMap.get(target);
+			if (player != null) player.setReady(false);
+		}
+		// 各宛先が受け取る順序は変えずに、同じメッセージは1回だけ変換する
+		for (ClientHandler handler : targets) {
+			broadcast(Protocol.unreadySuccess(handler.getConnectionId()));
 		}
 		gameSession.clearGameOver();
+		setQualityLevel(0);
+		lobbyActivityNanos = System.nanoTime();
 	}
 
 	public synchronized boolean join(final ClientHandler handler, final String playerName) {
-		if (isClosed || gameSession.isStarted() || playerMap.size() >= MAX_PLAYERS) {
+		if (isClosed || matchesStopped || gameSession.isStarted() || playerMap.size() >= MAX_PLAYERS) {
 			logger.warning(() -> "ルーム(ID: " + roomId + ")は既に満員です。");
 			return false;
 		}
-		handler.setMessageListener(msg -> this.commandQueue.add(new ServerCommand(handler, msg)));
-		handler.setDisconnectListener(() -> handleDisconnect(handler));
+		handler.setMessageListener(msg -> enqueueCommand(handler, msg));
+		handler.setDisconnectListener(() -> enqueueDisconnect(handler));
 		PlayerInfo newPlayer = new PlayerInfo(handler.getConnectionId(), playerName, false, new Archer());
 		playerMap.put(handler, newPlayer);
+		handler.setRoom(this);
+		lobbyActivityNanos = System.nanoTime();
+		refreshRecipients();
 		String joinSuccess = Protocol.joinSuccess(newPlayer.getId(), toString());
 		String joinOpponent = Protocol.joinOpponent(newPlayer.getId(), newPlayer.getName());
 		playerMap.keySet().forEach(clientHandler -> clientHandler.sendMessage(clientHandler != handler ? joinOpponent : joinSuccess));
@@ -175,47 +427,55 @@ public synchronized void setDisconnectListener(Runnable listener) {
 		this.disconnectListener = listener;
 	}
 
+	/**
+	 * 受信スレッドから呼ばれ、コマンドを次のフレームで処理するキューへ入れます。
+	 */
+	private void enqueueCommand(ClientHandler handler, String msg) {
+		ServerCommand command = new ServerCommand(handler, msg);
+		if (CommandType.GAME_INPUT_ACTIONS.contains(command.getCommandType())) {
+			InputLatencyTracer.Trace trace = inputTracer.sample(handler.getLastReceivedNanos());
+			if (trace != null) {
+				trace.markEnqueued();
+				command.setTrace(trace);
+			}
+		}
+		commandQueue.add(command);
+	}
+
+	/**
+	 * 切断を検知したスレッド(受信・無通信の監視・管理コマンド)から呼ばれ、切断をコマンドとしてキューへ入れます。
+	 * 記録する更新回数と脱落が反映される更新回数をそろえるため、脱落の処理はフレームの境目でゲームループが行う。
+	 */
+	private void enqueueDisconnect(ClientHandler handler) {
+		commandQueue.add(new ServerCommand(handler, Protocol.disconnect()));
+	}
+
 	private synchronized void handleCommand(ServerCommand command) {
 		ClientHandler sender = command.getSender();
 		PlayerInfo player = playerMap.get(sender);
 		if (player == null) return;
 		String body = command.getBody();
 		CommandType type = command.getCommandType();
+		if (type != CommandType.DISCONNECT) recordCommand(player.getId(), type, body);
 		switch (type) {
 			case READY:
 				if (gameSession.isStarted()) break;
+				lobbyActivityNanos = System.nanoTime();
 				int characterId = Integer.parseInt(body);
-				GameCharacter character;
-				switch (CharacterType.fromId(characterId)) {
-					case ARCHER:
-						character = new Archer();
-						break;
-					case FIGHTER:
-						character = new Fighter();
-						break;
-					case WARRIOR:
-						character = new Warrior();
-						break;
-					case WIZARD:
-						character = new Wizard();
-						break;
-					default:
-						character = new Archer();
-						break;
-				}
-				player.setCharacter(character);
+				player.setCharacter(CharacterFactory.create(CharacterType.fromId(characterId)));
 				player.setReady(true);
 				String readyMessage = Protocol.readySuccess(player.getId(), characterId);
-				playerMap.keySet().forEach(handler -> handler.sendMessage(readyMessage));
+				broadcast(readyMessage);
 				logger.fine(() -> "プレイヤー(ID: " + sender.getConnectionId() + ")が準備完了です。");
 				startGame();
 				break;
 			case UNREADY:
 				if (gameSession.isStarted()) break;
+				lobbyActivityNanos = System.nanoTime();
 				player.setReady(false);
 				logger.fine(() -> "プレイヤー(ID: " + sender.getConnectionId() + ")が準備を解除しました。");
 				String unreadyMessage = Protocol.unreadySuccess(player.getId());
-				playerMap.keySet().forEach(handler -> handler.sendMessage(unreadyMessage));
+				broadcast(unreadyMessage);
 				break;
 			case RESIGN:
 				handleResign(sender);
@@ -225,6 +485,10 @@ private synchronized void handleCommand(ServerCommand command) {
 				break;
 			default:
 				if (CommandType.GAME_INPUT_ACTIONS.contains(type)) {
+					if (command.getTrace() != null && gameSession.isStarted()) {
+						command.getTrace().markHandled();
+						pipeline.frame().addTracedCommand(command);
+					}
 					CommandType broadcast = gameSession.handleAction(type, player);
 					broadcastGameAction(broadcast, player.getId());
 				}
@@ -233,15 +497,23 @@ private synchronized void handleCommand(ServerCommand command) {
 	}
 
 	private synchronized void startGame() {
-		if (isClosed || gameSession.isStarted()) return;
+		if (isClosed || matchesStopped || gameSession.isStarted()) return;
 		if (playerMap.size() < 2) return;
 		for (PlayerInfo player : playerMap.values()) {
 			if (!player.isReady()) return;
 		}
 		logger.info("ルーム(ID: " + roomId + ")でゲーム開始");
-		gameSession.start(playerMap.values());
+		List<PlayerInfo> roster = new ArrayList<>(playerMap.values());
+		gameSession.start(roster);
+		sendCredit = tickRate; // 開始直後のフレームで最初の状態を送る
+		if (recordWriter != null) recorder = recordWriter.openRecorder(roomId, tickRate, MAX_PLAYERS, roster);
+		long now = System.nanoTime();
+		for (ClientHandler handler : playerMap.keySet()) {
+			long requestedAt = handler.takeJoinRequestedNs();
+			if (requestedAt != 0) ServerMetrics.get().getMatchmakingWait().record(now - requestedAt);
+		}
 		String startMessage = Protocol.gameStart();
-		playerMap.keySet().forEach(handler -> handler.sendMessage(startMessage));
+		broadcast(startMessage);
 	}
 
 	private synchronized void handleResign(ClientHandler resigner) {
@@ -253,22 +525,25 @@ private synchronized void handleResign(ClientHandler resigner) {
 		int playerId = player != null ? player.getId() : resigner.getConnectionId();
 		if (gameSession.eliminatePlayer(playerId, true)) {
 			String resignMessage = Protocol.opponentResigned();
-			playerMap.keySet().forEach(handler -> {
-				if (handler != resigner) handler.sendMessage(resignMessage);
-			});
+			broadcast(resignMessage, resigner);
 			sendResultIfReady();
 		}
 	}
 
+	/**
+	 * ゲームループから呼ばれ、切断したプレイヤーをルームから外します。対戦中は切断を記録し、同じフレームで脱落させる。
+	 */
 	private void handleDisconnect(ClientHandler handler) {
 		// TODO: プレイヤーが切断した場合の処理
 		// 接続が切れたプレイヤーはゲームルームからも追い出す。
 		synchronized (this) {
 			logger.info("ルーム(ID: " + roomId + ") でプレイヤー(ID: " + handler.getConnectionId() + ")切断しました。");
 			PlayerInfo removedPlayer = playerMap.remove(handler);
+			refreshRecipients();
 			int removedPlayerId = removedPlayer != null ? removedPlayer.getId() : handler.getConnectionId();
+			recordCommand(removedPlayerId, CommandType.DISCONNECT, "");
 			String disconnectMessage = Protocol.opponentDisconnected(removedPlayerId);
-			playerMap.keySet().forEach(h -> h.sendMessage(disconnectMessage));
+			broadcast(disconnectMessage);
 			handler.close();
 			if (gameSession.isStarted()) {
 				if (gameSession.eliminatePlayer(removedPlayerId, true)) {
@@ -279,45 +554,54 @@ private void handleDisconnect(ClientHandler handler) {
 		if (playerMap.isEmpty()) close();
 	}
 
-	private synchronized void broadcastState(BattleField.UpdateResult result) {
-		// TODO: 状態を全員に通知する
-		BattleField field = gameSession.getBattleField();
-
-		playerMap.forEach((handler, player) -> {
-			GameCharacter character = player.getCharacter();
-			Vector2D facing = character.getFacingDirection();
-			String msg = Protocol.move(
-					player.getId(),
-					character.getPosition().getX(),
-					character.getPosition().getY(),
-					facing.getX(),
-					facing.getY()
-			);
-			playerMap.keySet().forEach(h -> h.sendMessage(msg));
-		});
-
-		for (Projectile projectile : field.getProjectiles()) {
-			String msg = Protocol.projectile(projectile.getId(), projectile.getType(),
-					projectile.getPosition().getX(), projectile.getPosition().getY(), projectile.getPower(),
-					projectile.getVelocity().getX(), projectile.getVelocity().getY());
-			playerMap.keySet().forEach(h -> h.sendMessage(msg));
-		}
+	/**
+	 * シミュレーション直後の弾の消滅・ダメージと、送るフレームでは状態を送信するフレームへ写し取ります。
+	 * 文字列化と配信は送信スレッドが行う。
+	 */
+	private synchronized void captureState(BattleField.UpdateResult result, boolean includeState) {
+		StateFrame frame = pipeline.frame();
+		frame.captureEvents(result);
+		if (includeState) frame.captureState(recipients, playerMap, gameSession.getBattleField());
+	}
 
-		if (result != null) {
-			for (Projectile projectile : result.getRemovedProjectiles()) {
-				String msg = Protocol.projectileRemove(projectile.getId());
-				playerMap.keySet().forEach(h -> h.sendMessage(msg));
-			}
-			for (BattleField.DamageEvent damage : result.getDamageEvents()) {
-				String msg = Protocol.damage(damage.getTargetId(), damage.getHp());
-				playerMap.keySet().forEach(h -> h.sendMessage(msg));
-			}
-		}
+	/**
+	 * 毎フレーム sendRate ずつ貯め、tickRate に達したフレームで状態を送ります。割り切れない比率でも1秒あたりの送信回数は sendRate になる。
+	 */
+	private boolean isSendFrame() {
+		sendCredit += currentSendRate;
+		if (sendCredit < tickRate) return false;
+		sendCredit -= tickRate;
+		return true;
 	}
 
 	private void broadcastAction(String message) {
 		if (message == null || message.isEmpty()) return;
-		playerMap.keySet().forEach(h -> h.sendMessage(message));
+		broadcast(message);
+	}
+
+	private void broadcast(String message) {
+		broadcast(message, null);
+	}
+
+	/**
+	 * ルーム内の全員に同じメッセージを送ります。
+	 * ゲームループから呼んだ場合は、状態との順序を保つため送信するフレームへ積み、それ以外のスレッドからはその場で配る。
+	 *
+	 * @param except 送らない相手。全員に送る場合は null
+	 */
+	private void broadcast(String message, ClientHandler except) {
+		if (Thread.currentThread() == this) {
+			pipeline.frame().addMessage(message, except);
+		} else {
+			pipeline.sendNow(message, except, recipients);
+		}
+	}
+
+	/**
+	 * playerMap を変更したときに、ロックを取ったまま呼び出して一斉送信の宛先を作り直します。
+	 */
+	private void refreshRecipients() {
+		recipients = playerMap.keySet().toArray(new ClientHandler[0]);
 	}
 
 	private void broadcastGameAction(CommandType action, int playerId) {
@@ -352,7 +636,7 @@ private void sendResultIfReady() {
 		String payload = ResultData.serializeList(results);
 		if (payload.isEmpty()) return;
 		String msg = Protocol.result(payload);
-		playerMap.keySet().forEach(handler -> handler.sendMessage(msg));
+		broadcast(msg);
 		resetReadyStates();
 	}
 
@@ -360,10 +644,85 @@ private void resetReadyStates() {
 		for (PlayerInfo player : playerMap.values()) {
 			player.setReady(false);
 			String msg = Protocol.unreadySuccess(player.getId());
-			playerMap.keySet().forEach(handler -> handler.sendMessage(msg));
+			broadcast(msg);
 		}
 	}
 
+	/**
+	 * 対戦中に受理したコマンドを記録します。切断はプレイヤーを外した後に記録するため、{@link #handleDisconnect} で記録します。
+	 */
+	private synchronized void recordCommand(int playerId, CommandType type, String body) {
+		if (recorder == null || !gameSession.isStarted()) return;
+		if (!CommandType.GAME_INPUT_ACTIONS.contains(type) && type != CommandType.RESIGN && type != CommandType.DISCONNECT) return;
+		recorder.recordCommand(gameSession.getTick(), playerId, type, body);
+	}
+
+	private synchronized void finishRecording() {
+		if (recorder == null) return;
+		BattleField field = gameSession.getBattleField();
+		recorder.finish(gameSession.getTick(), field != null ? field.computeStateHash() : 0L);
+		logger.fine(() -> "ルーム(ID: " + roomId + ")の対戦記録を終了しました: " + recorder.getPath());
+		recorder = null;
+	}
+
+	/**
+	 * 対戦中のフレームの処理落ちを {@link QualityController} へ渡し、簡略化の段階を変えます。
+	 */
+	private void updateQuality(boolean overrun) {
+		long cappedShots = gameSession.getCappedShots();
+		if (cappedShots != reportedCappedShots) {
+			ServerMetrics.get().shotsCapped(cappedShots - reportedCappedShots);
+			reportedCappedShots = cappedShots;
+		}
+		int level = quality.onTick(overrun);
+		if (level >= 0) setQualityLevel(level);
+	}
+
+	/**
+	 * 簡略化の段階を変えます。試合の結果に影響する設定は、再生で同じ結果になるよう対戦記録にも残す。
+	 */
+	private synchronized void setQualityLevel(int level) {
+		int previous = quality.getLevel();
+		if (isClosed || level == previous) return;
+		quality.setLevel(level);
+		currentSendRate = QualityController.sendRate(level, sendRate);
+		int projectileLimit = QualityController.projectileLimit(level);
+		int projectilePairInterval = QualityController.projectilePairInterval(level);
+		gameSession.setDegradation(projectileLimit, projectilePairInterval);
+		if (recorder != null && gameSession.isStarted()) {
+			recorder.recordDegradation(gameSession.getTick(), projectileLimit, projectilePairInterval);
+		}
+		ServerMetrics.get().roomQualityChanged(previous, level, false);
+		if (level > previous) {
+			logger.warning(() -> "ルーム(ID: " + roomId + ")で処理落ちが続いているため簡略化の段階を " + level + " にします。"
+					+ " 状態送信: " + currentSendRate + "回/秒, 弾の上限: " + projectileLimit + ", 弾同士の判定: " + projectilePairInterval + "フレームに1回");
+		} else {
+			logger.info(() -> "ルーム(ID: " + roomId + ")の簡略化の段階を " + level + " に戻します。");
+		}
+	}
+
+	/**
+	 * 他のスレッドから読み出される監視用の値を更新します。
+	 */
+	private void updateSnapshot() {
+		BattleField field = gameSession.getBattleField();
+		matchRunning = gameSession.isStarted();
+		matchTick = matchRunning ? gameSession.getTick() : -1;
+		entityCount = field != null ? field.getEntityCount() : 0;
+	}
+
+	/**
+	 * 処理落ちフレームの内訳と一緒に出力する、その時点のルームの状況
+	 */
+	private String describeSlowTick() {
+		BattleField field = gameSession.getBattleField();
+		return "players=" + playerMap.size()
+				+ " quality=" + quality.getLevel()
+				+ " commands=" + lastCommandCount
+				+ " queued=" + commandQueue.size()
+				+ (field != null ? " " + field.describeEntities() : "");
+	}
+
 	private String formatPlayerEntry(PlayerInfo info) {
 		GameCharacter character = info.getCharacter();
 		CharacterType type = character != null ? character.getType() : CharacterType.defaultType();
@@ -1,14 +1,27 @@
 package server.controller;
 
 import network.Protocol;
+import network.TcpConnection;
+import server.ServerConfig;
+import server.metrics.FlightEvents;
+import server.metrics.JmxSupport;
+import server.metrics.ServerMetrics;
+import server.metrics.ServerStats;
+import server.record.MatchRecordWriter;
 
+import javax.management.ObjectName;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,6 +31,24 @@
 public final class GameServer implements Runnable, Closeable {
 	// -------------------- クラス定数 --------------------
 	private static final Logger logger = Logger.getLogger(GameServer.class.getName());
+	/**
+	 * 接続ごとに往復時間を測る PING の間隔。0 以下の場合は送らない (-Djcf.net.pingIntervalMs)
+	 */
+	private static final long PING_INTERVAL_MS = ServerConfig.getLong("net.pingIntervalMs", 1000);
+	/**
+	 * この時間何も受信しなかった接続を切断する。0 以下の場合は切断しない (-Djcf.net.idleTimeoutMs)。
+	 * クライアントは PING に PONG を返すため、PING を送っていれば生きている接続は1秒ごとに何か受信する
+	 */
+	private static final long IDLE_TIMEOUT_MS = ServerConfig.getLong("net.idleTimeoutMs", 10_000);
+	/**
+	 * 対戦が始まらないまま参加・準備・準備解除がこの時間無かったルームを閉鎖する。0 以下の場合は閉鎖しない (-Djcf.room.lobbyTtlMs)
+	 */
+	private static final long ROOM_LOBBY_TTL_MS = ServerConfig.getLong("room.lobbyTtlMs", 300_000);
+	/**
+	 * 同時に存在できるプライベートルーム数。0 以下の場合は上限なし (-Djcf.room.maxPrivate)
+	 */
+	private static final int MAX_PRIVATE_ROOMS = ServerConfig.getInt("room.maxPrivate", 256);
+	private static final long REAP_INTERVAL_MS = 1000;
 
 	// -------------------- インスタンス定数 --------------------
 	private final ServerSocket serverSocket;
@@ -25,9 +56,19 @@ public final class GameServer implements Runnable, Closeable {
 	private final ConcurrentHashMap<Integer, GameRoom> privateRooms;
 	private final LinkedHashSet<ClientHandler> waitingPlayers;
 	private final ConcurrentHashMap<ClientHandler, String> playerNames;
+	private final ConcurrentHashMap<Integer, ClientHandler> connections; // 接続ID -> 接続。切断時に取り除く
+	private final ConcurrentHashMap<Integer, GameRoom> rooms; // ルームID -> 公開・プライベートの全ルーム。閉鎖時に取り除く
+	private final ScheduledExecutorService timer;
+	private final MatchRecordWriter recordWriter;
+	private final ServerMetrics metrics;
+	private final AdmissionController admission;
+	private final ObjectName mbeanName;
 
 	// -------------------- インスタンス変数 --------------------
 	private volatile boolean isRunning;
+	private volatile boolean closed;
+	private volatile boolean draining; // 停止処理中。新しい対戦を受け付けない
+	private volatile Runnable drainedListener;
 
 	// -------------------- コンストラクタ --------------------
 	public GameServer(final int port) {
@@ -47,6 +88,30 @@ public GameServer(final int port) {
 		privateRooms = new ConcurrentHashMap<>();
 		waitingPlayers = new LinkedHashSet<>();
 		playerNames = new ConcurrentHashMap<>();
+		connections = new ConcurrentHashMap<>();
+		rooms = new ConcurrentHashMap<>();
+		timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ServerTimer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (PING_INTERVAL_MS > 0) {
+			timer.scheduleAtFixedRate(this::pingConnections, PING_INTERVAL_MS, PING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		}
+		if (IDLE_TIMEOUT_MS > 0) {
+			if (PING_INTERVAL_MS <= 0) logger.warning("PING を送らない設定のため、操作していない接続も無通信として切断されます。");
+			timer.scheduleAtFixedRate(this::closeIdleConnections, REAP_INTERVAL_MS, REAP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		}
+		if (ROOM_LOBBY_TTL_MS > 0) {
+			timer.scheduleAtFixedRate(this::closeIdleRooms, REAP_INTERVAL_MS, REAP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		}
+		recordWriter = createRecordWriter();
+		metrics = ServerMetrics.get();
+		admission = new AdmissionController(metrics);
+		if (AdmissionController.ENABLED) {
+			timer.scheduleAtFixedRate(this::updateAdmission, REAP_INTERVAL_MS, REAP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		}
+		mbeanName = JmxSupport.register("Server", null, new ServerStats(metrics));
 		isRunning = true;
 	}
 
@@ -56,8 +121,14 @@ public void run() {
 			try {
 				// クライアントの接続を待つ
 				Socket clientSocket = serverSocket.accept();
+				if (draining || !admission.canAccept()) {
+					rejectConnection(clientSocket);
+					continue;
+				}
 				ClientHandler handler = new ClientHandler(clientSocket);
 				handler.setMessageListener(msg -> handleMessage(handler, msg));
+				connections.put(handler.getConnectionId(), handler);
+				handler.setCloseHook(() -> connections.remove(handler.getConnectionId()));
 				handler.start();
 				logger.info(() -> "新しいクライアント(ID: " + handler.getConnectionId() + ")が接続しました。");
 			} catch (final IOException e) {
@@ -75,14 +146,21 @@ public void run() {
 	}
 
 	public synchronized void close() {
+		if (closed) return;
+		closed = true;
 		isRunning = false;
+		timer.shutdownNow();
 		waitingPlayers.forEach(ClientHandler::close);
 		publicRooms.forEach(GameRoom::close);
 		privateRooms.values().forEach(GameRoom::close);
+		metrics.addWaitingPlayers(-waitingPlayers.size());
 		waitingPlayers.clear();
 		playerNames.clear();
 		publicRooms.clear();
 		privateRooms.clear();
+		rooms.clear();
+		if (recordWriter != null) recordWriter.close();
+		JmxSupport.unregister(mbeanName);
 		try {
 			serverSocket.close();
 		} catch (final IOException e) {
@@ -91,8 +169,147 @@ public synchronized void close() {
 		}
 	}
 
+	/**
+	 * マッチングを止め、対戦中の試合がすべて終わってから onDrained を呼びます。
+	 * 新しい接続・参加・ルーム作成は混雑として断り、マッチング待ちのプレイヤーと対戦していないルームは通知して閉じる。
+	 * 対戦中のルームは新しい対戦を始めず、試合が終わった時点で閉じる。onDrained はタイマースレッドから呼ばれる。
+	 *
+	 * @return 既に停止処理中か停止している場合は false
+	 */
+	public boolean drain(final Runnable onDrained) {
+		synchronized (this) {
+			if (!isRunning || draining) return false;
+			draining = true;
+			drainedListener = onDrained;
+			String busyMessage = Protocol.serverBusy(AdmissionController.RETRY_AFTER_MS);
+			for (ClientHandler handler : waitingPlayers) {
+				handler.sendMessage(busyMessage);
+				handler.runAfterSent(handler::close);
+			}
+			metrics.addWaitingPlayers(-waitingPlayers.size());
+			waitingPlayers.clear();
+			playerNames.clear();
+			timer.scheduleAtFixedRate(this::closeDrainedRooms, 0, REAP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		}
+		logger.warning(() -> "停止のため新しい対戦の受け付けを止めました。" + rooms.size() + " 件のルームの試合が終わるのを待ちます。");
+		return true;
+	}
+
+	public boolean isDraining() {
+		return draining;
+	}
+
+	// -------------------- 管理コマンド用 (ロックを取らない) --------------------
+	Collection<GameRoom> getRooms() {
+		return rooms.values();
+	}
+
+	GameRoom getRoom(final int roomId) {
+		return rooms.get(roomId);
+	}
+
+	Collection<ClientHandler> getConnections() {
+		return connections.values();
+	}
+
+	ClientHandler getConnection(final int connectionId) {
+		return connections.get(connectionId);
+	}
+
 	// -------------------- privateメソッド --------------------
 
+	/**
+	 * 停止処理中に、試合をしていないルームを閉じます。全ルームが閉じたら停止処理の完了を通知する。
+	 */
+	private void closeDrainedRooms() {
+		for (GameRoom room : rooms.values()) {
+			room.closeUnlessPlaying(Protocol.ROOM_CLOSED_SHUTDOWN);
+		}
+		if (!rooms.isEmpty()) return;
+		Runnable listener = drainedListener;
+		drainedListener = null;
+		if (listener == null) return;
+		logger.info("全てのルームの試合が終わりました。");
+		listener.run();
+	}
+
+	/**
+	 * 全接続へ PING を送ります。タイマースレッドから呼ばれ、ロックは取りません。
+	 */
+	private void pingConnections() {
+		for (ClientHandler handler : connections.values()) {
+			handler.ping();
+		}
+	}
+
+	/**
+	 * 相手が落ちた・経路が切れたなどで無通信のまま残った接続を切断します。
+	 * 切断は通常の切断と同じくリスナーを通じてルームや待ち行列へ伝わり、空いた枠が解放される。
+	 */
+	private void closeIdleConnections() {
+		for (ClientHandler handler : connections.values()) {
+			long idleMs = handler.getIdleMillis();
+			if (idleMs < IDLE_TIMEOUT_MS) continue;
+			logger.warning(() -> "プレイヤー(ID: " + handler.getConnectionId() + ")から " + idleMs + "ms 受信が無いため切断します。");
+			ServerMetrics.get().idleConnectionClosed();
+			handler.close();
+		}
+	}
+
+	/**
+	 * 対戦が始まらないまま期限を過ぎたルームを、参加者に通知して閉鎖します。
+	 * 閉鎖したルームは通常どおりリスナーからルームの一覧より取り除かれる。ルームの閉鎖はサーバーのロックを離してから行う。
+	 */
+	private void closeIdleRooms() {
+		GameRoom[] rooms;
+		synchronized (this) {
+			if (!isRunning) return;
+			rooms = new GameRoom[publicRooms.size() + privateRooms.size()];
+			int count = 0;
+			for (GameRoom room : publicRooms) rooms[count++] = room;
+			for (GameRoom room : privateRooms.values()) {
+				if (count == rooms.length) break;
+				rooms[count++] = room;
+			}
+		}
+		for (GameRoom room : rooms) {
+			if (room != null && room.closeIfIdle(ROOM_LOBBY_TTL_MS)) metrics.roomExpired();
+		}
+	}
+
+	/**
+	 * 負荷を調べ直し、過負荷が解消した場合は待たせていたランダムマッチの参加者をルームへ割り当てます。
+	 */
+	private void updateAdmission() {
+		if (admission.update()) matchPlayers();
+	}
+
+	/**
+	 * 混雑を知らせて接続を閉じます。スレッドを作らずに受け付けスレッドで直接書き込む。
+	 * 書き込むのは数バイトで送信バッファに収まるため、受け付けスレッドが待たされることはない。
+	 */
+	private void rejectConnection(final Socket socket) {
+		metrics.connectRejected();
+		try (Socket closing = socket) {
+			TcpConnection.writeLine(closing, Protocol.serverBusy(AdmissionController.RETRY_AFTER_MS));
+		} catch (final IOException e) {
+			logger.log(Level.FINE, "混雑の通知に失敗しました。", e);
+		}
+	}
+
+	/**
+	 * -Djcf.record=true のときのみ対戦記録用の書き込みスレッドを起動します。
+	 */
+	private static MatchRecordWriter createRecordWriter() {
+		if (!ServerConfig.getBoolean("record", false)) return null;
+		try {
+			return new MatchRecordWriter(Paths.get(ServerConfig.getString("record.dir", "records")));
+		} catch (final IOException e) {
+			logger.log(Level.WARNING, "対戦記録の保存先を作成できませんでした。記録は無効になります。", e);
+			return null;
+		}
+	}
+
 	/**
 	 * プレイヤーがルームに参加するコマンドを受け取ったときの処理
 	 */
@@ -118,9 +335,22 @@ private void handleJoin(final ClientHandler handler, final String body) {
 		int index = body.lastIndexOf(':');
 		String userName = body.substring(0, index);
 		int roomId = Integer.parseInt(body.substring(index + 1));
+		handler.markJoinRequested();
+		if (draining) {
+			metrics.joinRejected();
+			handler.sendMessage(Protocol.serverBusy(AdmissionController.RETRY_AFTER_MS));
+			return;
+		}
 		if (roomId < 0) {
+			if (!admission.canQueue(waitingPlayers.size())) {
+				logger.warning(() -> "マッチング待ちが上限に達しているため、プレイヤー(ID: " + handler.getConnectionId() + ")の参加を断りました。");
+				metrics.joinRejected();
+				handler.sendMessage(Protocol.serverBusy(AdmissionController.RETRY_AFTER_MS));
+				return;
+			}
 			playerNames.put(handler, userName);
 			addWaitingHandler(handler);
+			if (waitingPlayers.contains(handler)) metrics.joinQueued();
 		} else {
 			GameRoom room = privateRooms.get(roomId);
 			if (room == null) {
@@ -136,17 +366,31 @@ private void handleJoin(final ClientHandler handler, final String body) {
 	private void handleCreateRoom(final ClientHandler handler, final String body) {
 		if (!isRunning) return;
 		String userName = body.trim();
-		GameRoom room = new GameRoom(false);
+		handler.markJoinRequested();
+		if (MAX_PRIVATE_ROOMS > 0 && privateRooms.size() >= MAX_PRIVATE_ROOMS) {
+			logger.warning(() -> "プライベートルーム数が上限(" + MAX_PRIVATE_ROOMS + ")に達しているため、プレイヤー(ID: " + handler.getConnectionId() + ")のルーム作成を断りました。");
+			metrics.privateRoomRejected();
+			handler.sendMessage(Protocol.serverBusy(AdmissionController.RETRY_AFTER_MS));
+			return;
+		}
+		if (draining || admission.isOverloaded()) {
+			logger.warning(() -> (draining ? "停止処理中" : "過負荷") + "のため、プレイヤー(ID: " + handler.getConnectionId() + ")のルーム作成を断りました。");
+			metrics.roomCreationRejected();
+			handler.sendMessage(Protocol.serverBusy(AdmissionController.RETRY_AFTER_MS));
+			return;
+		}
+		GameRoom room = new GameRoom(false, recordWriter);
 		room.setDisconnectListener(() -> removeGameRoom(room));
 		room.start();
 		room.join(handler, userName);
 		privateRooms.put(room.getRoomId(), room);
+		rooms.put(room.getRoomId(), room);
 		logger.info(() -> "プレイヤー(ID: " + handler.getConnectionId() + ")がプライベートルーム(ID: " + room.getRoomId() + ")を作成しました。");
 	}
 
 	private synchronized void addWaitingHandler(final ClientHandler handler) {
 		if (!isRunning) return;
-		waitingPlayers.add(handler);
+		if (waitingPlayers.add(handler)) metrics.addWaitingPlayers(1);
 		handler.setDisconnectListener(() -> disconnectHandler(handler));
 		logger.info(() -> "プレイヤー(ID: " + handler.getConnectionId() + ")が待ち行列に追加されました。");
 		matchPlayers();
@@ -156,28 +400,37 @@ private synchronized void matchPlayers() {
 		Iterator<ClientHandler> iterator = waitingPlayers.iterator();
 		while (iterator.hasNext()) {
 			ClientHandler handler = iterator.next();
-			boolean assigned = false;
+			GameRoom assignedRoom = null;
 			for (GameRoom room : publicRooms) {
 				if (room.join(handler, playerNames.get(handler))) {
-					assigned = true;
+					assignedRoom = room;
 					logger.info(() -> "プレイヤー(ID: " + handler.getConnectionId() + ")がルーム(ID: " + room.getRoomId() + ")に追加されました。");
 					logger.config(room::toString);
 					break;
 				}
 			}
 
-			// ルームがない場合は新規作成
-			if (!assigned) {
-				GameRoom room = new GameRoom(true);
+			// ルームがない場合は新規作成。過負荷の間はルームを増やさずに待ち行列で待たせ、解消したら割り当てる
+			boolean createdRoom = assignedRoom == null;
+			if (createdRoom && admission.isOverloaded()) continue;
+			if (createdRoom) {
+				GameRoom room = new GameRoom(true, recordWriter);
 				room.join(handler, playerNames.get(handler));
 				room.start();
 				room.setDisconnectListener(() -> removeGameRoom(room));
 				publicRooms.add(room);
+				rooms.put(room.getRoomId(), room);
 				logger.config(room::toString);
+				assignedRoom = room;
 			}
 
+			long requestedAt = handler.getJoinRequestedNs();
+			if (requestedAt != 0) {
+				FlightEvents.matchmaking(handler.getConnectionId(), assignedRoom.getRoomId(), System.nanoTime() - requestedAt, createdRoom);
+			}
 			playerNames.remove(handler);
 			iterator.remove();
+			metrics.addWaitingPlayers(-1);
 		}
 	}
 
@@ -185,12 +438,13 @@ private synchronized void removeGameRoom(final GameRoom room) {
 		if (room == null) return;
 		publicRooms.remove(room);
 		privateRooms.remove(room.getRoomId());
+		rooms.remove(room.getRoomId(), room);
 	}
 
 	private synchronized void disconnectHandler(final ClientHandler handler) {
 		if (!isRunning || handler == null) return;
 		logger.info(() -> "プレイヤー(ID: " + handler.getConnectionId() + ")が切断されました。");
-		waitingPlayers.remove(handler);
+		if (waitingPlayers.remove(handler)) metrics.addWaitingPlayers(-1);
 		playerNames.remove(handler);
 		handler.close();
 	}
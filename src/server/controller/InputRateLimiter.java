@@ -0,0 +1,119 @@
+package server.controller;
+
+import network.CommandType;
+import server.ServerConfig;
+
+/**
+ * 接続ごとに、受信したコマンドの頻度をコマンドの種類ごとのトークンバケットで制限するクラスです。
+ * 移動は1メッセージごとに移動するため、送る回数を増やすほど速く動けてしまう。上限を超えたメッセージはルームのキューへ入れずに捨てる。
+ * 1秒間に捨てたメッセージが一定数を超えた接続は、意図的に大量送信しているとみなして切断対象にする。
+ * 判定は受信スレッドのみが行う。
+ */
+final class InputRateLimiter {
+	/**
+	 * コマンドの頻度を制限する (-Djcf.input.rateLimit)
+	 */
+	static final boolean ENABLED = ServerConfig.getBoolean("input.rateLimit", true);
+	/**
+	 * 1秒間に捨てたメッセージがこの数以上になった接続を切断する。0 以下の場合は切断しない (-Djcf.input.kickDrops)
+	 */
+	private static final int KICK_DROPS = ServerConfig.getInt("input.kickDrops", 100);
+	private static final double BURST_SECONDS = 0.5; // 一度に送れる量は1秒あたりの上限の半分
+
+	/**
+	 * 頻度を数える単位。同じ種類のコマンドは同じバケットを共有する
+	 */
+	enum CommandClass {
+		/** 左右移動・ジャンプ・しゃがみ (-Djcf.input.moveHz)。GUI はキーリピートごとに送る */
+		MOVE(ServerConfig.getInt("input.moveHz", 40)),
+		/** 攻撃・溜め・防御 (-Djcf.input.actionHz)。GUI は防御を押している間 120ms ごとに送る */
+		ACTION(ServerConfig.getInt("input.actionHz", 20)),
+		/** 参加・準備・降参などそれ以外のコマンド (-Djcf.input.controlHz) */
+		CONTROL(ServerConfig.getInt("input.controlHz", 10));
+
+		private final double tokensPerNano;
+		private final double capacity;
+
+		CommandClass(int perSecond) {
+			int rate = Math.max(1, perSecond);
+			tokensPerNano = rate / 1e9;
+			capacity = Math.max(1, rate * BURST_SECONDS);
+		}
+
+		static CommandClass of(CommandType type) {
+			switch (type) {
+				case MOVE_LEFT:
+				case MOVE_RIGHT:
+				case MOVE_UP:
+				case MOVE_DOWN:
+					return MOVE;
+				case NORMAL_ATTACK:
+				case CHARGE_START:
+				case CHARGE_ATTACK:
+				case DEFEND:
+					return ACTION;
+				default:
+					return CONTROL;
+			}
+		}
+	}
+
+	private static final CommandClass[] CLASSES = CommandClass.values();
+
+	private final double[] tokens = new double[CLASSES.length];
+	private final long[] refilledNanos = new long[CLASSES.length];
+	private long windowStartNanos;
+	private int windowDrops;
+	private volatile long droppedMessages; // 監視用に他のスレッドからも読む
+
+	InputRateLimiter() {
+		long now = System.nanoTime();
+		for (CommandClass commandClass : CLASSES) {
+			tokens[commandClass.ordinal()] = commandClass.capacity;
+			refilledNanos[commandClass.ordinal()] = now;
+		}
+		windowStartNanos = now;
+	}
+
+	/**
+	 * 受信したコマンドを処理してよいかを返します。
+	 *
+	 * @param receivedNanos 受信した時刻({@link System#nanoTime()})
+	 * @return 上限を超えたため捨てる場合は false
+	 */
+	boolean tryAcquire(CommandType type, long receivedNanos) {
+		if (!ENABLED) return true;
+		int index = CommandClass.of(type).ordinal();
+		CommandClass commandClass = CLASSES[index];
+		long elapsed = receivedNanos - refilledNanos[index];
+		if (elapsed > 0) {
+			tokens[index] = Math.min(commandClass.capacity, tokens[index] + elapsed * commandClass.tokensPerNano);
+			refilledNanos[index] = receivedNanos;
+		}
+		if (tokens[index] >= 1) {
+			tokens[index] -= 1;
+			return true;
+		}
+		if (receivedNanos - windowStartNanos >= 1_000_000_000L) {
+			windowStartNanos = receivedNanos;
+			windowDrops = 0;
+		}
+		windowDrops++;
+		droppedMessages++;
+		return false;
+	}
+
+	/**
+	 * 直近1秒間に捨てたメッセージが切断する基準に達しているか
+	 */
+	boolean isAbusive() {
+		return KICK_DROPS > 0 && windowDrops >= KICK_DROPS;
+	}
+
+	/**
+	 * 上限を超えたため捨てたメッセージ数
+	 */
+	long getDroppedMessages() {
+		return droppedMessages;
+	}
+}
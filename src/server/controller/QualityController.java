@@ -0,0 +1,101 @@
+package server.controller;
+
+import server.ServerConfig;
+import server.metrics.ServerMetrics;
+
+/**
+ * ルームのフレーム処理が予算に収まらないときに、段階的に処理を簡略化して試合の時間の進み方を保つクラスです。
+ * 対戦中の1秒ごとに処理落ちしたフレームの割合を調べ、上限を超えたら1段簡略化し、{@value #RESTORE_WINDOWS} 秒続けてほぼ収まったら1段戻す。
+ * <ol>
+ * <li>状態の送信回数を半分にする</li>
+ * <li>1人がフィールド上に同時に出せる弾の数を制限する</li>
+ * <li>弾同士の当たり判定を {@value #PROJECTILE_PAIR_INTERVAL} フレームに1回にする(弾とキャラクターの判定は毎フレーム行う)</li>
+ * </ol>
+ * 2 段目以降は試合の結果に影響するため、ルームは変更を対戦記録にも残す。判定はゲームループのみが行う。
+ */
+final class QualityController {
+	/**
+	 * 処理落ちが続くルームを簡略化する (-Djcf.room.degrade)
+	 */
+	static final boolean ENABLED = ServerConfig.getBoolean("room.degrade", true);
+	static final int MAX_LEVEL = ServerMetrics.MAX_QUALITY_LEVEL;
+	private static final double DEGRADE_PERCENT = ServerConfig.getDouble("room.degradePercent", 10);
+	private static final double RESTORE_PERCENT = 1;
+	private static final int RESTORE_WINDOWS = 5;
+	private static final int PROJECTILE_LIMIT = Math.max(1, Math.min(127, ServerConfig.getInt("room.degradedProjectiles", 3)));
+	private static final int PROJECTILE_PAIR_INTERVAL = 2;
+
+	private final int windowTicks;
+	private int ticks;
+	private int overruns;
+	private int underBudgetWindows;
+	private volatile int level; // 監視用に他のスレッドからも読む
+
+	/**
+	 * @param tickRate 1秒あたりのフレーム数。この数のフレームごとに判定する
+	 */
+	QualityController(int tickRate) {
+		windowTicks = Math.max(1, tickRate);
+	}
+
+	/**
+	 * 対戦中の1フレームの結果を記録します。
+	 *
+	 * @return 段階を変える場合は新しい段階、変えない場合は -1
+	 */
+	int onTick(boolean overrun) {
+		if (!ENABLED) return -1;
+		ticks++;
+		if (overrun) overruns++;
+		if (ticks < windowTicks) return -1;
+		double percent = overruns * 100.0 / ticks;
+		ticks = 0;
+		overruns = 0;
+		if (percent > DEGRADE_PERCENT) {
+			underBudgetWindows = 0;
+			return level < MAX_LEVEL ? level + 1 : -1;
+		}
+		if (percent > RESTORE_PERCENT || level == 0) {
+			underBudgetWindows = 0;
+			return -1;
+		}
+		if (++underBudgetWindows < RESTORE_WINDOWS) return -1;
+		underBudgetWindows = 0;
+		return level - 1;
+	}
+
+	/**
+	 * 段階を設定し、判定中の集計をやり直します。
+	 */
+	void setLevel(int level) {
+		this.level = level;
+		ticks = 0;
+		overruns = 0;
+		underBudgetWindows = 0;
+	}
+
+	int getLevel() {
+		return level;
+	}
+
+	/**
+	 * level の段階での1秒あたりの状態送信回数
+	 */
+	static int sendRate(int level, int sendRate) {
+		return level >= 1 ? Math.max(1, sendRate / 2) : sendRate;
+	}
+
+	/**
+	 * level の段階で1人がフィールド上に同時に出せる弾の数。0 は制限なし
+	 */
+	static int projectileLimit(int level) {
+		return level >= 2 ? PROJECTILE_LIMIT : 0;
+	}
+
+	/**
+	 * level の段階で弾同士の当たり判定を何フレームに1回行うか
+	 */
+	static int projectilePairInterval(int level) {
+		return level >= 3 ? PROJECTILE_PAIR_INTERVAL : 1;
+	}
+}
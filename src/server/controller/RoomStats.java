@@ -0,0 +1,93 @@
+package server.controller;
+
+import model.LatencyHistogram;
+import server.metrics.RoomMXBean;
+import server.metrics.TickProfiler;
+
+/**
+ * ルームの統計を JMX に公開するクラスです。ルームのロックは取らず、ゲームループが更新した値を読み出します。
+ */
+final class RoomStats implements RoomMXBean {
+	private final GameRoom room;
+
+	RoomStats(GameRoom room) {
+		this.room = room;
+	}
+
+	public int getRoomId() {
+		return room.getRoomId();
+	}
+
+	public boolean isPublic() {
+		return room.isPublic();
+	}
+
+	public boolean isMatchRunning() {
+		return room.isMatchRunning();
+	}
+
+	public int getTickRate() {
+		return room.getTickRate();
+	}
+
+	public int getSendRate() {
+		return room.getSendRate();
+	}
+
+	public int getQualityLevel() {
+		return room.getQualityLevel();
+	}
+
+	public int getPlayers() {
+		return room.getPlayerCount();
+	}
+
+	public int getEntityCount() {
+		return room.getEntityCount();
+	}
+
+	public int getCommandQueueDepth() {
+		return room.getCommandQueueDepth();
+	}
+
+	public long getTicks() {
+		return room.getTickProfiler().getTicks();
+	}
+
+	public long getOverrunCount() {
+		return room.getTickProfiler().getOverruns();
+	}
+
+	public double getTickP50Millis() {
+		return tickPercentileMillis(50);
+	}
+
+	public double getTickP99Millis() {
+		return tickPercentileMillis(99);
+	}
+
+	public long getMergedFrames() {
+		return room.getMergedFrames();
+	}
+
+	public double getCpuTimeMillis() {
+		return room.getUsage().getCpuNanos() / 1_000_000.0;
+	}
+
+	public long getAllocatedBytes() {
+		return room.getUsage().getAllocatedBytes();
+	}
+
+	public String getCharacters() {
+		return room.getUsage().getCharacters();
+	}
+
+	public String getInputLatencySummary() {
+		return room.getInputTracer().summary();
+	}
+
+	private double tickPercentileMillis(double percentile) {
+		LatencyHistogram histogram = room.getTickProfiler().getHistogram(TickProfiler.Phase.TOTAL);
+		return histogram.getPercentile(percentile) / 1_000_000.0;
+	}
+}
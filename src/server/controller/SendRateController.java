@@ -0,0 +1,88 @@
+package server.controller;
+
+import server.ServerConfig;
+import server.metrics.ServerMetrics;
+
+/**
+ * 接続ごとに、状態(位置・弾)を何フレームに1回送るかを決めるクラスです。
+ * 状態を送る直前の送信キューの長さから回線が何フレーム分遅れているかを見積もり、
+ * 遅れている場合はそのフレームを送らずに間隔を 1 → 2 → 4 フレームに1回と広げ、遅れの無い送信が続いたら1段ずつ戻す。
+ * PING で測った往復時間が上限を超えている接続も、送信キューが空くのを待たずに間隔を広げる(そのフレームは送る)。
+ * メッセージとイベント(ダメージ・弾の消滅)は間隔に関係なく送るため、間引くのは状態だけです。
+ * 判定はルームの送信スレッド(別スレッドを使わない場合はゲームループ)のみが行う。
+ */
+final class SendRateController {
+	/**
+	 * 回線の遅れに応じて状態の送信間隔を変える (-Djcf.client.adaptiveRate)
+	 */
+	static final boolean ENABLED = ServerConfig.getBoolean("client.adaptiveRate", true);
+	static final int MAX_INTERVAL = 4;
+	/**
+	 * 往復時間(ms)がこれを超える接続は状態の送信間隔を広げる。0 以下の場合は往復時間を見ない (-Djcf.client.maxRttMs)
+	 */
+	private static final double MAX_RTT_MS = ServerConfig.getDouble("client.maxRttMs", 250);
+	private static final int BEHIND_FRAMES = 2; // 送信キューにこれを超えるフレーム分が残っていたら間隔を広げる
+	private static final int RECOVER_SENDS = 30; // 遅れの無い送信がこの回数続いたら間隔を狭める
+
+	private volatile int interval = 1; // 監視用に他のスレッドからも読む
+	private volatile long skippedStates; // 監視用に他のスレッドからも読む
+	private int framesSinceSent;
+	private int healthySends;
+
+	/**
+	 * このフレームの状態を送るかを返します。
+	 *
+	 * @param pendingMessages 送信キューに残っているメッセージ数
+	 * @param stateMessages   1フレーム分の状態のメッセージ数
+	 * @param rttMillis       平滑化した往復時間(ms)。未計測の場合は負の値
+	 */
+	boolean shouldSendState(int pendingMessages, int stateMessages, double rttMillis) {
+		if (!ENABLED) return true;
+		if (++framesSinceSent < interval) return skip();
+		framesSinceSent = 0;
+		int behindFrames = pendingMessages / Math.max(1, stateMessages);
+		if (behindFrames > BEHIND_FRAMES) {
+			// 古い状態を積み増しても届くのが遅れるだけのため、このフレームは送らない
+			healthySends = 0;
+			widen();
+			return skip();
+		}
+		if (MAX_RTT_MS > 0 && rttMillis > MAX_RTT_MS) {
+			healthySends = 0;
+			widen();
+			return true;
+		}
+		if (behindFrames == 0 && interval > 1 && ++healthySends >= RECOVER_SENDS) {
+			healthySends = 0;
+			interval /= 2;
+			ServerMetrics.get().stateRateChanged(false);
+		}
+		return true;
+	}
+
+	/**
+	 * 状態を送る間隔(フレーム数)。1 は毎フレーム
+	 */
+	int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * 送らずに間引いた状態の数
+	 */
+	long getSkippedStates() {
+		return skippedStates;
+	}
+
+	private void widen() {
+		if (interval >= MAX_INTERVAL) return;
+		interval *= 2;
+		ServerMetrics.get().stateRateChanged(true);
+	}
+
+	private boolean skip() {
+		skippedStates++;
+		ServerMetrics.get().stateSkipped();
+		return false;
+	}
+}
@@ -2,9 +2,11 @@
 
 
 import network.Command;
+import server.metrics.InputLatencyTracer;
 
 class ServerCommand extends Command {
 	private final ClientHandler sender;
+	private InputLatencyTracer.Trace trace; // 遅延計測の対象でない場合は null
 
 	public ServerCommand(ClientHandler sender, String message) {
 		super(message); // 親クラスのコンストラクタで解析
@@ -14,4 +16,12 @@ public ServerCommand(ClientHandler sender, String message) {
 	public ClientHandler getSender() {
 		return sender;
 	}
+
+	public InputLatencyTracer.Trace getTrace() {
+		return trace;
+	}
+
+	public void setTrace(InputLatencyTracer.Trace trace) {
+		this.trace = trace;
+	}
 }
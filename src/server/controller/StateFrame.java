@@ -0,0 +1,356 @@
+package server.controller;
+
+import model.GameCharacter;
+import model.PlayerInfo;
+import model.ProjectileType;
+import model.Vector2D;
+import network.Protocol;
+import server.model.BattleField;
+import server.model.Projectile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 1回の送信分の内容です。ゲームループが書き込み、{@link StatePipeline} の送信スレッドが文字列にして配信します。
+ * 状態(位置・弾)は送信するフレームでのみ写し取り、弾の消滅・ダメージは送信しないフレームの分も発生した位置に積んでおく。
+ * メッセージ・イベント・状態は記録された順に送られ、状態はシミュレーション直後の値を写し取って持つため、
+ * 送信スレッドが文字列にしている間にゲームループが次のフレームを進めても影響を受けない。
+ * 配列は使い回し、足りなくなったときだけ拡張する。
+ */
+final class StateFrame {
+	private static final int INITIAL_CAPACITY = 16;
+
+	// -------------------- メッセージ --------------------
+	private String[] messages = new String[INITIAL_CAPACITY];
+	private ClientHandler[] excluded = new ClientHandler[INITIAL_CAPACITY]; // 送らない相手。全員に送る場合は null
+	private int messageCount;
+	private int stateIndex = -1; // 状態を送る位置。状態が無い場合は -1
+
+	// -------------------- 状態 --------------------
+	private int playerCount;
+	private int[] playerIds = new int[4];
+	private double[] playerX = new double[4];
+	private double[] playerY = new double[4];
+	private double[] facingX = new double[4];
+	private double[] facingY = new double[4];
+	private int projectileCount;
+	private long[] projectileIds = new long[INITIAL_CAPACITY];
+	private ProjectileType[] projectileTypes = new ProjectileType[INITIAL_CAPACITY];
+	private double[] projectileX = new double[INITIAL_CAPACITY];
+	private double[] projectileY = new double[INITIAL_CAPACITY];
+	private double[] projectilePower = new double[INITIAL_CAPACITY];
+	private double[] projectileVx = new double[INITIAL_CAPACITY];
+	private double[] projectileVy = new double[INITIAL_CAPACITY];
+
+	// -------------------- イベント --------------------
+	// 取りこぼしてはいけないイベント。状態を送らないフレームやフレームをまとめる場合も破棄せず連結する
+	private int eventCount;
+	private boolean[] eventIsDamage = new boolean[INITIAL_CAPACITY]; // false は弾の消滅
+	private long[] eventIds = new long[INITIAL_CAPACITY]; // 弾のID、またはダメージを受けたプレイヤーのID
+	private int[] eventHps = new int[INITIAL_CAPACITY];
+	private int[] eventPositions = new int[INITIAL_CAPACITY]; // このイベントより前に送るメッセージ数
+
+	// -------------------- 配信 --------------------
+	private final List<ServerCommand> tracedCommands = new ArrayList<>(); // 状態の送信後に計測を終える入力
+	private ClientHandler[] recipients;
+	private int mergedFrames; // 送信が追いつかずにまとめたフレーム数
+
+	void addMessage(String message, ClientHandler except) {
+		if (messageCount == messages.length) {
+			messages = Arrays.copyOf(messages, messageCount * 2);
+			excluded = Arrays.copyOf(excluded, messageCount * 2);
+		}
+		messages[messageCount] = message;
+		excluded[messageCount] = except;
+		messageCount++;
+	}
+
+	void addTracedCommand(ServerCommand command) {
+		tracedCommands.add(command);
+	}
+
+	/**
+	 * シミュレーション直後の状態を写し取ります。ここまでに追加したメッセージは状態より前に送られる。
+	 * 以前に写し取った状態は置き換える。
+	 *
+	 * @param handlers プレイヤーを並べる順序。一斉送信の宛先と同じ配列を渡す
+	 */
+	void captureState(ClientHandler[] handlers, Map<ClientHandler, PlayerInfo> players, BattleField field) {
+		stateIndex = messageCount;
+		playerCount = 0;
+		for (ClientHandler handler : handlers) {
+			PlayerInfo player = players.get(handler);
+			if (player == null) continue;
+			GameCharacter character = player.getCharacter();
+			if (playerCount == playerIds.length) growPlayers();
+			Vector2D facing = character.getFacingDirection();
+			playerIds[playerCount] = player.getId();
+			playerX[playerCount] = character.getPosition().getX();
+			playerY[playerCount] = character.getPosition().getY();
+			facingX[playerCount] = facing.getX();
+			facingY[playerCount] = facing.getY();
+			playerCount++;
+		}
+		projectileCount = 0;
+		List<Projectile> projectiles = field.getProjectiles();
+		for (int i = 0, n = projectiles.size(); i < n; i++) {
+			Projectile projectile = projectiles.get(i);
+			if (projectileCount == projectileIds.length) growProjectiles();
+			projectileIds[projectileCount] = projectile.getId();
+			projectileTypes[projectileCount] = projectile.getType();
+			projectileX[projectileCount] = projectile.getPosition().getX();
+			projectileY[projectileCount] = projectile.getPosition().getY();
+			projectilePower[projectileCount] = projectile.getPower();
+			projectileVx[projectileCount] = projectile.getVelocity().getX();
+			projectileVy[projectileCount] = projectile.getVelocity().getY();
+			projectileCount++;
+		}
+	}
+
+	/**
+	 * 1フレーム分の弾の消滅とダメージを積みます。状態を送らないフレームでも毎フレーム呼ぶこと。
+	 */
+	void captureEvents(BattleField.UpdateResult result) {
+		if (result == null) return;
+		List<Projectile> removed = result.getRemovedProjectiles();
+		for (int i = 0, n = removed.size(); i < n; i++) {
+			addEvent(false, removed.get(i).getId(), 0, messageCount);
+		}
+		List<BattleField.DamageEvent> damages = result.getDamageEvents();
+		for (int i = 0, n = damages.size(); i < n; i++) {
+			BattleField.DamageEvent damage = damages.get(i);
+			addEvent(true, damage.getTargetId(), damage.getHp(), messageCount);
+		}
+	}
+
+	void setRecipients(ClientHandler[] recipients) {
+		this.recipients = recipients;
+	}
+
+	boolean isEmpty() {
+		return messageCount == 0 && stateIndex < 0 && eventCount == 0 && tracedCommands.isEmpty();
+	}
+
+	/**
+	 * まだ送信していない older の後ろにこのフレームを続けたものとして、older へまとめます。
+	 * older の状態は新しい状態で置き換えるが、older のメッセージとイベントは先に送る順序のまま残す。
+	 */
+	void mergeInto(StateFrame older) {
+		int offset = older.messageCount;
+		for (int i = 0; i < messageCount; i++) {
+			older.addMessage(messages[i], excluded[i]);
+		}
+		if (stateIndex >= 0) {
+			older.stateIndex = offset + stateIndex;
+			older.copyStateFrom(this);
+		}
+		for (int i = 0; i < eventCount; i++) {
+			older.addEvent(eventIsDamage[i], eventIds[i], eventHps[i], offset + eventPositions[i]);
+		}
+		older.tracedCommands.addAll(tracedCommands);
+		older.recipients = recipients;
+		older.mergedFrames += mergedFrames + 1;
+	}
+
+	// -------------------- 送信スレッドから使用 --------------------
+	ClientHandler[] getRecipients() {
+		return recipients;
+	}
+
+	int getMessageCount() {
+		return messageCount;
+	}
+
+	int getStateIndex() {
+		return stateIndex;
+	}
+
+	String getMessage(int index) {
+		return messages[index];
+	}
+
+	ClientHandler getExcluded(int index) {
+		return excluded[index];
+	}
+
+	List<ServerCommand> getTracedCommands() {
+		return tracedCommands;
+	}
+
+	int getMergedFrames() {
+		return mergedFrames;
+	}
+
+	/**
+	 * 状態を送るときのメッセージ数
+	 */
+	int getStateMessageCount() {
+		return playerCount + projectileCount;
+	}
+
+	int getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * index 番目のイベントより前に送るメッセージ数。イベントは記録順に並び、この値は減らない。
+	 */
+	int getEventPosition(int index) {
+		return eventPositions[index];
+	}
+
+	int getPlayerCount() {
+		return playerCount;
+	}
+
+	double getPlayerX(int index) {
+		return playerX[index];
+	}
+
+	double getPlayerY(int index) {
+		return playerY[index];
+	}
+
+	/**
+	 * @return プレイヤーの添字。状態に含まれない場合は -1
+	 */
+	int indexOfPlayer(int playerId) {
+		for (int i = 0; i < playerCount; i++) {
+			if (playerIds[i] == playerId) return i;
+		}
+		return -1;
+	}
+
+	int getProjectileCount() {
+		return projectileCount;
+	}
+
+	long getProjectileId(int index) {
+		return projectileIds[index];
+	}
+
+	double getProjectileX(int index) {
+		return projectileX[index];
+	}
+
+	double getProjectileY(int index) {
+		return projectileY[index];
+	}
+
+	/**
+	 * 状態を {@link Protocol} のメッセージにして順に渡します。
+	 */
+	void encodeState(Consumer<String> sink) {
+		encodePlayers(sink);
+		for (int i = 0; i < projectileCount; i++) {
+			sink.accept(encodeProjectile(i));
+		}
+	}
+
+	/**
+	 * 状態のうちキャラクターの分だけを {@link Protocol} のメッセージにして順に渡します。
+	 */
+	void encodePlayers(Consumer<String> sink) {
+		for (int i = 0; i < playerCount; i++) {
+			sink.accept(Protocol.move(playerIds[i], playerX[i], playerY[i], facingX[i], facingY[i]));
+		}
+	}
+
+	String encodeProjectile(int index) {
+		return Protocol.projectile(projectileIds[index], projectileTypes[index], projectileX[index], projectileY[index],
+				projectilePower[index], projectileVx[index], projectileVy[index]);
+	}
+
+	/**
+	 * index 番目のイベントを {@link Protocol} のメッセージにして渡します。
+	 */
+	void encodeEvent(int index, Consumer<String> sink) {
+		if (eventIsDamage[index]) {
+			sink.accept(Protocol.damage((int) eventIds[index], eventHps[index]));
+		} else {
+			sink.accept(Protocol.projectileRemove(eventIds[index]));
+		}
+	}
+
+	/**
+	 * 次のフレームで使い回せるよう空にします。
+	 */
+	void clear() {
+		Arrays.fill(messages, 0, messageCount, null);
+		Arrays.fill(excluded, 0, messageCount, null);
+		Arrays.fill(projectileTypes, 0, projectileCount, null);
+		messageCount = 0;
+		stateIndex = -1;
+		playerCount = 0;
+		projectileCount = 0;
+		eventCount = 0;
+		tracedCommands.clear();
+		recipients = null;
+		mergedFrames = 0;
+	}
+
+	// -------------------- privateメソッド --------------------
+	private void copyStateFrom(StateFrame newer) {
+		playerCount = 0;
+		for (int i = 0; i < newer.playerCount; i++) {
+			if (playerCount == playerIds.length) growPlayers();
+			playerIds[i] = newer.playerIds[i];
+			playerX[i] = newer.playerX[i];
+			playerY[i] = newer.playerY[i];
+			facingX[i] = newer.facingX[i];
+			facingY[i] = newer.facingY[i];
+			playerCount++;
+		}
+		projectileCount = 0;
+		for (int i = 0; i < newer.projectileCount; i++) {
+			if (projectileCount == projectileIds.length) growProjectiles();
+			projectileIds[i] = newer.projectileIds[i];
+			projectileTypes[i] = newer.projectileTypes[i];
+			projectileX[i] = newer.projectileX[i];
+			projectileY[i] = newer.projectileY[i];
+			projectilePower[i] = newer.projectilePower[i];
+			projectileVx[i] = newer.projectileVx[i];
+			projectileVy[i] = newer.projectileVy[i];
+			projectileCount++;
+		}
+	}
+
+	private void addEvent(boolean damage, long id, int hp, int position) {
+		if (eventCount == eventIds.length) {
+			int size = eventCount * 2;
+			eventIsDamage = Arrays.copyOf(eventIsDamage, size);
+			eventIds = Arrays.copyOf(eventIds, size);
+			eventHps = Arrays.copyOf(eventHps, size);
+			eventPositions = Arrays.copyOf(eventPositions, size);
+		}
+		eventIsDamage[eventCount] = damage;
+		eventIds[eventCount] = id;
+		eventHps[eventCount] = hp;
+		eventPositions[eventCount] = position;
+		eventCount++;
+	}
+
+	private void growPlayers() {
+		int size = playerIds.length * 2;
+		playerIds = Arrays.copyOf(playerIds, size);
+		playerX = Arrays.copyOf(playerX, size);
+		playerY = Arrays.copyOf(playerY, size);
+		facingX = Arrays.copyOf(facingX, size);
+		facingY = Arrays.copyOf(facingY, size);
+	}
+
+	private void growProjectiles() {
+		int size = projectileIds.length * 2;
+		projectileIds = Arrays.copyOf(projectileIds, size);
+		projectileTypes = Arrays.copyOf(projectileTypes, size);
+		projectileX = Arrays.copyOf(projectileX, size);
+		projectileY = Arrays.copyOf(projectileY, size);
+		projectilePower = Arrays.copyOf(projectilePower, size);
+		projectileVx = Arrays.copyOf(projectileVx, size);
+		projectileVy = Arrays.copyOf(projectileVy, size);
+	}
+}
@@ -0,0 +1,357 @@
+package server.controller;
+
+import network.SharedMessage;
+import server.metrics.FlightEvents;
+import server.metrics.InputLatencyTracer;
+import server.metrics.ServerMetrics;
+import server.metrics.ThreadUsage;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ゲームループと配信を別々のスレッドで行うクラスです。
+ * ゲームループはフレームの内容を {@link StateFrame} に写し取って {@link #publish} し、すぐ次のフレームへ進みます。
+ * 送信スレッドは受け取ったフレームを文字列にし、変換済みのバイト列を各接続の送信キューへ配ります。
+ * 受け渡しは1フレーム分だけで、送信が追いつかない場合は未送信のフレームへ新しいフレームをまとめるため、ゲームループは待ちません。
+ * フレームと他のスレッドからの一斉送信は {@code dispatchLock} を持って配り、呼び出した順に届くようにする。
+ */
+final class StatePipeline implements Closeable {
+	private static final Logger logger = Logger.getLogger(StatePipeline.class.getName());
+	private static final int POOLED_MESSAGES = 256;
+
+	private final int roomId;
+	private final boolean threaded;
+	private final SharedMessage.Pool messagePool = new SharedMessage.Pool(POOLED_MESSAGES);
+	private final Consumer<String> stateSink = this::sendStateMessage;
+	private final Object lock = new Object();
+	private final Object dispatchLock = new Object(); // 配っている間保持する。lock より先に取ること
+	private StateFrame filling = new StateFrame(); // ゲームループのみが使用
+	private StateFrame pending; // 送信待ちのフレーム。lock で保護
+	private StateFrame spare; // 送信を終えて使い回せるフレーム。lock で保護
+	private volatile Thread thread;
+	private volatile boolean closed;
+	private volatile long mergedFrames; // ゲームループのみが更新
+	private volatile long exitCpuNanos = -1;
+	private volatile long exitAllocatedBytes = -1;
+	// 配信中のフレームの集計。配信するスレッドのみが使用
+	private ClientHandler[] stateRecipients;
+	private int stateRecipientCount;
+	private ClientHandler[] stateTargets = new ClientHandler[0]; // 回線の遅れで状態を間引いた残りの宛先
+	private int stateMessages;
+	private long stateBytes;
+	private int encodedBytes; // 1人分の送信バイト数
+	private SharedMessage[] projectileMessages = new SharedMessage[16];
+	private int[] projectileBytes = new int[16];
+	private int[] projectileSent = new int[16];
+	private int[] selectedProjectiles = new int[16];
+
+	/**
+	 * @param threaded false の場合は publish() を呼んだスレッドでそのまま配信する
+	 */
+	StatePipeline(int roomId, boolean threaded) {
+		this.roomId = roomId;
+		this.threaded = threaded;
+	}
+
+	void start() {
+		if (!threaded || thread != null) return;
+		Thread encoder = new Thread(this::runEncoder, "RoomEncoder-" + roomId);
+		encoder.setDaemon(true);
+		thread = encoder;
+		encoder.start();
+	}
+
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * ゲームループが書き込み中のフレーム。ゲームループのスレッドからのみ使用すること。
+	 */
+	StateFrame frame() {
+		return filling;
+	}
+
+	/**
+	 * 書き込み中のフレームを送信スレッドへ渡します。送信スレッドが前のフレームをまだ受け取っていない場合は、そのフレームへまとめる。
+	 *
+	 * @param recipients このフレームの宛先
+	 */
+	void publish(ClientHandler[] recipients) {
+		StateFrame frame = filling;
+		if (frame.isEmpty()) return;
+		frame.setRecipients(recipients);
+		if (!threaded) {
+			synchronized (dispatchLock) {
+				dispatch(frame);
+			}
+			frame.clear();
+			return;
+		}
+		synchronized (lock) {
+			if (closed) {
+				frame.clear();
+				return;
+			}
+			if (pending != null) {
+				frame.mergeInto(pending);
+				frame.clear();
+				mergedFrames++;
+				return;
+			}
+			pending = frame;
+			filling = spare != null ? spare : new StateFrame();
+			spare = null;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * 呼び出したスレッドで message を変換して配ります。ゲームループ以外のスレッドからの一斉送信に使う。
+	 * 先に publish されたフレームを追い越さないよう、送信待ちのフレームがあればそれを先に配る。
+	 *
+	 * @param except 送らない相手。全員に送る場合は null
+	 * @return 送信した人数
+	 */
+	int sendNow(String message, ClientHandler except, ClientHandler[] recipients) {
+		synchronized (dispatchLock) {
+			StateFrame frame = takePending();
+			if (frame != null) dispatchPending(frame);
+			return sendMessage(message, except, recipients);
+		}
+	}
+
+	/**
+	 * 送信が追いつかずに、前のフレームへまとめたフレーム数
+	 */
+	long getMergedFrames() {
+		return mergedFrames;
+	}
+
+	/**
+	 * 送信スレッドの CPU 時間(ns)。別スレッドを使わない場合は 0、計測できない場合は -1
+	 */
+	long getCpuNanos() {
+		if (!threaded) return 0;
+		long cpu = ThreadUsage.cpuNanos(thread);
+		return cpu >= 0 ? cpu : exitCpuNanos;
+	}
+
+	/**
+	 * 送信スレッドが確保した累計バイト数。別スレッドを使わない場合は 0、計測できない場合は -1
+	 */
+	long getAllocatedBytes() {
+		if (!threaded) return 0;
+		long allocated = ThreadUsage.allocatedBytes(thread);
+		return allocated >= 0 ? allocated : exitAllocatedBytes;
+	}
+
+	// -------------------- 送信スレッド --------------------
+	private void runEncoder() {
+		try {
+			while (true) {
+				synchronized (lock) {
+					while (pending == null && !closed) {
+						lock.wait();
+					}
+					// 閉じた後も、決着などを含む送信待ちのフレームは配ってから終える
+					if (pending == null) break;
+				}
+				synchronized (dispatchLock) {
+					// 待っている間に sendNow() が配った場合は null
+					StateFrame frame = takePending();
+					if (frame != null) dispatchPending(frame);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exitCpuNanos = ThreadUsage.cpuNanos(Thread.currentThread());
+			exitAllocatedBytes = ThreadUsage.allocatedBytes(Thread.currentThread());
+		}
+	}
+
+	private StateFrame takePending() {
+		synchronized (lock) {
+			StateFrame frame = pending;
+			pending = null;
+			return frame;
+		}
+	}
+
+	/**
+	 * 送信待ちから取り出したフレームを配り、使い回せるように戻します。dispatchLock を持って呼ぶこと。
+	 */
+	private void dispatchPending(StateFrame frame) {
+		try {
+			dispatch(frame);
+		} catch (RuntimeException e) {
+			logger.log(Level.WARNING, "ルーム(ID: " + roomId + ")の配信中に例外が発生しました。", e);
+		}
+		frame.clear();
+		synchronized (lock) {
+			spare = frame;
+		}
+	}
+
+	/**
+	 * フレームの内容を記録された順に配ります。状態を送り終えてから、入力遅延の計測を終える予約をする。
+	 */
+	private void dispatch(StateFrame frame) {
+		ClientHandler[] recipients = frame.getRecipients();
+		int messageCount = frame.getMessageCount();
+		int event = 0;
+		for (int i = 0; i <= messageCount; i++) {
+			event = dispatchState(frame, i, event, recipients);
+			if (i < messageCount) sendMessage(frame.getMessage(i), frame.getExcluded(i), recipients);
+		}
+
+		List<ServerCommand> traced = frame.getTracedCommands();
+		for (int i = 0, n = traced.size(); i < n; i++) {
+			ServerCommand command = traced.get(i);
+			InputLatencyTracer.Trace trace = command.getTrace();
+			trace.markBroadcast();
+			command.getSender().runAfterSent(trace::markSent);
+		}
+	}
+
+	/**
+	 * position 番目のメッセージより前に送る状態とイベントを配ります。
+	 * 状態は {@link SendRateController} が送ると判定した宛先にだけ送り、イベントは全員に送る。
+	 *
+	 * @param event まだ送っていない最初のイベント
+	 * @return 次に送るイベント
+	 */
+	private int dispatchState(StateFrame frame, int position, int event, ClientHandler[] recipients) {
+		int eventCount = frame.getEventCount();
+		boolean hasState = frame.getStateIndex() == position;
+		if (!hasState && (event == eventCount || frame.getEventPosition(event) != position)) return event;
+		Object flightEvent = FlightEvents.beginBroadcast();
+		stateMessages = 0;
+		stateBytes = 0;
+		if (hasState) {
+			stateRecipientCount = selectStateTargets(recipients, frame.getStateMessageCount());
+			stateRecipients = stateTargets;
+			if (stateRecipientCount > 0) {
+				if (StatePriority.BUDGET_BYTES > 0) {
+					sendBudgetedState(frame);
+				} else {
+					frame.encodeState(stateSink);
+				}
+			}
+		}
+		stateRecipients = recipients;
+		stateRecipientCount = recipients.length;
+		for (; event < eventCount && frame.getEventPosition(event) == position; event++) {
+			frame.encodeEvent(event, stateSink);
+		}
+		stateRecipients = null;
+		Arrays.fill(stateTargets, null);
+		FlightEvents.endBroadcast(flightEvent, roomId, stateMessages, stateBytes);
+		return event;
+	}
+
+	private int sendMessage(String message, ClientHandler except, ClientHandler[] recipients) {
+		SharedMessage shared = messagePool.encode(message);
+		int sent = fanOut(shared, except, recipients, recipients.length);
+		shared.release();
+		return sent;
+	}
+
+	private void sendStateMessage(String message) {
+		SharedMessage shared = messagePool.encode(message);
+		int sent = fanOut(shared, null, stateRecipients, stateRecipientCount);
+		stateMessages += sent;
+		stateBytes += (long) shared.length() * sent;
+		encodedBytes += shared.length();
+		shared.release();
+	}
+
+	/**
+	 * キャラクターは全員に送り、弾は宛先ごとに {@link StatePriority} が選んだものだけを送ります。弾のメッセージは1回だけ変換する。
+	 */
+	private void sendBudgetedState(StateFrame frame) {
+		encodedBytes = 0;
+		frame.encodePlayers(stateSink);
+		int n = frame.getProjectileCount();
+		if (n == 0) return;
+		if (projectileMessages.length < n) {
+			int size = Math.max(n, projectileMessages.length * 2);
+			projectileMessages = new SharedMessage[size];
+			projectileBytes = new int[size];
+			projectileSent = new int[size];
+			selectedProjectiles = new int[size];
+		}
+		for (int i = 0; i < n; i++) {
+			SharedMessage shared = messagePool.encode(frame.encodeProjectile(i));
+			projectileMessages[i] = shared;
+			projectileBytes[i] = shared.length();
+			projectileSent[i] = 0;
+		}
+		int budget = StatePriority.BUDGET_BYTES - encodedBytes;
+		long now = System.nanoTime();
+		int deferred = 0;
+		for (int t = 0; t < stateRecipientCount; t++) {
+			ClientHandler handler = stateRecipients[t];
+			int selected = handler.getStatePriority().select(frame, handler.getConnectionId(), now, budget, projectileBytes, selectedProjectiles);
+			for (int j = 0; j < selected; j++) {
+				int i = selectedProjectiles[j];
+				handler.sendShared(projectileMessages[i].retain());
+				projectileSent[i]++;
+			}
+			deferred += n - selected;
+		}
+		if (deferred > 0) ServerMetrics.get().projectilesDeferred(deferred);
+		for (int i = 0; i < n; i++) {
+			SharedMessage shared = projectileMessages[i];
+			int sent = projectileSent[i];
+			ServerMetrics.get().broadcastSent(shared.length(), sent);
+			stateMessages += sent;
+			stateBytes += (long) shared.length() * sent;
+			shared.release();
+			projectileMessages[i] = null;
+		}
+	}
+
+	/**
+	 * このフレームの状態を送る宛先を stateTargets の先頭に詰めます。
+	 *
+	 * @return 宛先の数
+	 */
+	private int selectStateTargets(ClientHandler[] recipients, int stateMessages) {
+		if (stateTargets.length < recipients.length) stateTargets = new ClientHandler[recipients.length];
+		int count = 0;
+		for (ClientHandler handler : recipients) {
+			double rtt = handler.getConnection().getClockSync().getRttMillis();
+			if (handler.getSendRate().shouldSendState(handler.getPendingMessages(), stateMessages, rtt)) {
+				stateTargets[count++] = handler;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 変換済みのメッセージを宛先ごとの送信キューへ入れます。バイト列は全員で共有し、宛先ごとに変換し直さない。
+	 *
+	 * @param count recipients の先頭から何人に送るか
+	 */
+	private static int fanOut(SharedMessage shared, ClientHandler except, ClientHandler[] recipients, int count) {
+		int sent = 0;
+		for (int i = 0; i < count; i++) {
+			ClientHandler handler = recipients[i];
+			if (handler == except) continue;
+			handler.sendShared(shared.retain());
+			sent++;
+		}
+		ServerMetrics.get().broadcastSent(shared.length(), sent);
+		return sent;
+	}
+}
@@ -0,0 +1,145 @@
+package server.controller;
+
+import network.Protocol;
+import server.ServerConfig;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接続ごとに、1回の状態送信で送る弾を選ぶクラスです。
+ * キャラクターは毎回送り、弾は送らなかった回数だけ優先度を貯めて、優先度の高い順に1回あたりのバイト数の上限まで送る。
+ * 優先度の増え方は受信者のキャラクターに近い弾ほど大きい。送った弾の優先度は 0 に戻す。
+ * 新しく現れた弾と、次の送信まで待つとクライアントが表示を消す({@link Protocol#PROJECTILE_TTL_MS})弾は、上限に関係なく送る。
+ * 次の送信までの時間は、この接続への前回の送信からの実際の間隔で見積もるため、送信レートの設定・回線に合わせた間引き・負荷による簡略化のいずれで送信が減っても期限に間に合う。
+ * 使用するのはルームの送信スレッド(別スレッドを使わない場合はゲームループ)のみ。
+ */
+final class StatePriority {
+	/**
+	 * 1回の状態送信で1人に送るバイト数の上限。0 以下の場合は上限なし (-Djcf.client.stateBudget)
+	 */
+	static final int BUDGET_BYTES = ServerConfig.getInt("client.stateBudget", 1400);
+	private static final double NEAR_DISTANCE = 200; // この距離で優先度の増え方が半分になる
+	// 送信の揺らぎや回線の遅延を見込んで、クライアントの表示期限よりこの時間だけ前に送り直す
+	private static final long RESEND_MARGIN_NS = TimeUnit.MILLISECONDS.toNanos(150);
+	private static final long RESEND_AGE_NS = TimeUnit.MILLISECONDS.toNanos(Protocol.PROJECTILE_TTL_MS) - RESEND_MARGIN_NS;
+
+	private long lastSelectNanos; // この接続へ前回状態を送った時刻。0 は未送信
+
+	// 前回の送信時点の弾。ID の昇順(生成順)に並ぶ
+	private int count;
+	private long[] ids = new long[16];
+	private double[] priorities = new double[16];
+	private long[] sentNanos = new long[16]; // 最後に送った時刻
+	// 今回の送信で作る分。作り終えたら前回分と入れ替える
+	private long[] nextIds = new long[16];
+	private double[] nextPriorities = new double[16];
+	private long[] nextSentNanos = new long[16];
+	private int[] candidates = new int[16];
+
+	/**
+	 * 今回送る弾を選びます。
+	 *
+	 * @param viewerId 受信者のプレイヤーID
+	 * @param nowNanos 送信する時刻({@link System#nanoTime()})
+	 * @param budget   弾に使えるバイト数
+	 * @param bytes    弾ごとの送信バイト数
+	 * @param selected 選んだ弾の添字を先頭から詰める。弾の数以上の長さが必要
+	 * @return 選んだ弾の数
+	 */
+	int select(StateFrame frame, int viewerId, long nowNanos, int budget, int[] bytes, int[] selected) {
+		int n = frame.getProjectileCount();
+		// 次の送信も前回と同じ間隔で来るとみなし、それまでに期限を過ぎる弾を今回送る
+		long interval = lastSelectNanos != 0 ? nowNanos - lastSelectNanos : 0;
+		lastSelectNanos = nowNanos;
+		long resendBefore = nowNanos - (RESEND_AGE_NS - interval);
+		ensureCapacity(n);
+		int viewer = frame.indexOfPlayer(viewerId);
+		int selectedCount = 0;
+		int candidateCount = 0;
+		int previous = 0;
+		for (int i = 0; i < n; i++) {
+			long id = frame.getProjectileId(i);
+			while (previous < count && ids[previous] < id) previous++;
+			int index = previous < count && ids[previous] == id ? previous : indexOf(id);
+			nextIds[i] = id;
+			if (index < 0 || sentNanos[index] - resendBefore <= 0) {
+				selected[selectedCount++] = i;
+				budget -= bytes[i];
+				nextPriorities[i] = 0;
+				nextSentNanos[i] = nowNanos;
+				continue;
+			}
+			nextPriorities[i] = priorities[index] + weight(frame, viewer, i);
+			nextSentNanos[i] = sentNanos[index];
+			candidates[candidateCount++] = i;
+		}
+		sortByPriority(candidateCount);
+		for (int c = 0; c < candidateCount; c++) {
+			int i = candidates[c];
+			if (bytes[i] > budget) break;
+			budget -= bytes[i];
+			selected[selectedCount++] = i;
+			nextPriorities[i] = 0;
+			nextSentNanos[i] = nowNanos;
+		}
+		swap(n);
+		return selectedCount;
+	}
+
+	// -------------------- privateメソッド --------------------
+	private static double weight(StateFrame frame, int viewer, int projectile) {
+		if (viewer < 0) return 1;
+		double dx = frame.getProjectileX(projectile) - frame.getPlayerX(viewer);
+		double dy = frame.getProjectileY(projectile) - frame.getPlayerY(viewer);
+		return 1 / (1 + Math.sqrt(dx * dx + dy * dy) / NEAR_DISTANCE);
+	}
+
+	private int indexOf(long id) {
+		for (int i = 0; i < count; i++) {
+			if (ids[i] == id) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * 候補を優先度の高い順に並べます。候補は数十程度のため挿入ソートで足りる。
+	 */
+	private void sortByPriority(int candidateCount) {
+		for (int c = 1; c < candidateCount; c++) {
+			int i = candidates[c];
+			double priority = nextPriorities[i];
+			int d = c - 1;
+			while (d >= 0 && nextPriorities[candidates[d]] < priority) {
+				candidates[d + 1] = candidates[d];
+				d--;
+			}
+			candidates[d + 1] = i;
+		}
+	}
+
+	private void swap(int n) {
+		long[] swapIds = ids;
+		ids = nextIds;
+		nextIds = swapIds;
+		double[] swapPriorities = priorities;
+		priorities = nextPriorities;
+		nextPriorities = swapPriorities;
+		long[] swapSent = sentNanos;
+		sentNanos = nextSentNanos;
+		nextSentNanos = swapSent;
+		count = n;
+	}
+
+	private void ensureCapacity(int n) {
+		if (nextIds.length >= n) return;
+		int size = Math.max(n, nextIds.length * 2);
+		ids = Arrays.copyOf(ids, size);
+		priorities = Arrays.copyOf(priorities, size);
+		sentNanos = Arrays.copyOf(sentNanos, size);
+		nextIds = new long[size];
+		nextPriorities = new double[size];
+		nextSentNanos = new long[size];
+		candidates = new int[size];
+	}
+}
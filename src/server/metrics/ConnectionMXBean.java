@@ -0,0 +1,55 @@
+package server.metrics;
+
+/**
+ * クライアント接続ごとの状態 (j-clash-field:type=Connection,id=接続ID)
+ */
+public interface ConnectionMXBean {
+	int getConnectionId();
+
+	String getRemoteAddress();
+
+	int getOutboundQueueDepth();
+
+	/**
+	 * PING で測った平滑化済みの往復時間。未計測の場合は -1
+	 */
+	double getRttMillis();
+
+	/**
+	 * 往復時間の揺らぎ
+	 */
+	double getRttJitterMillis();
+
+	/**
+	 * 状態を何フレームに1回送っているか。回線が遅れると広がる
+	 */
+	int getStateInterval();
+
+	/**
+	 * 回線の遅れのため送らずに間引いた状態の数
+	 */
+	long getSkippedStates();
+
+	/**
+	 * 頻度の上限を超えたため捨てたコマンドの数
+	 */
+	long getDroppedCommands();
+
+	long getBytesIn();
+
+	long getBytesOut();
+
+	long getMessagesIn();
+
+	long getMessagesOut();
+
+	/**
+	 * 送受信スレッドが使った CPU 時間の合計。計測できない場合は負の値
+	 */
+	double getIoCpuTimeMillis();
+
+	/**
+	 * 送受信スレッドが確保したバイト数の合計。計測できない場合は -1
+	 */
+	long getIoAllocatedBytes();
+}
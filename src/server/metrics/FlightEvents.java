@@ -0,0 +1,72 @@
+package server.metrics;
+
+import server.ServerConfig;
+
+/**
+ * Java Flight Recorder (JFR) へ独自イベントを出力する窓口です。
+ * jdk.jfr を持たない JDK や -Djcf.jfr=false の場合は何もしません。
+ * 記録中でないときは begin 系が null を返し、イベントオブジェクトも作りません。
+ */
+public final class FlightEvents {
+	private static final boolean AVAILABLE = ServerConfig.getBoolean("jfr", true) && detect();
+
+	private FlightEvents() {
+	}
+
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	// -------------------- フレーム --------------------
+
+	/**
+	 * @return 記録しない場合は null
+	 */
+	public static Object beginTick() {
+		return AVAILABLE ? JfrEvents.beginTick() : null;
+	}
+
+	public static void endTick(Object event, int roomId, long tick, int commands, int players, int entities, boolean overrun) {
+		if (event != null) JfrEvents.endTick(event, roomId, tick, commands, players, entities, overrun);
+	}
+
+	// -------------------- 当たり判定 --------------------
+
+	/**
+	 * @return 記録しない場合は null
+	 */
+	public static Object beginCollision() {
+		return AVAILABLE ? JfrEvents.beginCollision() : null;
+	}
+
+	public static void endCollision(Object event, int entities, int pairs, int hits) {
+		if (event != null) JfrEvents.endCollision(event, entities, pairs, hits);
+	}
+
+	// -------------------- 状態の送信 --------------------
+
+	/**
+	 * @return 記録しない場合は null
+	 */
+	public static Object beginBroadcast() {
+		return AVAILABLE ? JfrEvents.beginBroadcast() : null;
+	}
+
+	public static void endBroadcast(Object event, int roomId, int messages, long bytes) {
+		if (event != null) JfrEvents.endBroadcast(event, roomId, messages, bytes);
+	}
+
+	// -------------------- マッチング --------------------
+	public static void matchmaking(int connectionId, int roomId, long waitNs, boolean createdRoom) {
+		if (AVAILABLE) JfrEvents.matchmaking(connectionId, roomId, waitNs, createdRoom);
+	}
+
+	private static boolean detect() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
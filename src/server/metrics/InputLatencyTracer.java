@@ -0,0 +1,121 @@
+package server.metrics;
+
+import model.LatencyHistogram;
+import server.ServerConfig;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 入力コマンドがサーバー内を通過する時間を段階ごとに計測するクラスです。
+ * 受信・キュー投入・コマンド処理・状態送信のキュー投入・ソケットへの書き込みの各時点を、抽出したコマンドについてだけ記録します。
+ * 時刻の記録はそれぞれの段階を担当するスレッドが行い、集計はロックなしで読み出せます。
+ */
+public final class InputLatencyTracer {
+	/**
+	 * 入力コマンドを何件に1件計測するか。0 以下の場合は計測しない (-Djcf.trace.sample)
+	 */
+	public static final int SAMPLE_EVERY = ServerConfig.getInt("trace.sample", 100);
+	private static final double NS_PER_MS = 1_000_000.0;
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.VALUES.length];
+	private final AtomicLong seen = new AtomicLong();
+
+	public InputLatencyTracer() {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * 受信したコマンドを計測対象にするかを決めます。
+	 *
+	 * @param receivedNs メッセージを読み込んだ時刻
+	 * @return 計測する場合は記録用のオブジェクト、しない場合は null
+	 */
+	public Trace sample(long receivedNs) {
+		if (SAMPLE_EVERY <= 0 || seen.incrementAndGet() % SAMPLE_EVERY != 0) return null;
+		return new Trace(this, receivedNs);
+	}
+
+	public LatencyHistogram getHistogram(Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	/**
+	 * 段階ごとの件数と p50/p99/p99.9 (ms) を複数行で返します。
+	 */
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		for (Stage stage : Stage.VALUES) {
+			LatencyHistogram histogram = histograms[stage.ordinal()];
+			sb.append(String.format("%s: n=%d p50=%.3fms p99=%.3fms p99.9=%.3fms%n", stage.getLabel(), histogram.getCount(),
+					histogram.getPercentile(50) / NS_PER_MS, histogram.getPercentile(99) / NS_PER_MS,
+					histogram.getPercentile(99.9) / NS_PER_MS));
+		}
+		return sb.toString();
+	}
+
+	private void complete(Trace trace, long sentNs) {
+		histograms[Stage.RECEIVE.ordinal()].record(trace.enqueuedNs - trace.receivedNs);
+		histograms[Stage.QUEUE.ordinal()].record(trace.handledNs - trace.enqueuedNs);
+		histograms[Stage.SIMULATION.ordinal()].record(trace.broadcastNs - trace.handledNs);
+		histograms[Stage.SEND.ordinal()].record(sentNs - trace.broadcastNs);
+		histograms[Stage.TOTAL.ordinal()].record(sentNs - trace.receivedNs);
+	}
+
+	/**
+	 * 1件の入力コマンドの通過時刻です。各時刻はその段階のスレッドが書き込み、
+	 * 次の段階へはキューを経由して渡るため、追加の同期は不要です。
+	 */
+	public static final class Trace {
+		private final InputLatencyTracer tracer;
+		private final long receivedNs;
+		private long enqueuedNs;
+		private long handledNs;
+		private long broadcastNs;
+
+		private Trace(InputLatencyTracer tracer, long receivedNs) {
+			this.tracer = tracer;
+			this.receivedNs = receivedNs;
+		}
+
+		public void markEnqueued() {
+			enqueuedNs = System.nanoTime();
+		}
+
+		public void markHandled() {
+			handledNs = System.nanoTime();
+		}
+
+		public void markBroadcast() {
+			broadcastNs = System.nanoTime();
+		}
+
+		/**
+		 * 入力したプレイヤーへの状態送信が書き込まれたときに送信スレッドから呼び出します。
+		 */
+		public void markSent() {
+			tracer.complete(this, System.nanoTime());
+		}
+	}
+
+	public enum Stage {
+		RECEIVE("受信"),
+		QUEUE("キュー待ち"),
+		SIMULATION("処理"),
+		SEND("送信待ち"),
+		TOTAL("合計");
+
+		static final Stage[] VALUES = values();
+
+		private final String label;
+
+		Stage(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+}
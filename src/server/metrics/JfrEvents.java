@@ -0,0 +1,156 @@
+package server.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * jdk.jfr を直接参照するクラスです。jdk.jfr がある場合にだけ {@link FlightEvents} から読み込まれます。
+ * 有効判定には使い回しのインスタンスを使い、記録中でないときはイベントを生成しません。
+ */
+final class JfrEvents {
+	private static final String CATEGORY = "J-Clash Field";
+	private static final TickEvent TICK_PROBE = new TickEvent();
+	private static final CollisionEvent COLLISION_PROBE = new CollisionEvent();
+	private static final BroadcastEvent BROADCAST_PROBE = new BroadcastEvent();
+	private static final MatchmakingEvent MATCHMAKING_PROBE = new MatchmakingEvent();
+
+	private JfrEvents() {
+	}
+
+	static Object beginTick() {
+		if (!TICK_PROBE.isEnabled()) return null;
+		TickEvent event = new TickEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endTick(Object e, int roomId, long tick, int commands, int players, int entities, boolean overrun) {
+		TickEvent event = (TickEvent) e;
+		event.end();
+		if (!event.shouldCommit()) return;
+		event.roomId = roomId;
+		event.tick = tick;
+		event.commands = commands;
+		event.players = players;
+		event.entities = entities;
+		event.overrun = overrun;
+		event.commit();
+	}
+
+	static Object beginCollision() {
+		if (!COLLISION_PROBE.isEnabled()) return null;
+		CollisionEvent event = new CollisionEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endCollision(Object e, int entities, int pairs, int hits) {
+		CollisionEvent event = (CollisionEvent) e;
+		event.end();
+		if (!event.shouldCommit()) return;
+		event.entities = entities;
+		event.pairs = pairs;
+		event.hits = hits;
+		event.commit();
+	}
+
+	static Object beginBroadcast() {
+		if (!BROADCAST_PROBE.isEnabled()) return null;
+		BroadcastEvent event = new BroadcastEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endBroadcast(Object e, int roomId, int messages, long bytes) {
+		BroadcastEvent event = (BroadcastEvent) e;
+		event.end();
+		if (!event.shouldCommit()) return;
+		event.roomId = roomId;
+		event.messages = messages;
+		event.bytes = bytes;
+		event.commit();
+	}
+
+	static void matchmaking(int connectionId, int roomId, long waitNs, boolean createdRoom) {
+		if (!MATCHMAKING_PROBE.isEnabled()) return;
+		MatchmakingEvent event = new MatchmakingEvent();
+		event.connectionId = connectionId;
+		event.roomId = roomId;
+		event.waitTime = waitNs;
+		event.createdRoom = createdRoom;
+		event.commit();
+	}
+
+	// -------------------- イベント定義 --------------------
+	@Name("jclashfield.Tick")
+	@Label("Room Tick")
+	@Description("ゲームループ1回分")
+	@Category({CATEGORY, "Room"})
+	@StackTrace(false)
+	static final class TickEvent extends Event {
+		@Label("Room ID")
+		int roomId;
+		@Label("Tick")
+		long tick;
+		@Label("Commands")
+		int commands;
+		@Label("Players")
+		int players;
+		@Label("Entities")
+		int entities;
+		@Label("Overrun")
+		boolean overrun;
+	}
+
+	@Name("jclashfield.Collision")
+	@Label("Collision Detection")
+	@Description("BattleField の当たり判定")
+	@Category({CATEGORY, "Simulation"})
+	@StackTrace(false)
+	static final class CollisionEvent extends Event {
+		@Label("Entities")
+		int entities;
+		@Label("Pairs Tested")
+		int pairs;
+		@Label("Hits")
+		int hits;
+	}
+
+	@Name("jclashfield.Broadcast")
+	@Label("State Broadcast")
+	@Description("フレームごとの状態送信")
+	@Category({CATEGORY, "Room"})
+	@StackTrace(false)
+	static final class BroadcastEvent extends Event {
+		@Label("Room ID")
+		int roomId;
+		@Label("Messages")
+		int messages;
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	@Name("jclashfield.Matchmaking")
+	@Label("Matchmaking")
+	@Description("待ち行列からルームへの割り当て")
+	@Category({CATEGORY, "Server"})
+	@StackTrace(false)
+	static final class MatchmakingEvent extends Event {
+		@Label("Connection ID")
+		int connectionId;
+		@Label("Room ID")
+		int roomId;
+		@Label("Wait Time")
+		@Timespan
+		long waitTime;
+		@Label("Created Room")
+		boolean createdRoom;
+	}
+}
@@ -0,0 +1,51 @@
+package server.metrics;
+
+import server.ServerConfig;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * MBean をプラットフォーム MBeanServer に登録するクラスです。
+ * -Djcf.jmx=false で登録を無効にできます。登録に失敗してもゲームの処理は継続します。
+ */
+public final class JmxSupport {
+	public static final String DOMAIN = "j-clash-field";
+	private static final Logger logger = Logger.getLogger(JmxSupport.class.getName());
+	private static final boolean ENABLED = ServerConfig.getBoolean("jmx", true);
+
+	private JmxSupport() {
+	}
+
+	/**
+	 * @param id 同じ type の中で一意な値。サーバーのように1つしかない場合は null
+	 * @return 登録した名前。無効または失敗した場合は null
+	 */
+	public static ObjectName register(String type, Object id, Object mbean) {
+		if (!ENABLED) return null;
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=" + type + (id != null ? ",id=" + id : ""));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) server.unregisterMBean(name);
+			server.registerMBean(mbean, name);
+			return name;
+		} catch (JMException e) {
+			logger.log(Level.FINE, "MBean を登録できませんでした: " + type + " " + id, e);
+			return null;
+		}
+	}
+
+	public static void unregister(ObjectName name) {
+		if (name == null) return;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) server.unregisterMBean(name);
+		} catch (JMException e) {
+			logger.log(Level.FINE, "MBean の登録を解除できませんでした: " + name, e);
+		}
+	}
+}
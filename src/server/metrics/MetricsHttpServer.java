@@ -0,0 +1,204 @@
+package server.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import model.LatencyHistogram;
+import network.CommandType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link ServerMetrics} と JVM の状態を Prometheus のテキスト形式で返す HTTP サーバーです。
+ * 値はすべてカウンタ・ヒストグラム・JVM の MXBean から読み出し、ルームや GameServer のロックは取りません。
+ */
+public final class MetricsHttpServer implements Closeable {
+	public static final String PATH = "/metrics";
+	private static final Logger logger = Logger.getLogger(MetricsHttpServer.class.getName());
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private static final double NS_PER_SECOND = 1_000_000_000.0;
+	private static final double[] TICK_BUCKETS_SECONDS = {0.0005, 0.001, 0.002, 0.004, 0.008, 0.0167, 0.033, 0.05, 0.1};
+	private static final double[] WAIT_BUCKETS_SECONDS = {0.1, 0.5, 1, 2, 5, 10, 30, 60, 120};
+	private static final int TOP_ROOMS = 5;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ServerMetrics metrics;
+
+	public MetricsHttpServer(int port, ServerMetrics metrics) throws IOException {
+		this.metrics = metrics;
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "MetricsHttp");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext(PATH, this::handle);
+		server.start();
+		logger.info(() -> "メトリクスを http://localhost:" + port + PATH + " で公開しました。");
+	}
+
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * 公開するページ全体を生成します。
+	 */
+	public String render() {
+		StringBuilder sb = new StringBuilder(8192);
+		gauge(sb, "jcf_connections_open", "現在の接続数", metrics.getOpenConnections());
+		counter(sb, "jcf_connections_accepted_total", "累計の接続受付数", metrics.getAcceptedConnections());
+		counter(sb, "jcf_connections_idle_closed_total", "無通信のため切断した接続数", metrics.getIdleConnectionsClosed());
+		gauge(sb, "jcf_matchmaking_waiting_players", "マッチング待ちのプレイヤー数", metrics.getWaitingPlayers());
+		header(sb, "jcf_rooms", "gauge", "ルーム数");
+		sb.append("jcf_rooms{visibility=\"public\"} ").append(metrics.getPublicRooms()).append('\n');
+		sb.append("jcf_rooms{visibility=\"private\"} ").append(metrics.getPrivateRooms()).append('\n');
+		counter(sb, "jcf_rooms_expired_total", "対戦が始まらないまま期限を過ぎたため閉鎖したルーム数", metrics.getExpiredRooms());
+		counter(sb, "jcf_private_rooms_rejected_total", "プライベートルーム数の上限のため作成を断った数", metrics.getRejectedPrivateRooms());
+		header(sb, "jcf_rooms_degraded", "gauge", "負荷のため簡略化している稼働中ルーム数(段階ごと)");
+		for (int level = 1; level <= ServerMetrics.MAX_QUALITY_LEVEL; level++) {
+			sb.append("jcf_rooms_degraded{level=\"").append(level).append("\"} ").append(metrics.getDegradedRooms(level)).append('\n');
+		}
+		header(sb, "jcf_room_quality_changes_total", "counter", "ルームの簡略化の段階を変えた回数");
+		sb.append("jcf_room_quality_changes_total{direction=\"degrade\"} ").append(metrics.getQualityDegrades()).append('\n');
+		sb.append("jcf_room_quality_changes_total{direction=\"restore\"} ").append(metrics.getQualityRestores()).append('\n');
+		counter(sb, "jcf_projectile_shots_capped_total", "簡略化による弾の数の上限で撃てなかった攻撃数", metrics.getCappedShots());
+		gauge(sb, "jcf_admission_overloaded", "過負荷のため受け付けを制限しているか(1: 制限中)", metrics.getOverloadReason() != null ? 1 : 0);
+		header(sb, "jcf_admission_rejected_total", "counter", "混雑のため断った要求数");
+		sb.append("jcf_admission_rejected_total{request=\"connect\"} ").append(metrics.getRejectedConnects()).append('\n');
+		sb.append("jcf_admission_rejected_total{request=\"join\"} ").append(metrics.getRejectedJoins()).append('\n');
+		sb.append("jcf_admission_rejected_total{request=\"create_room\"} ").append(metrics.getRejectedRoomCreations()).append('\n');
+		counter(sb, "jcf_admission_queued_joins_total", "過負荷のため新しいルームを作らずに待たせた参加要求数", metrics.getQueuedJoins());
+
+		header(sb, "jcf_commands_received_total", "counter", "受信したコマンド数");
+		for (CommandType type : CommandType.values()) {
+			long count = metrics.getCommandsReceived(type);
+			if (count == 0) continue;
+			sb.append("jcf_commands_received_total{type=\"").append(type.name()).append("\"} ").append(count).append('\n');
+		}
+		header(sb, "jcf_input_dropped_total", "counter", "頻度の上限を超えたため捨てたコマンド数");
+		for (CommandType type : CommandType.values()) {
+			long count = metrics.getInputsDropped(type);
+			if (count == 0) continue;
+			sb.append("jcf_input_dropped_total{type=\"").append(type.name()).append("\"} ").append(count).append('\n');
+		}
+		counter(sb, "jcf_input_abuse_disconnects_total", "コマンドを大量に送り続けたため切断した接続数", metrics.getInputAbuseDisconnects());
+		counter(sb, "jcf_broadcast_messages_total", "ルームから全員へ送ったメッセージ数(宛先ごと)", metrics.getBroadcastMessages());
+		counter(sb, "jcf_broadcast_bytes_total", "ルームから全員へ送ったバイト数(宛先ごと、改行を含む)", metrics.getBroadcastBytes());
+		counter(sb, "jcf_state_skipped_total", "回線の遅れのため間引いた状態の数(宛先ごと)", metrics.getSkippedStates());
+		counter(sb, "jcf_state_deferred_projectiles_total", "送信量の上限に収まらず次の送信へ回した弾の数(宛先ごと)", metrics.getDeferredProjectiles());
+		header(sb, "jcf_state_rate_changes_total", "counter", "接続ごとの状態の送信間隔を変えた回数");
+		sb.append("jcf_state_rate_changes_total{direction=\"down\"} ").append(metrics.getStateRateDowngrades()).append('\n');
+		sb.append("jcf_state_rate_changes_total{direction=\"up\"} ").append(metrics.getStateRateUpgrades()).append('\n');
+
+		histogram(sb, "jcf_tick_duration_seconds", "ルームのフレーム処理時間", metrics.getTickDuration(), TICK_BUCKETS_SECONDS);
+		histogram(sb, "jcf_matchmaking_wait_seconds", "参加要求からゲーム開始までの時間", metrics.getMatchmakingWait(), WAIT_BUCKETS_SECONDS);
+
+		appendRoomUsage(sb);
+		appendJvm(sb);
+		return sb.toString();
+	}
+
+	// -------------------- privateメソッド --------------------
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			byte[] body = render().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (RuntimeException e) {
+			logger.log(Level.WARNING, "メトリクスの生成に失敗しました。", e);
+			exchange.sendResponseHeaders(500, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void appendRoomUsage(StringBuilder sb) {
+		counter(sb, "jcf_room_cpu_seconds_total", "全ルームのスレッドの CPU 時間",
+				metrics.getRoomCpuNanosTotal() / NS_PER_SECOND);
+		counter(sb, "jcf_room_allocated_bytes_total", "全ルームのスレッドが確保したバイト数", metrics.getRoomAllocatedBytesTotal());
+		header(sb, "jcf_top_room_cpu_seconds", "gauge", "CPU 時間の多い稼働中ルーム(上位" + TOP_ROOMS + "件)");
+		for (RoomUsage usage : metrics.topRooms(TOP_ROOMS, RoomUsage.BY_CPU)) {
+			if (usage.getCpuNanos() < 0) continue;
+			sb.append("jcf_top_room_cpu_seconds{room=\"").append(usage.getRoomId())
+					.append("\",characters=\"").append(usage.getCharacters()).append("\"} ")
+					.append(format(usage.getCpuNanos() / NS_PER_SECOND)).append('\n');
+		}
+	}
+
+	private static void appendJvm(StringBuilder sb) {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		header(sb, "jvm_memory_heap_bytes", "gauge", "ヒープ使用量");
+		sb.append("jvm_memory_heap_bytes{area=\"used\"} ").append(heap.getUsed()).append('\n');
+		sb.append("jvm_memory_heap_bytes{area=\"committed\"} ").append(heap.getCommitted()).append('\n');
+		if (heap.getMax() >= 0) sb.append("jvm_memory_heap_bytes{area=\"max\"} ").append(heap.getMax()).append('\n');
+
+		header(sb, "jvm_gc_collections_total", "counter", "GC の回数");
+		StringBuilder seconds = new StringBuilder();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			String label = "{gc=\"" + gc.getName() + "\"} ";
+			sb.append("jvm_gc_collections_total").append(label).append(Math.max(0, gc.getCollectionCount())).append('\n');
+			seconds.append("jvm_gc_collection_seconds_total").append(label)
+					.append(format(Math.max(0, gc.getCollectionTime()) / 1000.0)).append('\n');
+		}
+		header(sb, "jvm_gc_collection_seconds_total", "counter", "GC に費やした時間");
+		sb.append(seconds);
+		gauge(sb, "jvm_threads_live", "生存しているスレッド数", ManagementFactory.getThreadMXBean().getThreadCount());
+	}
+
+	/**
+	 * ns 単位で記録したヒストグラムを秒単位の累積バケットとして出力します。
+	 */
+	private static void histogram(StringBuilder sb, String name, String help, LatencyHistogram histogram, double[] bucketsSeconds) {
+		header(sb, name, "histogram", help);
+		long count = histogram.getCount();
+		for (double le : bucketsSeconds) {
+			long bucket = Math.min(count, histogram.getCountAtOrBelow((long) (le * NS_PER_SECOND)));
+			sb.append(name).append("_bucket{le=\"").append(format(le)).append("\"} ").append(bucket).append('\n');
+		}
+		sb.append(name).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+		sb.append(name).append("_sum ").append(format(histogram.getSum() / NS_PER_SECOND)).append('\n');
+		sb.append(name).append("_count ").append(count).append('\n');
+	}
+
+	private static void gauge(StringBuilder sb, String name, String help, long value) {
+		header(sb, name, "gauge", help);
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void counter(StringBuilder sb, String name, String help, long value) {
+		header(sb, name, "counter", help);
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void counter(StringBuilder sb, String name, String help, double value) {
+		header(sb, name, "counter", help);
+		sb.append(name).append(' ').append(format(value)).append('\n');
+	}
+
+	private static void header(StringBuilder sb, String name, String type, String help) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static String format(double value) {
+		return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+	}
+}
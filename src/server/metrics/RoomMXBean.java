@@ -0,0 +1,63 @@
+package server.metrics;
+
+/**
+ * ゲームルームごとの状態 (j-clash-field:type=Room,id=ルームID)
+ */
+public interface RoomMXBean {
+	int getRoomId();
+
+	boolean isPublic();
+
+	boolean isMatchRunning();
+
+	/**
+	 * 1秒あたりのシミュレーション回数
+	 */
+	int getTickRate();
+
+	/**
+	 * 1秒あたりの状態送信回数。負荷のため簡略化している間は設定より少ない
+	 */
+	int getSendRate();
+
+	/**
+	 * 負荷による簡略化の段階。0 は簡略化なし
+	 */
+	int getQualityLevel();
+
+	int getPlayers();
+
+	int getEntityCount();
+
+	int getCommandQueueDepth();
+
+	long getTicks();
+
+	long getOverrunCount();
+
+	double getTickP50Millis();
+
+	double getTickP99Millis();
+
+	/**
+	 * 送信スレッドが追いつかずに、前のフレームとまとめて送ったフレーム数
+	 */
+	long getMergedFrames();
+
+	/**
+	 * ルームのスレッドと送信スレッドが使った CPU 時間。計測できない場合は負の値
+	 */
+	double getCpuTimeMillis();
+
+	/**
+	 * ルームのスレッドと送信スレッドが確保した累計バイト数。計測できない場合は -1
+	 */
+	long getAllocatedBytes();
+
+	String getCharacters();
+
+	/**
+	 * 抽出した入力コマンドの、受信から状態送信までの段階ごとの遅延
+	 */
+	String getInputLatencySummary();
+}
@@ -0,0 +1,82 @@
+package server.metrics;
+
+import java.util.Comparator;
+
+/**
+ * ある時点でのルームの資源使用量です。
+ */
+public final class RoomUsage {
+	public static final Comparator<RoomUsage> BY_CPU = Comparator.comparingLong(RoomUsage::getCpuNanos).reversed();
+	public static final Comparator<RoomUsage> BY_ALLOCATION = Comparator.comparingLong(RoomUsage::getAllocatedBytes).reversed();
+
+	private final int roomId;
+	private final boolean isPublic;
+	private final boolean matchRunning;
+	private final int players;
+	private final String characters;
+	private final long ticks;
+	private final long cpuNanos;
+	private final long allocatedBytes;
+
+	/**
+	 * @param characters 選択されているキャラクターの一覧(表示用)
+	 */
+	public RoomUsage(int roomId, boolean isPublic, boolean matchRunning, int players, String characters, long ticks,
+	                 long cpuNanos, long allocatedBytes) {
+		this.roomId = roomId;
+		this.isPublic = isPublic;
+		this.matchRunning = matchRunning;
+		this.players = players;
+		this.characters = characters;
+		this.ticks = ticks;
+		this.cpuNanos = cpuNanos;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	public int getRoomId() {
+		return roomId;
+	}
+
+	public boolean isPublic() {
+		return isPublic;
+	}
+
+	public boolean isMatchRunning() {
+		return matchRunning;
+	}
+
+	public int getPlayers() {
+		return players;
+	}
+
+	public String getCharacters() {
+		return characters;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * ルームのスレッドが使った CPU 時間(ns)。計測できない場合は -1
+	 */
+	public long getCpuNanos() {
+		return cpuNanos;
+	}
+
+	/**
+	 * ルームのスレッドが確保した累計バイト数。計測できない場合は -1
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * 「room=3 public running cpu=12.3ms alloc=4.5MB ticks=600 players=2 characters=ARCHER,WIZARD」の形式
+	 */
+	public String toString() {
+		return String.format("room=%d %s %s cpu=%.1fms alloc=%.1fMB ticks=%d players=%d characters=%s",
+				roomId, isPublic ? "public" : "private", matchRunning ? "running" : "waiting",
+				cpuNanos / 1_000_000.0, allocatedBytes / (1024.0 * 1024.0), ticks, players, characters);
+	}
+}
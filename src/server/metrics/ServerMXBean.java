@@ -0,0 +1,73 @@
+package server.metrics;
+
+import java.util.List;
+
+/**
+ * サーバー全体の状態 (j-clash-field:type=Server)
+ */
+public interface ServerMXBean {
+	long getOpenConnections();
+
+	long getAcceptedConnections();
+
+	/**
+	 * 無通信のため切断した接続数
+	 */
+	long getIdleConnectionsClosed();
+
+	/**
+	 * コマンドを大量に送り続けたため切断した接続数
+	 */
+	long getInputAbuseDisconnects();
+
+	/**
+	 * 過負荷のため受け付けを制限している理由。制限していない場合は null
+	 */
+	String getOverloadReason();
+
+	/**
+	 * 混雑のため断った接続・参加・ルーム作成の合計
+	 */
+	long getAdmissionRejections();
+
+	/**
+	 * 前回の読み出しからの1秒あたりの接続受付数
+	 */
+	double getAcceptRatePerSecond();
+
+	long getWaitingPlayers();
+
+	long getPublicRooms();
+
+	long getPrivateRooms();
+
+	/**
+	 * 対戦が始まらないまま期限を過ぎたため閉鎖したルーム数
+	 */
+	long getExpiredRooms();
+
+	/**
+	 * プライベートルーム数の上限のため作成を断った数
+	 */
+	long getRejectedPrivateRooms();
+
+	/**
+	 * 負荷のため簡略化している稼働中ルーム数
+	 */
+	long getDegradedRooms();
+
+	/**
+	 * 終了したルームを含む、全ルームのスレッドの CPU 時間
+	 */
+	double getRoomCpuTimeMillisTotal();
+
+	/**
+	 * CPU 時間の多い順に稼働中のルームを最大10件
+	 */
+	List<String> getTopRoomsByCpu();
+
+	/**
+	 * 確保メモリ量の多い順に稼働中のルームを最大10件
+	 */
+	List<String> getTopRoomsByAllocation();
+}
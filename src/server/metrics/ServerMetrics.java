@@ -0,0 +1,412 @@
+package server.metrics;
+
+import model.LatencyHistogram;
+import network.CommandType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * サーバー全体の集計値です。更新はストライプ化されたカウンタ({@link LongAdder})で行い、ロックを取りません。
+ * 値の読み出しも各スレッドの処理を止めずに行えます。
+ */
+public final class ServerMetrics {
+	/**
+	 * ルームの簡略化の最も粗い段階
+	 */
+	public static final int MAX_QUALITY_LEVEL = 3;
+	private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+	private final LongAdder acceptedConnections = new LongAdder();
+	private final LongAdder openConnections = new LongAdder();
+	private final LongAdder idleConnectionsClosed = new LongAdder();
+	private final LongAdder waitingPlayers = new LongAdder();
+	private final LongAdder publicRooms = new LongAdder();
+	private final LongAdder privateRooms = new LongAdder();
+	private final LongAdder expiredRooms = new LongAdder();
+	private final LongAdder rejectedPrivateRooms = new LongAdder();
+	private final LongAdder[] degradedRooms = new LongAdder[MAX_QUALITY_LEVEL + 1]; // 簡略化の段階ごとの稼働中ルーム数
+	private final LongAdder qualityDegrades = new LongAdder();
+	private final LongAdder qualityRestores = new LongAdder();
+	private final LongAdder cappedShots = new LongAdder();
+	private final LongAdder broadcastMessages = new LongAdder();
+	private final LongAdder broadcastBytes = new LongAdder();
+	private final LongAdder skippedStates = new LongAdder();
+	private final LongAdder stateRateDowngrades = new LongAdder();
+	private final LongAdder stateRateUpgrades = new LongAdder();
+	private final LongAdder deferredProjectiles = new LongAdder();
+	private final LongAdder[] commandsReceived = new LongAdder[CommandType.values().length];
+	private final LongAdder[] inputsDropped = new LongAdder[CommandType.values().length];
+	private final LongAdder inputAbuseDisconnects = new LongAdder();
+	private final LongAdder tickOverruns = new LongAdder();
+	private final LongAdder rejectedConnects = new LongAdder();
+	private final LongAdder rejectedJoins = new LongAdder();
+	private final LongAdder rejectedRoomCreations = new LongAdder();
+	private final LongAdder queuedJoins = new LongAdder();
+	private volatile String overloadReason; // 過負荷でない場合は null
+	private final LatencyHistogram tickDuration = new LatencyHistogram();
+	private final LatencyHistogram matchmakingWait = new LatencyHistogram();
+	private final ConcurrentHashMap<Integer, Supplier<RoomUsage>> rooms = new ConcurrentHashMap<>();
+	private final LongAdder closedRoomCpuNanos = new LongAdder();
+	private final LongAdder closedRoomAllocatedBytes = new LongAdder();
+
+	private ServerMetrics() {
+		for (int i = 0; i < commandsReceived.length; i++) {
+			commandsReceived[i] = new LongAdder();
+			inputsDropped[i] = new LongAdder();
+		}
+		for (int i = 0; i < degradedRooms.length; i++) {
+			degradedRooms[i] = new LongAdder();
+		}
+	}
+
+	public static ServerMetrics get() {
+		return INSTANCE;
+	}
+
+	// -------------------- 接続 --------------------
+	public void connectionOpened() {
+		acceptedConnections.increment();
+		openConnections.increment();
+	}
+
+	public void connectionClosed() {
+		openConnections.decrement();
+	}
+
+	/**
+	 * 無通信のため切断した接続を記録します。
+	 */
+	public void idleConnectionClosed() {
+		idleConnectionsClosed.increment();
+	}
+
+	public long getIdleConnectionsClosed() {
+		return idleConnectionsClosed.sum();
+	}
+
+	public long getAcceptedConnections() {
+		return acceptedConnections.sum();
+	}
+
+	public long getOpenConnections() {
+		return openConnections.sum();
+	}
+
+	// -------------------- マッチング --------------------
+	public void addWaitingPlayers(int delta) {
+		waitingPlayers.add(delta);
+	}
+
+	public long getWaitingPlayers() {
+		return waitingPlayers.sum();
+	}
+
+	// -------------------- ルーム --------------------
+	public void addRooms(boolean isPublic, int delta) {
+		(isPublic ? publicRooms : privateRooms).add(delta);
+	}
+
+	public long getPublicRooms() {
+		return publicRooms.sum();
+	}
+
+	public long getPrivateRooms() {
+		return privateRooms.sum();
+	}
+
+	/**
+	 * 対戦が始まらないまま期限を過ぎたため閉鎖したルームを記録します。
+	 */
+	public void roomExpired() {
+		expiredRooms.increment();
+	}
+
+	public long getExpiredRooms() {
+		return expiredRooms.sum();
+	}
+
+	/**
+	 * プライベートルーム数の上限のため作成を断った要求を記録します。
+	 */
+	public void privateRoomRejected() {
+		rejectedPrivateRooms.increment();
+	}
+
+	public long getRejectedPrivateRooms() {
+		return rejectedPrivateRooms.sum();
+	}
+
+	/**
+	 * ルームの簡略化の段階を変えたことを記録します。
+	 *
+	 * @param from   変更前の段階(0 は簡略化なし)
+	 * @param to     変更後の段階
+	 * @param closed ルームの閉鎖により集計から外す場合は true。段階の変更回数には数えない
+	 */
+	public void roomQualityChanged(int from, int to, boolean closed) {
+		if (from > 0) degradedRooms[from].decrement();
+		if (to > 0) degradedRooms[to].increment();
+		if (closed) return;
+		(to > from ? qualityDegrades : qualityRestores).increment();
+	}
+
+	/**
+	 * 簡略化の段階が level の稼働中ルーム数
+	 */
+	public long getDegradedRooms(int level) {
+		return level > 0 && level < degradedRooms.length ? degradedRooms[level].sum() : 0;
+	}
+
+	/**
+	 * 簡略化している稼働中ルーム数
+	 */
+	public long getDegradedRooms() {
+		long rooms = 0;
+		for (int level = 1; level <= MAX_QUALITY_LEVEL; level++) {
+			rooms += degradedRooms[level].sum();
+		}
+		return rooms;
+	}
+
+	public long getQualityDegrades() {
+		return qualityDegrades.sum();
+	}
+
+	public long getQualityRestores() {
+		return qualityRestores.sum();
+	}
+
+	/**
+	 * 簡略化のため、1人が同時に出せる弾の数の上限で撃てなかった攻撃を記録します。
+	 */
+	public void shotsCapped(long count) {
+		cappedShots.add(count);
+	}
+
+	public long getCappedShots() {
+		return cappedShots.sum();
+	}
+
+	/**
+	 * 稼働中のルームとして資源使用量を集計の対象にします。
+	 */
+	public void registerRoom(int roomId, Supplier<RoomUsage> usage) {
+		rooms.put(roomId, usage);
+	}
+
+	/**
+	 * ルームのスレッドが終了したときに呼び出し、最終的な使用量を累計へ移します。
+	 */
+	public void unregisterRoom(RoomUsage finalUsage) {
+		if (rooms.remove(finalUsage.getRoomId()) == null) return;
+		closedRoomCpuNanos.add(Math.max(0, finalUsage.getCpuNanos()));
+		closedRoomAllocatedBytes.add(Math.max(0, finalUsage.getAllocatedBytes()));
+	}
+
+	/**
+	 * 稼働中のルームの使用量を order の順に最大 limit 件返します。
+	 */
+	public List<RoomUsage> topRooms(int limit, Comparator<RoomUsage> order) {
+		List<RoomUsage> usages = new ArrayList<>(rooms.size());
+		for (Supplier<RoomUsage> usage : rooms.values()) {
+			usages.add(usage.get());
+		}
+		usages.sort(order);
+		return usages.size() > limit ? new ArrayList<>(usages.subList(0, limit)) : usages;
+	}
+
+	/**
+	 * 終了したルームを含む、全ルームのスレッドの CPU 時間(ns)
+	 */
+	public long getRoomCpuNanosTotal() {
+		long total = closedRoomCpuNanos.sum();
+		for (Supplier<RoomUsage> usage : rooms.values()) {
+			total += Math.max(0, usage.get().getCpuNanos());
+		}
+		return total;
+	}
+
+	/**
+	 * 終了したルームを含む、全ルームのスレッドが確保したバイト数
+	 */
+	public long getRoomAllocatedBytesTotal() {
+		long total = closedRoomAllocatedBytes.sum();
+		for (Supplier<RoomUsage> usage : rooms.values()) {
+			total += Math.max(0, usage.get().getAllocatedBytes());
+		}
+		return total;
+	}
+
+	// -------------------- 受信・送信 --------------------
+	public void commandReceived(CommandType type) {
+		commandsReceived[type.ordinal()].increment();
+	}
+
+	public long getCommandsReceived(CommandType type) {
+		return commandsReceived[type.ordinal()].sum();
+	}
+
+	/**
+	 * 頻度の上限を超えたため、ルームへ渡さずに捨てたコマンドを記録します。
+	 */
+	public void inputDropped(CommandType type) {
+		inputsDropped[type.ordinal()].increment();
+	}
+
+	public long getInputsDropped(CommandType type) {
+		return inputsDropped[type.ordinal()].sum();
+	}
+
+	/**
+	 * コマンドを大量に送り続けたため切断した接続を記録します。
+	 */
+	public void inputAbuseDisconnected() {
+		inputAbuseDisconnects.increment();
+	}
+
+	public long getInputAbuseDisconnects() {
+		return inputAbuseDisconnects.sum();
+	}
+
+	/**
+	 * ルームから全員へ送ったメッセージを記録します。
+	 *
+	 * @param bytes 改行を含めた1人分の送信バイト数
+	 */
+	public void broadcastSent(int bytes, int recipients) {
+		broadcastMessages.add(recipients);
+		broadcastBytes.add((long) bytes * recipients);
+	}
+
+	public long getBroadcastMessages() {
+		return broadcastMessages.sum();
+	}
+
+	public long getBroadcastBytes() {
+		return broadcastBytes.sum();
+	}
+
+	/**
+	 * 回線の遅れのため、1人分の状態を送らずに間引いたことを記録します。
+	 */
+	public void stateSkipped() {
+		skippedStates.increment();
+	}
+
+	/**
+	 * 接続ごとの状態の送信間隔を変えたことを記録します。
+	 *
+	 * @param lowered 間隔を広げた(送信頻度を下げた)場合は true
+	 */
+	public void stateRateChanged(boolean lowered) {
+		(lowered ? stateRateDowngrades : stateRateUpgrades).increment();
+	}
+
+	/**
+	 * 1回の送信量の上限に収まらず、次の送信へ回した弾の数(宛先ごと)を記録します。
+	 */
+	public void projectilesDeferred(int count) {
+		deferredProjectiles.add(count);
+	}
+
+	public long getDeferredProjectiles() {
+		return deferredProjectiles.sum();
+	}
+
+	public long getSkippedStates() {
+		return skippedStates.sum();
+	}
+
+	public long getStateRateDowngrades() {
+		return stateRateDowngrades.sum();
+	}
+
+	public long getStateRateUpgrades() {
+		return stateRateUpgrades.sum();
+	}
+
+	// -------------------- 受け付けの制限 --------------------
+
+	/**
+	 * 予算を超えたフレームを記録します。フレーム数は {@link #getTickDuration()} の件数で数える。
+	 */
+	public void tickOverrun() {
+		tickOverruns.increment();
+	}
+
+	public long getTickOverruns() {
+		return tickOverruns.sum();
+	}
+
+	/**
+	 * 過負荷の状態を更新します。
+	 *
+	 * @param reason 過負荷と判定した理由。過負荷でない場合は null
+	 */
+	public void setOverloadReason(String reason) {
+		overloadReason = reason;
+	}
+
+	/**
+	 * 過負荷と判定した理由。過負荷でない場合は null
+	 */
+	public String getOverloadReason() {
+		return overloadReason;
+	}
+
+	public void connectRejected() {
+		rejectedConnects.increment();
+	}
+
+	public void joinRejected() {
+		rejectedJoins.increment();
+	}
+
+	public void roomCreationRejected() {
+		rejectedRoomCreations.increment();
+	}
+
+	/**
+	 * 過負荷のため新しいルームを作らずに、待ち行列で待たせた参加要求を記録します。
+	 */
+	public void joinQueued() {
+		queuedJoins.increment();
+	}
+
+	public long getRejectedConnects() {
+		return rejectedConnects.sum();
+	}
+
+	public long getRejectedJoins() {
+		return rejectedJoins.sum();
+	}
+
+	public long getRejectedRoomCreations() {
+		return rejectedRoomCreations.sum();
+	}
+
+	public long getQueuedJoins() {
+		return queuedJoins.sum();
+	}
+
+	// -------------------- ヒストグラム(ns) --------------------
+
+	/**
+	 * 全ルームのフレーム処理時間
+	 */
+	public LatencyHistogram getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * 参加要求からゲーム開始までの時間
+	 */
+	public LatencyHistogram getMatchmakingWait() {
+		return matchmakingWait;
+	}
+}
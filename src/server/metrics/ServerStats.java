@@ -0,0 +1,98 @@
+package server.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ServerMetrics} を JMX に公開するクラスです。
+ */
+public final class ServerStats implements ServerMXBean {
+	private static final int TOP_ROOMS = 10;
+	private final ServerMetrics metrics;
+	private long lastAccepted;
+	private long lastReadNs;
+
+	public ServerStats(ServerMetrics metrics) {
+		this.metrics = metrics;
+		this.lastAccepted = metrics.getAcceptedConnections();
+		this.lastReadNs = System.nanoTime();
+	}
+
+	public long getOpenConnections() {
+		return metrics.getOpenConnections();
+	}
+
+	public long getAcceptedConnections() {
+		return metrics.getAcceptedConnections();
+	}
+
+	public long getIdleConnectionsClosed() {
+		return metrics.getIdleConnectionsClosed();
+	}
+
+	public long getInputAbuseDisconnects() {
+		return metrics.getInputAbuseDisconnects();
+	}
+
+	public String getOverloadReason() {
+		return metrics.getOverloadReason();
+	}
+
+	public long getAdmissionRejections() {
+		return metrics.getRejectedConnects() + metrics.getRejectedJoins() + metrics.getRejectedRoomCreations();
+	}
+
+	public synchronized double getAcceptRatePerSecond() {
+		long now = System.nanoTime();
+		long accepted = metrics.getAcceptedConnections();
+		long elapsedNs = now - lastReadNs;
+		double rate = elapsedNs > 0 ? (accepted - lastAccepted) * 1e9 / elapsedNs : 0.0;
+		lastAccepted = accepted;
+		lastReadNs = now;
+		return rate;
+	}
+
+	public long getWaitingPlayers() {
+		return metrics.getWaitingPlayers();
+	}
+
+	public long getPublicRooms() {
+		return metrics.getPublicRooms();
+	}
+
+	public long getPrivateRooms() {
+		return metrics.getPrivateRooms();
+	}
+
+	public long getExpiredRooms() {
+		return metrics.getExpiredRooms();
+	}
+
+	public long getRejectedPrivateRooms() {
+		return metrics.getRejectedPrivateRooms();
+	}
+
+	public long getDegradedRooms() {
+		return metrics.getDegradedRooms();
+	}
+
+	public double getRoomCpuTimeMillisTotal() {
+		return metrics.getRoomCpuNanosTotal() / 1_000_000.0;
+	}
+
+	public List<String> getTopRoomsByCpu() {
+		return format(metrics.topRooms(TOP_ROOMS, RoomUsage.BY_CPU));
+	}
+
+	public List<String> getTopRoomsByAllocation() {
+		return format(metrics.topRooms(TOP_ROOMS, RoomUsage.BY_ALLOCATION));
+	}
+
+	private static List<String> format(List<RoomUsage> usages) {
+		List<String> lines = new ArrayList<>(usages.size());
+		for (RoomUsage usage : usages) {
+			lines.add(usage.toString());
+		}
+		return lines;
+	}
+}
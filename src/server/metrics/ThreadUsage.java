@@ -0,0 +1,60 @@
+package server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * スレッドごとの CPU 時間と確保したメモリ量を {@link ThreadMXBean} から読み出すクラスです。
+ * JVM が対応していない値は -1 を返します。
+ */
+public final class ThreadUsage {
+	private static final Logger logger = Logger.getLogger(ThreadUsage.class.getName());
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final boolean CPU_SUPPORTED = enableCpuTime();
+	private static final com.sun.management.ThreadMXBean ALLOCATION = enableAllocatedMemory();
+
+	private ThreadUsage() {
+	}
+
+	/**
+	 * @return スレッドが使った CPU 時間(ns)。終了したスレッドや未対応の JVM では -1
+	 */
+	public static long cpuNanos(Thread thread) {
+		if (!CPU_SUPPORTED || thread == null) return -1;
+		return THREADS.getThreadCpuTime(thread.getId());
+	}
+
+	/**
+	 * @return スレッドがヒープに確保した累計バイト数。終了したスレッドや未対応の JVM では -1
+	 */
+	public static long allocatedBytes(Thread thread) {
+		if (ALLOCATION == null || thread == null) return -1;
+		return ALLOCATION.getThreadAllocatedBytes(thread.getId());
+	}
+
+	private static boolean enableCpuTime() {
+		try {
+			if (!THREADS.isThreadCpuTimeSupported()) return false;
+			if (!THREADS.isThreadCpuTimeEnabled()) THREADS.setThreadCpuTimeEnabled(true);
+			return true;
+		} catch (UnsupportedOperationException | SecurityException e) {
+			logger.log(Level.FINE, "スレッドの CPU 時間を計測できません。", e);
+			return false;
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean enableAllocatedMemory() {
+		try {
+			if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return null;
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (!threads.isThreadAllocatedMemorySupported()) return null;
+			if (!threads.isThreadAllocatedMemoryEnabled()) threads.setThreadAllocatedMemoryEnabled(true);
+			return threads;
+		} catch (UnsupportedOperationException | SecurityException | LinkageError e) {
+			logger.log(Level.FINE, "スレッドのメモリ確保量を計測できません。", e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package server.metrics;
+
+import model.LatencyHistogram;
+import server.model.BattleField;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * ゲームループ1回分の処理時間をフェーズごとに計測するクラスです。
+ * 計測はルームのスレッドのみが行い、集計値(ヒストグラム・カウンタ)は他スレッドからロックなしで読めます。
+ * 予算を超えたフレームは、一定間隔ごとに1件だけ内訳をログへ出力します。
+ */
+public final class TickProfiler {
+	private static final Logger logger = Logger.getLogger(TickProfiler.class.getName());
+	private static final long SLOW_TICK_DUMP_INTERVAL_NS = TimeUnit.SECONDS.toNanos(10);
+	private static final double NS_PER_MS = 1_000_000.0;
+
+	private final String name;
+	private final long budgetNs;
+	private final LatencyHistogram[] histograms;
+	private final LatencyHistogram aggregate;
+	private final AtomicLong ticks = new AtomicLong();
+	private final AtomicLong overruns = new AtomicLong();
+
+	// ルームのスレッドのみが使用
+	private final long[] current = new long[Phase.VALUES.length];
+	private long tickStart;
+	private long phaseStart;
+	private long lastDumpNs;
+
+	public TickProfiler(String name, long budgetNs) {
+		this(name, budgetNs, null);
+	}
+
+	/**
+	 * @param aggregate 全ルーム分のフレーム処理時間を集計するヒストグラム。不要な場合は null
+	 */
+	public TickProfiler(String name, long budgetNs, LatencyHistogram aggregate) {
+		this.name = name;
+		this.budgetNs = budgetNs;
+		this.aggregate = aggregate;
+		histograms = new LatencyHistogram[Phase.VALUES.length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+		lastDumpNs = System.nanoTime() - SLOW_TICK_DUMP_INTERVAL_NS;
+	}
+
+	public void beginTick() {
+		tickStart = System.nanoTime();
+		phaseStart = tickStart;
+		for (int i = 0; i < current.length; i++) {
+			current[i] = 0;
+		}
+	}
+
+	/**
+	 * 前のフェーズの終了(またはフレーム開始)からの経過時間を phase に加算します。
+	 */
+	public void endPhase(Phase phase) {
+		long now = System.nanoTime();
+		current[phase.ordinal()] += now - phaseStart;
+		phaseStart = now;
+	}
+
+	/**
+	 * GameSession.update の経過時間を BattleField が計測した内訳に分け、残りをルール処理(防御・被ダメージ集計)とします。
+	 */
+	public void endSimulation(BattleField field) {
+		long now = System.nanoTime();
+		long elapsed = now - phaseStart;
+		phaseStart = now;
+		if (field == null) {
+			current[Phase.RULES.ordinal()] += elapsed;
+			return;
+		}
+		long movement = field.getLastMovementNanos();
+		long collision = field.getLastCollisionNanos();
+		long hitbox = field.getLastHitboxExpiryNanos();
+		current[Phase.MOVEMENT.ordinal()] += movement;
+		current[Phase.COLLISION.ordinal()] += collision;
+		current[Phase.HITBOX_EXPIRY.ordinal()] += hitbox;
+		current[Phase.RULES.ordinal()] += Math.max(0, elapsed - movement - collision - hitbox);
+	}
+
+	/**
+	 * フレームの計測を終えてヒストグラムへ反映します。
+	 *
+	 * @param context 予算超過の内訳を出力するときにだけ呼ばれる、物体数やキュー長などの説明
+	 * @return 予算を超えた場合は true
+	 */
+	public boolean endTick(Supplier<String> context) {
+		long now = System.nanoTime();
+		long total = now - tickStart;
+		current[Phase.TOTAL.ordinal()] = total;
+		for (int i = 0; i < current.length; i++) {
+			histograms[i].record(current[i]);
+		}
+		if (aggregate != null) aggregate.record(total);
+		ticks.incrementAndGet();
+		if (total <= budgetNs) return false;
+		overruns.incrementAndGet();
+		if (now - lastDumpNs >= SLOW_TICK_DUMP_INTERVAL_NS) {
+			lastDumpNs = now;
+			String detail = formatCurrent() + " " + context.get();
+			logger.info(() -> name + " 処理落ちフレーム: " + detail);
+		}
+		return true;
+	}
+
+	public LatencyHistogram getHistogram(Phase phase) {
+		return histograms[phase.ordinal()];
+	}
+
+	public long getTicks() {
+		return ticks.get();
+	}
+
+	public long getOverruns() {
+		return overruns.get();
+	}
+
+	public long getBudgetNs() {
+		return budgetNs;
+	}
+
+	/**
+	 * フェーズごとの p50/p99 (ms) を1行にまとめて返します。
+	 */
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(name).append(" ticks=").append(ticks.get()).append(" overruns=").append(overruns.get());
+		for (Phase phase : Phase.VALUES) {
+			LatencyHistogram histogram = histograms[phase.ordinal()];
+			sb.append(String.format(" %s=%.3f/%.3f", phase.getLabel(),
+					histogram.getPercentile(50) / NS_PER_MS, histogram.getPercentile(99) / NS_PER_MS));
+		}
+		return sb.toString();
+	}
+
+	private String formatCurrent() {
+		StringBuilder sb = new StringBuilder();
+		for (Phase phase : Phase.VALUES) {
+			if (sb.length() > 0) sb.append(' ');
+			sb.append(String.format("%s=%.3fms", phase.getLabel(), current[phase.ordinal()] / NS_PER_MS));
+		}
+		return sb.toString();
+	}
+
+	public enum Phase {
+		COMMANDS("commands"), // コマンドキューの処理 (handleCommand)
+		MOVEMENT("movement"), // BattleField の移動・重力
+		COLLISION("collision"), // BattleField の当たり判定
+		HITBOX_EXPIRY("hitbox"), // 期限切れの近接判定の削除
+		RULES("rules"), // 防御状態・被ダメージ集計・勝敗判定
+		BROADCAST("broadcast"), // 送信するフレームへの状態の写し取り (文字列化と配信は送信スレッド)
+		RESULT("result"), // 結果送信とルームのリセット
+		TOTAL("total");
+
+		static final Phase[] VALUES = values();
+
+		private final String label;
+
+		Phase(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+}
@@ -3,19 +3,37 @@
 import model.Entity;
 import model.GameCharacter;
 import model.Vector2D;
+import server.metrics.FlightEvents;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 public final class BattleField {
 	public static final int DEFAULT_WIDTH = 1280;
 	public static final int DEFAULT_HEIGHT = 720;
 	public static final double DEFAULT_GROUND_Y = DEFAULT_HEIGHT * 0.255;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
 	private final List<Entity> entities = new ArrayList<>();
+	// 毎フレーム使い回す作業領域。update() の結果は次の update() まで有効
+	private final List<Projectile> removedProjectiles = new ArrayList<>();
+	private final List<DamageEvent> damageEvents = new ArrayList<>();
+	private final List<DamageEvent> damageEventPool = new ArrayList<>();
+	private final List<Entity> pendingRemovals = new ArrayList<>();
+	private final List<Projectile> projectiles = new ArrayList<>();
+	private final UpdateResult updateResult = new UpdateResult(removedProjectiles, damageEvents);
 	private final int width;
 	private final int height;
 	private final double groundY;
+	// 直近の update() の処理時間内訳(ns)。プロファイル用
+	private long lastMovementNanos;
+	private long lastCollisionNanos;
+	private long lastHitboxExpiryNanos;
+	// 直近の当たり判定で調べた組の数と命中数
+	private int lastCollisionPairs;
+	private int lastCollisionHits;
+	private int projectilePairInterval = 1;
+	private int collisionFrames;
 
 	public BattleField() {
 		this(DEFAULT_WIDTH, DEFAULT_HEIGHT, DEFAULT_GROUND_Y);
@@ -43,10 +61,15 @@ public void addEntity(Entity entity) {
 		entities.add(entity);
 	}
 
+	/**
+	 * 1フレーム分進めます。返す結果と中のリスト・{@link DamageEvent} は使い回すため、次の update() までに使い終えること。
+	 */
 	public UpdateResult update() {
-		List<Projectile> removedProjectiles = new ArrayList<>();
-		List<DamageEvent> damageEvents = new ArrayList<>();
-		for (Entity entity : entities) {
+		long start = System.nanoTime();
+		removedProjectiles.clear();
+		damageEvents.clear();
+		for (int i = 0, n = entities.size(); i < n; i++) {
+			Entity entity = entities.get(i);
 			if (entity instanceof GameCharacter) {
 				GameCharacter character = (GameCharacter) entity;
 				applyGravity(character);
@@ -56,39 +79,78 @@ public UpdateResult update() {
 				entity.update();
 			}
 		}
-		Iterator<Entity> iterator = entities.iterator();
-		while (iterator.hasNext()) {
-			Entity entity = iterator.next();
+		int kept = 0;
+		for (int i = 0, n = entities.size(); i < n; i++) {
+			Entity entity = entities.get(i);
 			if (entity instanceof Projectile) {
 				Projectile projectile = (Projectile) entity;
 				if (projectile.getPosition().getY() <= groundY
 						|| projectile.isOutOfBounds(width, height)
 						|| projectile.isExpired()) {
 					removedProjectiles.add(projectile);
-					iterator.remove();
+					continue;
 				}
 			}
+			entities.set(kept++, entity);
 		}
+		truncateEntities(kept);
+		long movementEnd = System.nanoTime();
+		Object collisionEvent = FlightEvents.beginCollision();
 		updateCollision(removedProjectiles, damageEvents);
+		FlightEvents.endCollision(collisionEvent, entities.size(), lastCollisionPairs, lastCollisionHits);
+		long collisionEnd = System.nanoTime();
 		removeExpiredHitboxes();
-		return new UpdateResult(removedProjectiles, damageEvents);
+		long end = System.nanoTime();
+		lastMovementNanos = movementEnd - start;
+		lastCollisionNanos = collisionEnd - movementEnd;
+		lastHitboxExpiryNanos = end - collisionEnd;
+		return updateResult;
 	}
 
-	private void updateCollision(List<Projectile> removedProjectiles, List<DamageEvent> damageEvents) {
-		List<Entity> toRemove = new ArrayList<>();
-		for (Entity entity : entities) {
+	/**
+	 * 弾同士の当たり判定を何フレームに1回行うかを設定します。1 の場合は毎フレーム行う。弾とキャラクターの判定は常に毎フレーム行う。
+	 */
+	public void setProjectilePairInterval(int interval) {
+		projectilePairInterval = Math.max(1, interval);
+	}
+
+	/**
+	 * ownerId のプレイヤーが出した、フィールド上の弾の数を返します。
+	 */
+	public int countProjectiles(int ownerId) {
+		int count = 0;
+		for (int i = 0, n = entities.size(); i < n; i++) {
+			Entity entity = entities.get(i);
+			if (entity instanceof Projectile && ((Projectile) entity).getOwnerId() == ownerId) count++;
+		}
+		return count;
+	}
+
+	// ベンチマークから当たり判定だけを測定できるようパッケージプライベートにしている
+	void updateCollision(List<Projectile> removedProjectiles, List<DamageEvent> damageEvents) {
+		pendingRemovals.clear();
+		boolean projectilePairs = collisionFrames++ % projectilePairInterval == 0;
+		int pairs = 0;
+		int hits = 0;
+		for (int i = 0, n = entities.size(); i < n; i++) {
+			Entity entity = entities.get(i);
 			if (entity instanceof Projectile) {
 				Projectile projectile = (Projectile) entity;
-				for (Entity other : entities) {
+				for (int j = 0; j < n; j++) {
+					Entity other = entities.get(j);
 					if (entity == other) continue;
 					if (other instanceof GameCharacter) {
 						GameCharacter character = (GameCharacter) other;
 						if (character.getOwnerId() == projectile.getOwnerId()) continue;
+					} else if (!projectilePairs && other instanceof Projectile) {
+						continue;
 					}
+					pairs++;
 					if (!projectile.collidesWith(other)) continue;
+					hits++;
 					if (other instanceof Projectile) {
-						toRemove.add(projectile);
-						toRemove.add(other);
+						pendingRemovals.add(projectile);
+						pendingRemovals.add(other);
 						if (!removedProjectiles.contains(projectile)) removedProjectiles.add(projectile);
 						if (!removedProjectiles.contains(other)) removedProjectiles.add((Projectile) other);
 						break;
@@ -98,9 +160,9 @@ private void updateCollision(List<Projectile> removedProjectiles, List<DamageEve
 							int oldHp = character.getHp();
 							int newHp = character.applyDamage(projectile.getDamage());
 							double dealt = Math.max(0, oldHp - newHp);
-							damageEvents.add(new DamageEvent(character.getOwnerId(), newHp, projectile.getOwnerId(), dealt));
+							damageEvents.add(nextDamageEvent(damageEvents.size()).set(character.getOwnerId(), newHp, projectile.getOwnerId(), dealt));
 						}
-						toRemove.add(projectile);
+						pendingRemovals.add(projectile);
 						if (!removedProjectiles.contains(projectile)) removedProjectiles.add(projectile);
 						break;
 					}
@@ -108,31 +170,129 @@ private void updateCollision(List<Projectile> removedProjectiles, List<DamageEve
 			} else if (entity instanceof AttackHitbox) {
 				AttackHitbox hitbox = (AttackHitbox) entity;
 				boolean hitAny = false;
-				for (Entity other : entities) {
+				for (int j = 0; j < n; j++) {
+					Entity other = entities.get(j);
 					if (entity == other || !(other instanceof GameCharacter)) continue;
 					GameCharacter character = (GameCharacter) other;
 					if (character.getOwnerId() == hitbox.getOwnerId()) continue;
+					pairs++;
 					if (!hitbox.collidesWith(character)) continue;
+					hits++;
 					int oldHp = character.getHp();
 					int newHp = character.applyDamage(hitbox.getDamage());
 					double dealt = Math.max(0, oldHp - newHp);
-					damageEvents.add(new DamageEvent(character.getOwnerId(), newHp, hitbox.getOwnerId(), dealt));
+					damageEvents.add(nextDamageEvent(damageEvents.size()).set(character.getOwnerId(), newHp, hitbox.getOwnerId(), dealt));
 					hitAny = true;
 				}
-				if (hitAny) toRemove.add(hitbox);
+				if (hitAny) pendingRemovals.add(hitbox);
 			}
 		}
-		if (!toRemove.isEmpty()) entities.removeAll(toRemove);
+		if (!pendingRemovals.isEmpty()) {
+			int kept = 0;
+			for (int i = 0, n = entities.size(); i < n; i++) {
+				Entity entity = entities.get(i);
+				if (!pendingRemovals.contains(entity)) entities.set(kept++, entity);
+			}
+			truncateEntities(kept);
+			pendingRemovals.clear();
+		}
+		lastCollisionPairs = pairs;
+		lastCollisionHits = hits;
 	}
 
-	public List<Projectile> getProjectiles() {
-		List<Projectile> list = new ArrayList<>();
+	public long getLastMovementNanos() {
+		return lastMovementNanos;
+	}
+
+	public long getLastCollisionNanos() {
+		return lastCollisionNanos;
+	}
+
+	public long getLastHitboxExpiryNanos() {
+		return lastHitboxExpiryNanos;
+	}
+
+	public int getLastCollisionPairs() {
+		return lastCollisionPairs;
+	}
+
+	public int getLastCollisionHits() {
+		return lastCollisionHits;
+	}
+
+	public int getEntityCount() {
+		return entities.size();
+	}
+
+	/**
+	 * 種類ごとの物体数を「characters=2 projectiles=5 hitboxes=0」の形式で返します。
+	 */
+	public String describeEntities() {
+		int characters = 0;
+		int projectiles = 0;
+		int hitboxes = 0;
 		for (Entity entity : entities) {
+			if (entity instanceof GameCharacter) {
+				characters++;
+			} else if (entity instanceof Projectile) {
+				projectiles++;
+			} else if (entity instanceof AttackHitbox) {
+				hitboxes++;
+			}
+		}
+		return "characters=" + characters + " projectiles=" + projectiles + " hitboxes=" + hitboxes;
+	}
+
+	/**
+	 * フィールド上の飛び道具を返します。返すリストは使い回すため、次の呼び出しまでに使い終えること。
+	 */
+	public List<Projectile> getProjectiles() {
+		projectiles.clear();
+		for (int i = 0, n = entities.size(); i < n; i++) {
+			Entity entity = entities.get(i);
 			if (entity instanceof Projectile) {
-				list.add((Projectile) entity);
+				projectiles.add((Projectile) entity);
 			}
 		}
-		return list;
+		return projectiles;
+	}
+
+	/**
+	 * フィールド上の全物体の状態から64bitのハッシュ値を求めます。
+	 * 物体IDはプロセス内で通し番号のため含めず、所有者・位置・速度・HPのみを対象とする。
+	 */
+	public long computeStateHash() {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0, n = entities.size(); i < n; i++) {
+			Entity entity = entities.get(i);
+			if (entity instanceof GameCharacter) {
+				GameCharacter character = (GameCharacter) entity;
+				hash = mix(hash, 1);
+				hash = mix(hash, character.getOwnerId());
+				hash = mix(hash, character.getHp());
+			} else if (entity instanceof Projectile) {
+				Projectile projectile = (Projectile) entity;
+				hash = mix(hash, 2);
+				hash = mix(hash, projectile.getOwnerId());
+				hash = mix(hash, projectile.getType().getId());
+			} else if (entity instanceof AttackHitbox) {
+				hash = mix(hash, 3);
+				hash = mix(hash, ((AttackHitbox) entity).getOwnerId());
+			}
+			hash = mix(hash, Double.doubleToLongBits(entity.getPosition().getX()));
+			hash = mix(hash, Double.doubleToLongBits(entity.getPosition().getY()));
+			hash = mix(hash, Double.doubleToLongBits(entity.getVelocity().getX()));
+			hash = mix(hash, Double.doubleToLongBits(entity.getVelocity().getY()));
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, long value) {
+		for (int i = 0; i < 8; i++) {
+			hash ^= (value >>> (i * 8)) & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		return hash;
 	}
 
 	private void applyGravity(GameCharacter character) {
@@ -155,18 +315,34 @@ private void clampToGround(GameCharacter character) {
 	}
 
 	private void removeExpiredHitboxes() {
-		Iterator<Entity> iterator = entities.iterator();
-		while (iterator.hasNext()) {
-			Entity entity = iterator.next();
-			if (entity instanceof AttackHitbox) {
-				AttackHitbox hitbox = (AttackHitbox) entity;
-				if (hitbox.isExpired()) {
-					iterator.remove();
-				}
-			}
+		int kept = 0;
+		for (int i = 0, n = entities.size(); i < n; i++) {
+			Entity entity = entities.get(i);
+			if (entity instanceof AttackHitbox && ((AttackHitbox) entity).isExpired()) continue;
+			entities.set(kept++, entity);
+		}
+		truncateEntities(kept);
+	}
+
+	/**
+	 * 詰め直した後の末尾を削除します。末尾からの削除は要素の移動や作業用リストの確保を伴わない。
+	 */
+	private void truncateEntities(int size) {
+		for (int i = entities.size() - 1; i >= size; i--) {
+			entities.remove(i);
 		}
 	}
 
+	/**
+	 * index 番目の {@link DamageEvent} を使い回し用の領域から取り出します。足りない分だけ新しく作る。
+	 */
+	private DamageEvent nextDamageEvent(int index) {
+		if (index < damageEventPool.size()) return damageEventPool.get(index);
+		DamageEvent event = new DamageEvent(0, 0, 0, 0);
+		damageEventPool.add(event);
+		return event;
+	}
+
 	public static final class UpdateResult {
 		private final List<Projectile> removedProjectiles;
 		private final List<DamageEvent> damageEvents;
@@ -185,17 +361,25 @@ public List<DamageEvent> getDamageEvents() {
 		}
 	}
 
+	/**
+	 * 1件の命中結果です。{@link BattleField} が使い回すため、保持する場合は値を写し取ること。
+	 */
 	public static final class DamageEvent {
-		private final int targetId;
-		private final int hp;
-		private final int sourceId;
-		private final double damage;
+		private int targetId;
+		private int hp;
+		private int sourceId;
+		private double damage;
 
 		public DamageEvent(int targetId, int hp, int sourceId, double damage) {
+			set(targetId, hp, sourceId, damage);
+		}
+
+		DamageEvent set(int targetId, int hp, int sourceId, double damage) {
 			this.targetId = targetId;
 			this.hp = hp;
 			this.sourceId = sourceId;
 			this.damage = damage;
+			return this;
 		}
 
 		public int getTargetId() {
@@ -0,0 +1,27 @@
+package server.model;
+
+import model.CharacterType;
+import model.GameCharacter;
+
+/**
+ * キャラクター種別からサーバー側のキャラクターを生成するクラスです。
+ */
+public final class CharacterFactory {
+	private CharacterFactory() {
+	}
+
+	public static GameCharacter create(CharacterType type) {
+		if (type == null) return new Archer();
+		switch (type) {
+			case FIGHTER:
+				return new Fighter();
+			case WARRIOR:
+				return new Warrior();
+			case WIZARD:
+				return new Wizard();
+			case ARCHER:
+			default:
+				return new Archer();
+		}
+	}
+}
@@ -3,34 +3,56 @@
 import model.GameCharacter;
 import model.PlayerInfo;
 import model.ResultData;
-import model.Vector2D;
 import network.CommandType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
+/**
+ * 1試合分の進行を管理するクラスです。
+ * プレイヤーは start() の時点で 0 から始まる連番(スロット)に割り当て、生存状態・溜め・防御入力・戦績はスロットごとの配列で持つ。
+ * 入力のたびに ID をキーにした Map を引かずに済むよう、ID からスロットへは人数分の配列を線形に探す。
+ */
 public final class GameSession {
 	private static final long DEFEND_HOLD_TIMEOUT_MS = 250L;
+	private static final int NONE = -1;
+	private static final int MAX_SLOTS = Long.SIZE;
 	private final int maxPlayers;
-	private final Map<Integer, PlayerInfo> playersById = new HashMap<>();
-	private final Map<Integer, ResultData> resultMap = new HashMap<>();
-	private final Set<Integer> aliveIds = new HashSet<>();
-	private final Map<Integer, Long> chargeStartTimes = new HashMap<>();
-	private final Map<Integer, Long> defendInputTimes = new HashMap<>();
+	private final int tickRate;
+
+	// -------------------- スロットごとの状態 --------------------
+	private PlayerInfo[] slotPlayers;
+	private int[] slotIds;
+	private int[] chargeStartTicks;
+	private int[] defendInputTicks;
+	private int[] kills;
+	private int[] deaths;
+	private double[] damageGiven;
+	private double[] damageTaken;
+	private int playerCount;
+	private long aliveMask;
 
 	private BattleField battleField;
 	private boolean started;
 	private boolean gameOver;
 	private boolean resultReady;
+	private int tick;
+	private int projectileLimit;
+	private int projectilePairInterval = 1;
+	private long cappedShots;
 	private List<ResultData> finalResults = new ArrayList<>();
 
-	public GameSession(int maxPlayers) {
+	/**
+	 * @param tickRate 1秒あたりの更新回数。時間に依存する処理(溜め・防御)は実時間ではなく更新回数から求める。
+	 */
+	public GameSession(int maxPlayers, int tickRate) {
+		if (maxPlayers > MAX_SLOTS) throw new IllegalArgumentException("maxPlayers must be <= " + MAX_SLOTS + ": " + maxPlayers);
 		this.maxPlayers = maxPlayers;
+		this.tickRate = tickRate;
+		allocateSlots(maxPlayers);
 	}
 
 	public boolean isStarted() {
@@ -45,29 +67,62 @@ public BattleField getBattleField() {
 		return battleField;
 	}
 
+	/**
+	 * 対戦開始から完了した更新回数を返します。
+	 */
+	public int getTick() {
+		return tick;
+	}
+
+	/**
+	 * 負荷が高いときの簡略化を設定します。対戦の途中でも変えられ、次の入力・更新から反映する。
+	 *
+	 * @param projectileLimit        1人がフィールド上に同時に出せる弾の数。0 の場合は制限しない
+	 * @param projectilePairInterval 弾同士の当たり判定を何フレームに1回行うか
+	 */
+	public void setDegradation(int projectileLimit, int projectilePairInterval) {
+		this.projectileLimit = Math.max(0, projectileLimit);
+		this.projectilePairInterval = Math.max(1, projectilePairInterval);
+		if (battleField != null) battleField.setProjectilePairInterval(this.projectilePairInterval);
+	}
+
+	/**
+	 * 弾の数の制限で撃てなかった攻撃の累計
+	 */
+	public long getCappedShots() {
+		return cappedShots;
+	}
+
 	public void start(Collection<PlayerInfo> players) {
-		playersById.clear();
-		resultMap.clear();
-		aliveIds.clear();
-		chargeStartTimes.clear();
-		defendInputTimes.clear();
+		if (players.size() > MAX_SLOTS) throw new IllegalArgumentException("too many players: " + players.size());
+		if (players.size() > slotPlayers.length) allocateSlots(players.size());
+		Arrays.fill(slotPlayers, null);
+		Arrays.fill(chargeStartTicks, NONE);
+		Arrays.fill(defendInputTicks, NONE);
+		Arrays.fill(kills, 0);
+		Arrays.fill(deaths, 0);
+		Arrays.fill(damageGiven, 0);
+		Arrays.fill(damageTaken, 0);
+		playerCount = 0;
+		aliveMask = 0;
 		finalResults = new ArrayList<>();
 		resultReady = false;
 		gameOver = false;
 		started = true;
+		tick = 0;
 
 		battleField = new BattleField();
+		battleField.setProjectilePairInterval(projectilePairInterval);
 		double fieldWidth = battleField.getWidth();
 		double groundY = battleField.getGroundY();
-		List<PlayerInfo> playersList = new ArrayList<>(players);
-		int index = 0;
-		for (PlayerInfo player : playersList) {
+		for (PlayerInfo player : players) {
+			int slot = playerCount++;
 			int playerId = player.getId();
-			playersById.put(playerId, player);
-			aliveIds.add(playerId);
-			resultMap.put(playerId, new ResultData(playerId));
+			slotPlayers[slot] = player;
+			slotIds[slot] = playerId;
+			aliveMask |= 1L << slot;
 			GameCharacter character = player.getCharacter();
-			double slotCenter = (index + 0.5) / (double) maxPlayers;
+			double slotCenter = (slot + 0.5) / (double) maxPlayers;
 			double x = fieldWidth * slotCenter;
 			character.setPosition(x, groundY);
 			character.setGrounded(true);
@@ -75,63 +130,48 @@ public void start(Collection<PlayerInfo> players) {
 			character.recoverDefense();
 			character.setOwnerId(playerId);
 			battleField.addEntity(character);
-			index++;
 		}
 	}
 
 	public CommandType handleAction(CommandType actionType, PlayerInfo player) {
-		if (!canAct(player)) return null;
-		long now = System.currentTimeMillis();
-		GameCharacter character = player.getCharacter();
+		int slot = slotOf(player.getId());
+		if (!canAct(slot)) return null;
+		GameCharacter character = slotPlayers[slot].getCharacter();
 		switch (actionType) {
 			case MOVE_LEFT:
-				character.stopDefend();
-				character.recoverDefense();
-				defendInputTimes.remove(player.getId());
-				setFacingDirection(player, -1, 0);
-				applyMove(player, -resolveMoveStepX(player), 0);
+				releaseDefend(slot, character);
+				character.setFacingDirection(-1, 0);
+				applyMove(character, -character.getMoveStepX(), 0);
 				return null;
 			case MOVE_RIGHT:
-				character.stopDefend();
-				character.recoverDefense();
-				defendInputTimes.remove(player.getId());
-				setFacingDirection(player, 1, 0);
-				applyMove(player, resolveMoveStepX(player), 0);
+				releaseDefend(slot, character);
+				character.setFacingDirection(1, 0);
+				applyMove(character, character.getMoveStepX(), 0);
 				return null;
 			case MOVE_UP:
-				character.stopDefend();
-				character.recoverDefense();
-				defendInputTimes.remove(player.getId());
-				setFacingDirection(player, 0, 1);
-				return applyJump(player) ? CommandType.MOVE_UP : null;
+				releaseDefend(slot, character);
+				character.setFacingDirection(0, 1);
+				return applyJump(character) ? CommandType.MOVE_UP : null;
 			case MOVE_DOWN:
-				character.stopDefend();
-				character.recoverDefense();
-				defendInputTimes.remove(player.getId());
-				setFacingDirection(player, 0, -1);
-				applyMove(player, 0, -resolveMoveStepY(player));
+				releaseDefend(slot, character);
+				character.setFacingDirection(0, -1);
+				applyMove(character, 0, -character.getMoveStepY());
 				return null;
 			case CHARGE_START:
-				character.stopDefend();
-				character.recoverDefense();
-				defendInputTimes.remove(player.getId());
-				startCharge(player);
+				releaseDefend(slot, character);
+				chargeStartTicks[slot] = tick;
 				return CommandType.CHARGE_START;
 			case NORMAL_ATTACK:
-				character.stopDefend();
-				character.recoverDefense();
-				defendInputTimes.remove(player.getId());
-				applyNormalAttack(player);
+				releaseDefend(slot, character);
+				applyNormalAttack(character);
 				return CommandType.NORMAL_ATTACK;
 			case CHARGE_ATTACK:
-				character.stopDefend();
-				character.recoverDefense();
-				defendInputTimes.remove(player.getId());
-				applyChargeAttack(player);
+				releaseDefend(slot, character);
+				applyChargeAttack(character, stopCharge(slot));
 				return CommandType.CHARGE_ATTACK;
 			case DEFEND:
-				defendInputTimes.put(player.getId(), now);
-				if (character.startDefend(now)) {
+				defendInputTicks[slot] = tick;
+				if (character.startDefend(currentTimeMs())) {
 					return CommandType.DEFEND;
 				}
 				return null;
@@ -143,16 +183,18 @@ public CommandType handleAction(CommandType actionType, PlayerInfo player) {
 	public BattleField.UpdateResult update() {
 		if (!started || gameOver) return null;
 		BattleField.UpdateResult result = battleField.update();
+		tick++;
 		updateDefenseStates();
 		processDamage(result.getDamageEvents());
 		return result;
 	}
 
 	public boolean eliminatePlayer(int playerId, boolean countDeath) {
-		if (!aliveIds.remove(playerId)) return false;
-		ResultData data = resultMap.get(playerId);
-		if (countDeath && data != null) data.incrementDeaths();
-		if (aliveIds.size() <= 1) {
+		int slot = slotOf(playerId);
+		if (!isAlive(slot)) return false;
+		aliveMask &= ~(1L << slot);
+		if (countDeath) deaths[slot]++;
+		if (Long.bitCount(aliveMask) <= 1) {
 			finalizeResultsNonCombat();
 		}
 		return true;
@@ -172,53 +214,77 @@ public void clearGameOver() {
 		finalResults = new ArrayList<>();
 	}
 
-	private boolean canAct(PlayerInfo player) {
-		return started && !gameOver && aliveIds.contains(player.getId());
+	private void allocateSlots(int size) {
+		slotPlayers = new PlayerInfo[size];
+		slotIds = new int[size];
+		chargeStartTicks = new int[size];
+		defendInputTicks = new int[size];
+		kills = new int[size];
+		deaths = new int[size];
+		damageGiven = new double[size];
+		damageTaken = new double[size];
+	}
+
+	/**
+	 * @return プレイヤーIDに対応するスロット。対戦に参加していない場合は -1
+	 */
+	private int slotOf(int playerId) {
+		for (int slot = 0; slot < playerCount; slot++) {
+			if (slotIds[slot] == playerId) return slot;
+		}
+		return NONE;
+	}
+
+	private boolean isAlive(int slot) {
+		return slot != NONE && (aliveMask & (1L << slot)) != 0;
+	}
+
+	private boolean canAct(int slot) {
+		return started && !gameOver && isAlive(slot);
 	}
 
 	private void processDamage(List<BattleField.DamageEvent> events) {
 		if (events.isEmpty() || gameOver) return;
-		Set<Integer> deathsThisFrame = new HashSet<>();
-		Set<Integer> aliveBefore = new HashSet<>(aliveIds);
-		for (BattleField.DamageEvent damage : events) {
-			int targetId = damage.getTargetId();
-			int sourceId = damage.getSourceId();
+		long deathMask = 0;
+		for (int i = 0, n = events.size(); i < n; i++) {
+			BattleField.DamageEvent damage = events.get(i);
+			int targetSlot = slotOf(damage.getTargetId());
+			int sourceSlot = slotOf(damage.getSourceId());
 			double dealt = damage.getDamage();
-			ResultData targetData = resultMap.get(targetId);
-			if (targetData != null) targetData.addDamageTaken(dealt);
-			ResultData sourceData = resultMap.get(sourceId);
-			if (sourceData != null) sourceData.addDamageGiven(dealt);
-
-			if (damage.getHp() <= 0 && aliveIds.contains(targetId) && deathsThisFrame.add(targetId)) {
-				if (targetData != null) targetData.incrementDeaths();
-				if (sourceId != targetId && sourceData != null) {
-					sourceData.incrementKills();
+			if (targetSlot != NONE && dealt > 0) damageTaken[targetSlot] += dealt;
+			if (sourceSlot != NONE && dealt > 0) damageGiven[sourceSlot] += dealt;
+
+			if (damage.getHp() <= 0 && isAlive(targetSlot) && (deathMask & (1L << targetSlot)) == 0) {
+				deathMask |= 1L << targetSlot;
+				deaths[targetSlot]++;
+				if (sourceSlot != targetSlot && sourceSlot != NONE) {
+					kills[sourceSlot]++;
 				}
 			}
 		}
-		if (!deathsThisFrame.isEmpty()) {
-			aliveIds.removeAll(deathsThisFrame);
-			if (aliveIds.size() <= 1) {
-				finalizeResults(aliveBefore, deathsThisFrame);
-			}
+		if (deathMask == 0) return;
+		long aliveBefore = aliveMask;
+		aliveMask &= ~deathMask;
+		if (Long.bitCount(aliveMask) <= 1) {
+			finalizeResults(aliveBefore, deathMask);
 		}
 	}
 
-	private void finalizeResults(Set<Integer> aliveBefore, Set<Integer> deathsThisFrame) {
+	private void finalizeResults(long aliveBefore, long deathMask) {
 		if (gameOver) return;
 		gameOver = true;
 		started = false;
-		Set<Integer> winners = new HashSet<>();
+		long winners = 0;
 		boolean drawAll = false;
 
-		if (aliveIds.size() == 1) {
-			winners.addAll(aliveIds);
-		} else if (aliveIds.isEmpty()) {
-			Set<Integer> allPlayers = playersById.keySet();
-			if (!allPlayers.isEmpty() && deathsThisFrame.containsAll(allPlayers)) {
+		if (Long.bitCount(aliveMask) == 1) {
+			winners = aliveMask;
+		} else if (aliveMask == 0) {
+			long allPlayers = playerCount == 0 ? 0 : -1L >>> (Long.SIZE - playerCount);
+			if (allPlayers != 0 && (allPlayers & ~deathMask) == 0) {
 				drawAll = true;
-			} else if (!aliveBefore.isEmpty() && deathsThisFrame.containsAll(aliveBefore)) {
-				winners.addAll(aliveBefore);
+			} else if (aliveBefore != 0 && (aliveBefore & ~deathMask) == 0) {
+				winners = aliveBefore;
 			} else {
 				drawAll = true;
 			}
@@ -231,28 +297,36 @@ private void finalizeResultsNonCombat() {
 		if (gameOver) return;
 		gameOver = true;
 		started = false;
-		Set<Integer> winners = new HashSet<>(aliveIds);
-		boolean drawAll = winners.isEmpty();
+		long winners = aliveMask;
+		boolean drawAll = winners == 0;
 		buildFinalResults(winners, drawAll);
 	}
 
-	private void buildFinalResults(Set<Integer> winners, boolean drawAll) {
-		List<ResultData> list = new ArrayList<>(resultMap.values());
-		for (ResultData data : list) {
+	private void buildFinalResults(long winners, boolean drawAll) {
+		List<ResultData> list = new ArrayList<>(playerCount);
+		for (int slot = 0; slot < playerCount; slot++) {
+			ResultData.ResultType result;
 			if (drawAll) {
-				data.setResult(ResultData.ResultType.DRAW);
-			} else if (winners.contains(data.getId())) {
-				data.setResult(ResultData.ResultType.WIN);
+				result = ResultData.ResultType.DRAW;
+			} else if ((winners & (1L << slot)) != 0) {
+				result = ResultData.ResultType.WIN;
 			} else {
-				data.setResult(ResultData.ResultType.LOSE);
+				result = ResultData.ResultType.LOSE;
 			}
+			list.add(new ResultData(slotIds[slot], result, kills[slot], deaths[slot], damageGiven[slot], damageTaken[slot]));
 		}
+		list.sort(Comparator.comparingInt(ResultData::getId));
 		finalResults = list;
 		resultReady = true;
 	}
 
-	private void applyMove(PlayerInfo player, double dx, double dy) {
-		GameCharacter character = player.getCharacter();
+	private void releaseDefend(int slot, GameCharacter character) {
+		character.stopDefend();
+		character.recoverDefense();
+		defendInputTicks[slot] = NONE;
+	}
+
+	private void applyMove(GameCharacter character, double dx, double dy) {
 		double fieldWidth = battleField.getWidth();
 		double fieldHeight = battleField.getHeight();
 		double nextX = character.getPosition().getX() + dx;
@@ -264,74 +338,63 @@ private void applyMove(PlayerInfo player, double dx, double dy) {
 		character.setPosition(nextX, nextY);
 	}
 
-	private void applyNormalAttack(PlayerInfo player) {
-		GameCharacter character = player.getCharacter();
+	private void applyNormalAttack(GameCharacter character) {
 		character.normalAttack();
-		if (character instanceof RangedAttacker) {
-			((RangedAttacker) character).shoot(battleField);
-		} else if (character instanceof MeleeAttacker) {
-			((MeleeAttacker) character).strike(battleField);
-		}
+		strike(character);
 	}
 
-	private void applyChargeAttack(PlayerInfo player) {
-		GameCharacter character = player.getCharacter();
-		long chargeMs = stopCharge(player);
+	private void applyChargeAttack(GameCharacter character, long chargeMs) {
 		character.chargeAttack(chargeMs);
+		strike(character);
+	}
+
+	private void strike(GameCharacter character) {
 		if (character instanceof RangedAttacker) {
+			if (projectileLimit > 0 && battleField.countProjectiles(character.getOwnerId()) >= projectileLimit) {
+				cappedShots++;
+				return;
+			}
 			((RangedAttacker) character).shoot(battleField);
 		} else if (character instanceof MeleeAttacker) {
 			((MeleeAttacker) character).strike(battleField);
 		}
 	}
 
-	private boolean applyJump(PlayerInfo player) {
-		GameCharacter character = player.getCharacter();
+	private boolean applyJump(GameCharacter character) {
 		if (!character.canJump()) return false;
 		character.setVerticalVelocity(character.getJumpVelocity());
 		character.registerJump();
 		return true;
 	}
 
-	private void setFacingDirection(PlayerInfo player, double x, double y) {
-		GameCharacter character = player.getCharacter();
-		character.setFacingDirection(x, y);
-	}
-
 	private void updateDefenseStates() {
-		long now = System.currentTimeMillis();
-		for (PlayerInfo player : playersById.values()) {
-			GameCharacter character = player.getCharacter();
+		long now = currentTimeMs();
+		for (int slot = 0; slot < playerCount; slot++) {
+			GameCharacter character = slotPlayers[slot].getCharacter();
 			character.updateDefense(now);
-			Long lastInput = defendInputTimes.get(player.getId());
-			if (lastInput != null && now - lastInput > DEFEND_HOLD_TIMEOUT_MS) {
+			int lastInput = defendInputTicks[slot];
+			if (lastInput != NONE && now - tickToMs(lastInput) > DEFEND_HOLD_TIMEOUT_MS) {
 				character.stopDefend();
-				defendInputTimes.remove(player.getId());
+				defendInputTicks[slot] = NONE;
 			}
 		}
 	}
 
-	private Vector2D getFacingDirection(GameCharacter character) {
-		return character.getFacingDirection();
-	}
-
-
-	private void startCharge(PlayerInfo player) {
-		chargeStartTimes.put(player.getId(), System.currentTimeMillis());
-	}
-
-	private long stopCharge(PlayerInfo player) {
-		Long start = chargeStartTimes.remove(player.getId());
-		return Math.max(0, System.currentTimeMillis() - start);
+	/**
+	 * 対戦開始からの経過時間(ms)を更新回数から求めます。記録した入力を再生したときに同じ結果になるよう、実時間は使わない。
+	 */
+	private long currentTimeMs() {
+		return tickToMs(tick);
 	}
 
-	private double resolveMoveStepX(PlayerInfo player) {
-		GameCharacter character = player.getCharacter();
-		return character.getMoveStepX();
+	private long tickToMs(int tick) {
+		return tick * 1000L / tickRate;
 	}
 
-	private double resolveMoveStepY(PlayerInfo player) {
-		GameCharacter character = player.getCharacter();
-		return character.getMoveStepY();
+	private long stopCharge(int slot) {
+		int start = chargeStartTicks[slot];
+		if (start == NONE) return 0;
+		chargeStartTicks[slot] = NONE;
+		return Math.max(0, currentTimeMs() - tickToMs(start));
 	}
 }
@@ -0,0 +1,234 @@
+package server.record;
+
+import network.CommandType;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 対戦記録ファイル(.jcfr)を読み込んだ結果を保持するクラスです。
+ */
+public final class MatchLog {
+	private final int roomId;
+	private final long startTime;
+	private final int tickRate;
+	private final int maxPlayers;
+	private final List<RosterEntry> roster;
+	private final List<Entry> entries;
+	private final List<Degradation> degradations;
+	private final boolean complete;
+	private final int endTick;
+	private final long endStateHash;
+
+	private MatchLog(int roomId, long startTime, int tickRate, int maxPlayers, List<RosterEntry> roster,
+	                 List<Entry> entries, List<Degradation> degradations, boolean complete, int endTick, long endStateHash) {
+		this.roomId = roomId;
+		this.startTime = startTime;
+		this.tickRate = tickRate;
+		this.maxPlayers = maxPlayers;
+		this.roster = Collections.unmodifiableList(roster);
+		this.entries = Collections.unmodifiableList(entries);
+		this.degradations = Collections.unmodifiableList(degradations);
+		this.complete = complete;
+		this.endTick = endTick;
+		this.endStateHash = endStateHash;
+	}
+
+	/**
+	 * 記録ファイルを読み込みます。終了エントリの前で途切れている場合は {@link #isComplete()} が false になります。
+	 *
+	 * @throws IOException 読み込みに失敗した場合、またはヘッダが不正な場合
+	 */
+	public static MatchLog read(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		try {
+			if (buffer.getInt() != MatchRecordFormat.MAGIC) throw new IOException("対戦記録ファイルではありません: " + path);
+			short version = buffer.getShort();
+			if (version < 1 || version > MatchRecordFormat.VERSION) throw new IOException("未対応のバージョンです(" + version + "): " + path);
+			int roomId = buffer.getInt();
+			long startTime = buffer.getLong();
+			int tickRate = buffer.getInt();
+			int maxPlayers = buffer.get();
+			int playerCount = buffer.get();
+			List<RosterEntry> roster = new ArrayList<>(playerCount);
+			for (int i = 0; i < playerCount; i++) {
+				int playerId = buffer.getInt();
+				int characterId = buffer.get();
+				roster.add(new RosterEntry(playerId, characterId, getString(buffer)));
+			}
+
+			List<Entry> entries = new ArrayList<>();
+			List<Degradation> degradations = new ArrayList<>();
+			boolean complete = false;
+			int endTick = -1;
+			long endStateHash = 0;
+			try {
+				while (buffer.hasRemaining()) {
+					byte kind = buffer.get();
+					if (kind == MatchRecordFormat.ENTRY_COMMAND) {
+						int tick = buffer.getInt();
+						int playerId = buffer.getInt();
+						CommandType type = CommandType.fromId(buffer.get() & 0xFF);
+						entries.add(new Entry(tick, playerId, type, getString(buffer)));
+					} else if (kind == MatchRecordFormat.ENTRY_DEGRADE) {
+						int tick = buffer.getInt();
+						int projectileLimit = buffer.get();
+						int projectilePairInterval = buffer.get();
+						degradations.add(new Degradation(tick, projectileLimit, projectilePairInterval));
+					} else if (kind == MatchRecordFormat.ENTRY_END) {
+						endTick = buffer.getInt();
+						endStateHash = buffer.getLong();
+						complete = true;
+						break;
+					} else {
+						break;
+					}
+				}
+			} catch (BufferUnderflowException e) {
+				// 書き込み途中で途切れたファイルは読めたところまでを使う
+			}
+			return new MatchLog(roomId, startTime, tickRate, maxPlayers, roster, entries, degradations, complete, endTick, endStateHash);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("ヘッダが途中で途切れています: " + path, e);
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getShort() & 0xFFFF;
+		if (length == 0) return "";
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public int getRoomId() {
+		return roomId;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public int getTickRate() {
+		return tickRate;
+	}
+
+	public int getMaxPlayers() {
+		return maxPlayers;
+	}
+
+	public List<RosterEntry> getRoster() {
+		return roster;
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * 負荷による簡略化の変更。記録した順(更新回数の昇順)に並ぶ
+	 */
+	public List<Degradation> getDegradations() {
+		return degradations;
+	}
+
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * 記録終了時点の更新回数です。{@link #isComplete()} が false の場合は -1 です。
+	 */
+	public int getEndTick() {
+		return endTick;
+	}
+
+	public long getEndStateHash() {
+		return endStateHash;
+	}
+
+	public static final class RosterEntry {
+		private final int playerId;
+		private final int characterId;
+		private final String name;
+
+		public RosterEntry(int playerId, int characterId, String name) {
+			this.playerId = playerId;
+			this.characterId = characterId;
+			this.name = name;
+		}
+
+		public int getPlayerId() {
+			return playerId;
+		}
+
+		public int getCharacterId() {
+			return characterId;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	public static final class Entry {
+		private final int tick;
+		private final int playerId;
+		private final CommandType commandType;
+		private final String body;
+
+		public Entry(int tick, int playerId, CommandType commandType, String body) {
+			this.tick = tick;
+			this.playerId = playerId;
+			this.commandType = commandType;
+			this.body = body;
+		}
+
+		public int getTick() {
+			return tick;
+		}
+
+		public int getPlayerId() {
+			return playerId;
+		}
+
+		public CommandType getCommandType() {
+			return commandType;
+		}
+
+		public String getBody() {
+			return body;
+		}
+	}
+
+	public static final class Degradation {
+		private final int tick;
+		private final int projectileLimit;
+		private final int projectilePairInterval;
+
+		public Degradation(int tick, int projectileLimit, int projectilePairInterval) {
+			this.tick = tick;
+			this.projectileLimit = projectileLimit;
+			this.projectilePairInterval = projectilePairInterval;
+		}
+
+		public int getTick() {
+			return tick;
+		}
+
+		public int getProjectileLimit() {
+			return projectileLimit;
+		}
+
+		public int getProjectilePairInterval() {
+			return projectilePairInterval;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package server.record;
+
+/**
+ * 対戦記録ファイル(.jcfr)のバイナリ形式を定義するクラスです。
+ * <pre>
+ * ヘッダ : magic(int) version(short) roomId(int) startTimeMs(long) tickRate(int) maxPlayers(byte) playerCount(byte)
+ *          [playerId(int) characterId(byte) name(UTF)] * playerCount
+ * エントリ: ENTRY_COMMAND(byte) tick(int) playerId(int) commandTypeId(byte) body(UTF)
+ *          ENTRY_DEGRADE(byte) tick(int) projectileLimit(byte) projectilePairInterval(byte)
+ *          ENTRY_END(byte) tick(int) stateHash(long)
+ * </pre>
+ * ENTRY_DEGRADE は負荷による簡略化({@link server.model.GameSession#setDegradation})の変更で、バージョン 2 で追加した。
+ * UTF は長さ(short) + UTF-8 バイト列で、{@link #MAX_STRING_BYTES} を超える部分は切り捨てます。数値はすべてビッグエンディアンです。
+ */
+public final class MatchRecordFormat {
+	public static final int MAGIC = 0x4A434652; // "JCFR"
+	public static final short VERSION = 2;
+	public static final byte ENTRY_COMMAND = 1;
+	public static final byte ENTRY_END = 2;
+	public static final byte ENTRY_DEGRADE = 3;
+	public static final String FILE_EXTENSION = ".jcfr";
+	public static final int MAX_STRING_BYTES = 1024;
+
+	private MatchRecordFormat() {
+	}
+}
@@ -0,0 +1,200 @@
+package server.record;
+
+import model.PlayerInfo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 対戦記録をファイルへ書き出す専用スレッドを管理するクラスです。
+ * 全ルームの {@link MatchRecorder} が溜めたチャンクをキューで受け取り、1本のスレッドでまとめて書き込みます。
+ * ゲームループ側はキューへの投入のみを行い、ディスクI/Oで待たされることはありません。
+ */
+public final class MatchRecordWriter implements Runnable, Closeable {
+	static final int CHUNK_SIZE = 16 * 1024;
+	private static final Logger logger = Logger.getLogger(MatchRecordWriter.class.getName());
+	private static final int QUEUE_CAPACITY = 4096;
+	private static final int MAX_POOLED_BUFFERS = 1024;
+	private static final int DRAIN_BATCH = 64;
+	private static final long LAST_CHUNK_WAIT_MS = 50;
+	private static final Chunk POISON = new Chunk(null, null, true);
+
+	private final Path directory;
+	private final ArrayBlockingQueue<Chunk> queue;
+	private final ConcurrentLinkedQueue<ByteBuffer> bufferPool;
+	private final AtomicInteger pooledBuffers;
+	private final AtomicLong droppedChunks;
+	private final AtomicLong writtenBytes;
+	private final Thread thread;
+	private volatile boolean isRunning;
+
+	public MatchRecordWriter(Path directory) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+		queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		bufferPool = new ConcurrentLinkedQueue<>();
+		pooledBuffers = new AtomicInteger(0);
+		droppedChunks = new AtomicLong(0);
+		writtenBytes = new AtomicLong(0);
+		isRunning = true;
+		thread = new Thread(this, "MatchRecordWriter");
+		thread.setDaemon(true);
+		thread.start();
+		logger.info(() -> "対戦記録を " + directory.toAbsolutePath() + " に保存します。");
+	}
+
+	/**
+	 * 対戦1回分の記録を開始します。
+	 *
+	 * @param roster GameSession に渡したものと同じ順序のプレイヤー一覧
+	 * @return 書き込みが停止している場合は null
+	 */
+	public MatchRecorder openRecorder(int roomId, int tickRate, int maxPlayers, List<PlayerInfo> roster) {
+		if (!isRunning) return null;
+		long startTime = System.currentTimeMillis();
+		Path path = directory.resolve("room" + roomId + "-" + startTime + MatchRecordFormat.FILE_EXTENSION);
+		return new MatchRecorder(this, path, roomId, startTime, tickRate, maxPlayers, roster);
+	}
+
+	public long getDroppedChunks() {
+		return droppedChunks.get();
+	}
+
+	public long getWrittenBytes() {
+		return writtenBytes.get();
+	}
+
+	public void close() {
+		if (!isRunning) return;
+		isRunning = false;
+		try {
+			queue.put(POISON);
+			thread.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void run() {
+		List<Chunk> batch = new ArrayList<>(DRAIN_BATCH);
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, DRAIN_BATCH - 1);
+				for (Chunk chunk : batch) {
+					if (chunk == POISON) return;
+					write(chunk);
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			logger.warning("対戦記録の書き込みスレッドが中断されました。");
+		} finally {
+			// 停止時に残っているチャンクも書き出す
+			for (Chunk chunk : batch) {
+				if (chunk != POISON) write(chunk);
+			}
+			Chunk chunk;
+			while ((chunk = queue.poll()) != null) {
+				if (chunk != POISON) write(chunk);
+			}
+		}
+	}
+
+	// -------------------- MatchRecorder から呼ばれる --------------------
+	ByteBuffer acquireBuffer() {
+		ByteBuffer buffer = bufferPool.poll();
+		if (buffer == null) return ByteBuffer.allocate(CHUNK_SIZE);
+		pooledBuffers.decrementAndGet();
+		return buffer;
+	}
+
+	/**
+	 * チャンクを書き込みキューへ渡します。キューが満杯の場合は待たずに破棄します。
+	 * 最後のチャンクはファイルを閉じるために必要なため、短時間だけ空きを待ちます。
+	 */
+	boolean submit(MatchRecorder owner, ByteBuffer buffer, boolean last) {
+		buffer.flip();
+		Chunk chunk = new Chunk(owner, buffer, last);
+		boolean accepted;
+		try {
+			accepted = last ? queue.offer(chunk, LAST_CHUNK_WAIT_MS, TimeUnit.MILLISECONDS) : queue.offer(chunk);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			accepted = false;
+		}
+		if (accepted) return true;
+		droppedChunks.incrementAndGet();
+		releaseBuffer(buffer);
+		return false;
+	}
+
+	private void releaseBuffer(ByteBuffer buffer) {
+		if (buffer == null) return;
+		buffer.clear();
+		if (pooledBuffers.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+			bufferPool.offer(buffer);
+		} else {
+			pooledBuffers.decrementAndGet();
+		}
+	}
+
+	private void write(Chunk chunk) {
+		MatchRecorder owner = chunk.owner;
+		try {
+			if (!owner.isWriteFailed()) {
+				FileChannel channel = owner.getChannel();
+				if (channel == null) {
+					channel = FileChannel.open(owner.getPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+					owner.setChannel(channel);
+				}
+				while (chunk.buffer.hasRemaining()) {
+					writtenBytes.addAndGet(channel.write(chunk.buffer));
+				}
+			}
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "対戦記録の書き込みに失敗しました: " + owner.getPath(), e);
+			owner.markWriteFailed();
+		} finally {
+			releaseBuffer(chunk.buffer);
+			if (chunk.last) closeChannel(owner);
+		}
+	}
+
+	private void closeChannel(MatchRecorder owner) {
+		FileChannel channel = owner.getChannel();
+		if (channel == null) return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.log(Level.FINE, "対戦記録ファイルのクローズに失敗しました。", e);
+		}
+		owner.setChannel(null);
+	}
+
+	private static final class Chunk {
+		private final MatchRecorder owner;
+		private final ByteBuffer buffer;
+		private final boolean last;
+
+		private Chunk(MatchRecorder owner, ByteBuffer buffer, boolean last) {
+			this.owner = owner;
+			this.buffer = buffer;
+			this.last = last;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package server.record;
+
+import model.CharacterType;
+import model.GameCharacter;
+import model.PlayerInfo;
+import network.CommandType;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * 対戦1回分の入力を記録するクラスです。
+ * ゲームループ側ではメモリ上のチャンクへ追記するだけで、チャンクが埋まるか対戦が終わった時点で
+ * {@link MatchRecordWriter} の書き込みスレッドへ渡します。1エントリが2つのチャンクにまたがることはありません。
+ */
+public final class MatchRecorder {
+	private static final Logger logger = Logger.getLogger(MatchRecorder.class.getName());
+	private static final byte[] EMPTY = new byte[0];
+
+	private final MatchRecordWriter writer;
+	private final Path path;
+	private ByteBuffer buffer;
+	private boolean finished;
+	private volatile boolean writeFailed;
+	private FileChannel channel; // 書き込みスレッドのみが使用
+
+	MatchRecorder(MatchRecordWriter writer, Path path, int roomId, long startTime, int tickRate, int maxPlayers, List<PlayerInfo> roster) {
+		this.writer = writer;
+		this.path = path;
+		buffer = writer.acquireBuffer();
+		buffer.putInt(MatchRecordFormat.MAGIC);
+		buffer.putShort(MatchRecordFormat.VERSION);
+		buffer.putInt(roomId);
+		buffer.putLong(startTime);
+		buffer.putInt(tickRate);
+		buffer.put((byte) maxPlayers);
+		buffer.put((byte) roster.size());
+		for (PlayerInfo player : roster) {
+			GameCharacter character = player.getCharacter();
+			CharacterType type = character != null ? character.getType() : CharacterType.defaultType();
+			buffer.putInt(player.getId());
+			buffer.put((byte) type.getId());
+			putString(encode(player.getName()));
+		}
+	}
+
+	/**
+	 * 受理したコマンドを記録します。
+	 *
+	 * @param tick コマンドを適用した時点で完了している更新回数
+	 */
+	public synchronized void recordCommand(int tick, int playerId, CommandType type, String body) {
+		if (finished || writeFailed) return;
+		byte[] bodyBytes = encode(body);
+		ensureCapacity(1 + 4 + 4 + 1 + 2 + bodyBytes.length);
+		buffer.put(MatchRecordFormat.ENTRY_COMMAND);
+		buffer.putInt(tick);
+		buffer.putInt(playerId);
+		buffer.put((byte) type.getId());
+		putString(bodyBytes);
+	}
+
+	/**
+	 * 負荷による簡略化の変更を記録します。
+	 *
+	 * @param tick 変更した時点で完了している更新回数
+	 */
+	public synchronized void recordDegradation(int tick, int projectileLimit, int projectilePairInterval) {
+		if (finished || writeFailed) return;
+		ensureCapacity(1 + 4 + 1 + 1);
+		buffer.put(MatchRecordFormat.ENTRY_DEGRADE);
+		buffer.putInt(tick);
+		buffer.put((byte) projectileLimit);
+		buffer.put((byte) projectilePairInterval);
+	}
+
+	/**
+	 * 記録を終了し、残りのチャンクを書き込みスレッドへ渡します。
+	 *
+	 * @param stateHash 終了時点の {@link server.model.BattleField#computeStateHash()}
+	 */
+	public synchronized void finish(int tick, long stateHash) {
+		if (finished) return;
+		finished = true;
+		if (!writeFailed) {
+			ensureCapacity(1 + 4 + 8);
+			buffer.put(MatchRecordFormat.ENTRY_END);
+			buffer.putInt(tick);
+			buffer.putLong(stateHash);
+		}
+		writer.submit(this, buffer, true);
+		buffer = null;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	// -------------------- MatchRecordWriter から呼ばれる --------------------
+	boolean isWriteFailed() {
+		return writeFailed;
+	}
+
+	void markWriteFailed() {
+		writeFailed = true;
+	}
+
+	FileChannel getChannel() {
+		return channel;
+	}
+
+	void setChannel(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	// -------------------- privateメソッド --------------------
+	private void ensureCapacity(int bytes) {
+		if (buffer.remaining() >= bytes) return;
+		if (!writer.submit(this, buffer, false)) {
+			// チャンクを欠落させたまま続けると再生結果が変わるため、以降の記録を止める
+			logger.warning(() -> "書き込みキューが満杯のため記録を中断します: " + path);
+			markWriteFailed();
+		}
+		buffer = writer.acquireBuffer();
+	}
+
+	private void putString(byte[] bytes) {
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static byte[] encode(String value) {
+		if (value == null || value.isEmpty()) return EMPTY;
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length <= MatchRecordFormat.MAX_STRING_BYTES) return bytes;
+		byte[] truncated = new byte[MatchRecordFormat.MAX_STRING_BYTES];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		return truncated;
+	}
+}
@@ -0,0 +1,165 @@
+package server.record;
+
+import model.CharacterType;
+import model.PlayerInfo;
+import model.ResultData;
+import network.CommandType;
+import server.metrics.ThreadUsage;
+import server.model.CharacterFactory;
+import server.model.GameSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 対戦記録からゲームを再シミュレーションするクラスです。
+ * ソケットや待機を使わず、記録された更新回数の順にコマンドを適用して {@link GameSession} を最速で進めます。
+ */
+public final class MatchReplayer {
+	private MatchReplayer() {
+	}
+
+	/**
+	 * @param keepTickHashes 更新ごとの状態ハッシュを保持する場合は true
+	 */
+	public static ReplayResult replay(MatchLog log, boolean keepTickHashes) {
+		GameSession session = new GameSession(log.getMaxPlayers(), log.getTickRate());
+		Map<Integer, PlayerInfo> playersById = new HashMap<>();
+		List<PlayerInfo> roster = new ArrayList<>();
+		for (MatchLog.RosterEntry entry : log.getRoster()) {
+			int characterId = entry.getCharacterId();
+			CharacterType type = characterId >= 0 && characterId < CharacterType.values().length
+					? CharacterType.fromId(characterId) : CharacterType.defaultType();
+			PlayerInfo player = new PlayerInfo(entry.getPlayerId(), entry.getName(), true, CharacterFactory.create(type));
+			playersById.put(player.getId(), player);
+			roster.add(player);
+		}
+		session.start(roster);
+
+		List<MatchLog.Entry> entries = log.getEntries();
+		List<MatchLog.Degradation> degradations = log.getDegradations();
+		int lastTick = log.isComplete() ? log.getEndTick()
+				: entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getTick();
+		long[] tickHashes = keepTickHashes ? new long[Math.max(16, lastTick + 1)] : null;
+		List<ResultData> results = null;
+		Thread thread = Thread.currentThread();
+		long measureOverhead = measureOverhead(thread);
+		long updateAllocated = measureOverhead < 0 ? -1 : 0;
+		int index = 0;
+		int degradationIndex = 0;
+		while (true) {
+			int tick = session.getTick();
+			// 簡略化の変更は、同じ更新回数で受理したコマンドより前に適用されている
+			while (degradationIndex < degradations.size() && degradations.get(degradationIndex).getTick() <= tick) {
+				MatchLog.Degradation degradation = degradations.get(degradationIndex++);
+				session.setDegradation(degradation.getProjectileLimit(), degradation.getProjectilePairInterval());
+			}
+			while (index < entries.size() && entries.get(index).getTick() <= tick) {
+				apply(session, playersById, entries.get(index));
+				index++;
+			}
+			if (results == null) results = session.consumeResults();
+			if (!session.isStarted() || tick >= lastTick) break;
+			long allocBefore = ThreadUsage.allocatedBytes(thread);
+			session.update();
+			if (updateAllocated >= 0) {
+				updateAllocated += Math.max(0, ThreadUsage.allocatedBytes(thread) - allocBefore - measureOverhead);
+			}
+			if (tickHashes != null) {
+				if (tick >= tickHashes.length) tickHashes = Arrays.copyOf(tickHashes, tickHashes.length * 2);
+				tickHashes[tick] = session.getBattleField().computeStateHash();
+			}
+			if (results == null) results = session.consumeResults();
+		}
+		int ticks = session.getTick();
+		long finalHash = session.getBattleField().computeStateHash();
+		if (tickHashes != null) tickHashes = Arrays.copyOf(tickHashes, ticks);
+		return new ReplayResult(ticks, finalHash, tickHashes, results, updateAllocated);
+	}
+
+	/**
+	 * 確保量の読み出し自体が確保するバイト数を求めます。計測できない場合は -1 です。
+	 */
+	private static long measureOverhead(Thread thread) {
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			long before = ThreadUsage.allocatedBytes(thread);
+			long after = ThreadUsage.allocatedBytes(thread);
+			if (before < 0 || after < 0) return -1;
+			overhead = Math.min(overhead, after - before);
+		}
+		return overhead;
+	}
+
+	private static void apply(GameSession session, Map<Integer, PlayerInfo> playersById, MatchLog.Entry entry) {
+		PlayerInfo player = playersById.get(entry.getPlayerId());
+		if (player == null) return;
+		CommandType type = entry.getCommandType();
+		switch (type) {
+			case RESIGN:
+			case DISCONNECT:
+				session.eliminatePlayer(player.getId(), true);
+				break;
+			default:
+				if (CommandType.GAME_INPUT_ACTIONS.contains(type)) session.handleAction(type, player);
+				break;
+		}
+	}
+
+	public static final class ReplayResult {
+		private final int ticks;
+		private final long finalStateHash;
+		private final long[] tickHashes;
+		private final List<ResultData> results;
+		private final long updateAllocatedBytes;
+
+		private ReplayResult(int ticks, long finalStateHash, long[] tickHashes, List<ResultData> results, long updateAllocatedBytes) {
+			this.ticks = ticks;
+			this.finalStateHash = finalStateHash;
+			this.tickHashes = tickHashes;
+			this.results = results;
+			this.updateAllocatedBytes = updateAllocatedBytes;
+		}
+
+		public int getTicks() {
+			return ticks;
+		}
+
+		public long getFinalStateHash() {
+			return finalStateHash;
+		}
+
+		/**
+		 * i 番目の要素は i+1 回目の更新後の状態ハッシュです。保持しなかった場合は null です。
+		 */
+		public long[] getTickHashes() {
+			return tickHashes;
+		}
+
+		/**
+		 * 決着がつかないまま記録が終わった場合は null です。
+		 */
+		public List<ResultData> getResults() {
+			return results;
+		}
+
+		/**
+		 * {@link GameSession#update()} の中でヒープに確保した合計バイト数です。入力の適用による確保は含まない。
+		 * JVM が計測に対応していない場合は -1 です。
+		 */
+		public long getUpdateAllocatedBytes() {
+			return updateAllocatedBytes;
+		}
+
+		/**
+		 * 1回の更新あたりの確保バイト数です。計測できなかった場合は -1 です。
+		 */
+		public double getAllocatedBytesPerTick() {
+			if (updateAllocatedBytes < 0) return -1;
+			return ticks > 0 ? updateAllocatedBytes / (double) ticks : 0;
+		}
+	}
+}